@@ -0,0 +1,139 @@
+import expression.ExpressionTree;
+import expression.PostfixProgram;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compares the interpreted tree walk, the flat program and the compiled
+ * hidden class on random expressions of increasing size.
+ *
+ * <p>Run with {@code ./gradlew benchmark}. Every expression reads
+ * variables, and each timed call evaluates a batch of rows with different
+ * random bindings, so no form can be folded to a constant by the JIT: the
+ * compiled class loads each variable from the row on every call. The tree
+ * evaluates the batch with its column evaluator; the program and the
+ * compiled function are called once per row.
+ */
+public class CompileBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 5;
+  private static final long ROUND_NANOS = 200_000_000L;
+  private static final int VARIABLES = 8;
+  private static final int ROWS = 256;
+
+  // keeps results live so the JIT cannot drop the work
+  private static double sink;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args command line arguments (unused)
+   */
+  public static void main(String[] args) {
+    System.out.printf("%8s %14s %14s %15s %9s %9s%n", "leaves", "tree ns/row",
+        "program ns/row", "compiled ns/row", "vs tree", "vs prog");
+    for (int leaves : new int[] {4, 16, 64, 256, 1024}) {
+      Random rnd = new Random(leaves);
+      ExpressionTree tree = new ExpressionTree(randomPostfix(leaves, rnd));
+      PostfixProgram program = tree.toProgram();
+      double[] stack = program.newStack();
+      ToDoubleFunction<double[]> compiled = tree.compileFunction();
+
+      // the same random bindings as rows for the program and as columns for the tree
+      List<String> names = program.variables();
+      double[][] rows = new double[ROWS][names.size()];
+      Map<String, double[]> columns = new HashMap<>();
+      for (int v = 0; v < names.size(); v++) {
+        double[] column = new double[ROWS];
+        for (int r = 0; r < ROWS; r++) {
+          column[r] = 1 + rnd.nextDouble();
+          rows[r][v] = column[r];
+        }
+        columns.put(names.get(v), column);
+      }
+      double[] out = new double[ROWS];
+
+      double treeNs = measure(() -> {
+        tree.evaluate(columns, out);
+        return out[ROWS - 1];
+      });
+      double programNs = measure(() -> {
+        double acc = 0;
+        for (double[] row : rows) {
+          acc += program.evaluate(row, stack);
+        }
+        return acc;
+      });
+      double compiledNs = measure(() -> {
+        double acc = 0;
+        for (double[] row : rows) {
+          acc += compiled.applyAsDouble(row);
+        }
+        return acc;
+      });
+      System.out.printf("%8d %14.1f %14.1f %15.1f %8.1fx %8.1fx%n", leaves, treeNs,
+          programNs, compiledNs, treeNs / compiledNs, programNs / compiledNs);
+    }
+    System.out.printf("(checksum %.3e)%n", sink);
+  }
+
+  /**
+   * Random postfix over + - * whose operands are variables x0..x7 or
+   * literals in [1, 2), so values stay finite. The first operand is always
+   * a variable.
+   */
+  private static String randomPostfix(int leaves, Random rnd) {
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    int remaining = leaves;
+    while (remaining > 0 || depth > 1) {
+      if (remaining > 0 && (depth < 2 || rnd.nextBoolean())) {
+        if (remaining == leaves || rnd.nextBoolean()) {
+          sb.append('x').append(rnd.nextInt(VARIABLES)).append(' ');
+        } else {
+          sb.append(1 + rnd.nextDouble()).append(' ');
+        }
+        remaining--;
+        depth++;
+      } else {
+        sb.append("+-*".charAt(rnd.nextInt(3))).append(' ');
+        depth--;
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Best of several rounds, in ns per row. */
+  private static double measure(DoubleSupplier batch) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      round(batch);
+    }
+    double best = Double.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      best = Math.min(best, round(batch));
+    }
+    return best;
+  }
+
+  /** Time batches until the round budget is spent; return ns/row. */
+  private static double round(DoubleSupplier batch) {
+    long rows = 0;
+    double acc = 0;
+    long start = System.nanoTime();
+    long elapsed;
+    do {
+      for (int i = 0; i < 16; i++) {
+        acc += batch.getAsDouble();
+      }
+      rows += 16 * ROWS;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < ROUND_NANOS);
+    sink += acc;
+    return (double) elapsed / rows;
+  }
+}
@@ -0,0 +1,84 @@
+import expression.ExpressionArena;
+import expression.ExpressionTree;
+import intervals.IntervalArena;
+import intervals.IntervalTree;
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Measures retained heap bytes per node of the object trees against their
+ * array-backed arenas.
+ *
+ * <p>Run with {@code ./gradlew footprintBenchmark}, optionally passing the
+ * number of leaves with {@code --args=1000000}. Each figure is the growth in
+ * used heap, after a full GC, from building one tree of a random shape, so
+ * it includes object headers and alignment as the JVM actually lays them
+ * out.
+ */
+public class FootprintBenchmark {
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args optional leaf count
+   */
+  public static void main(String[] args) {
+    int leaves = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Random rnd = new Random(42);
+    String expression = generate(leaves, rnd, () -> Double.toString(1 + rnd.nextDouble()),
+        () -> "+-*".charAt(rnd.nextInt(3)));
+    String intervals = generate(leaves, rnd, () -> {
+      int start = rnd.nextInt(1000);
+      return start + "," + (start + rnd.nextInt(100));
+    }, () -> rnd.nextBoolean() ? 'U' : 'I');
+    int nodes = 2 * leaves - 1;
+
+    System.out.printf("%d nodes%n", nodes);
+    System.out.printf("%-16s %14s%n", "representation", "bytes/node");
+    report("ExpressionTree", nodes, expression, ExpressionTree::new);
+    report("ExpressionArena", nodes, expression, ExpressionArena::new);
+    report("IntervalTree", nodes, intervals, IntervalTree::new);
+    report("IntervalArena", nodes, intervals, IntervalArena::new);
+  }
+
+  private static void report(String name, int nodes, String input,
+      Function<String, Object> parser) {
+    // warm up the parser so its code and metadata are not counted
+    parser.apply(input);
+    long before = usedAfterGc();
+    Object tree = parser.apply(input);
+    long after = usedAfterGc();
+    System.out.printf("%-16s %14.1f%n", name, (double) (after - before) / nodes);
+    Reference.reachabilityFence(tree);
+  }
+
+  private static long usedAfterGc() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private interface Token {
+    Object next();
+  }
+
+  /** Random-shape postfix with the given number of leaves. */
+  private static String generate(int leaves, Random rnd, Token operand, Token operator) {
+    StringBuilder out = new StringBuilder(leaves * 24);
+    int depth = 0;
+    while (leaves > 0 || depth > 1) {
+      if (leaves > 0 && (depth < 2 || rnd.nextBoolean())) {
+        out.append(operand.next()).append(' ');
+        leaves--;
+        depth++;
+      } else {
+        out.append(operator.next()).append(' ');
+        depth--;
+      }
+    }
+    return out.toString();
+  }
+}
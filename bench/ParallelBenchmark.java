@@ -0,0 +1,77 @@
+import expression.ExpressionTree;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how {@link ExpressionTree#evaluateParallel(ForkJoinPool)} scales
+ * with the number of worker threads on a large balanced tree.
+ *
+ * <p>Run with {@code ./gradlew parallelBenchmark}, optionally passing the
+ * number of leaves with {@code --args=4194304}; the default of 2^21 leaves
+ * (about four million nodes) fits a default heap. Every run checks that the
+ * parallel result has the same bits as {@link ExpressionTree#evaluate()}.
+ */
+public class ParallelBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 5;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args optional leaf count
+   */
+  public static void main(String[] args) {
+    int leaves = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 21;
+    StringBuilder postfix = new StringBuilder(leaves * 22);
+    balanced(leaves, new Random(42), postfix);
+    ExpressionTree tree = new ExpressionTree(postfix.toString());
+    postfix.setLength(0);
+    postfix.trimToSize();
+
+    long expected = Double.doubleToRawLongBits(tree.evaluate());
+    double sequentialMs = measure(() -> tree.evaluate());
+    System.out.printf("%d leaves, sequential %.1f ms%n", leaves, sequentialMs);
+    System.out.printf("%8s %10s %9s%n", "threads", "ms", "speedup");
+    int cores = Runtime.getRuntime().availableProcessors();
+    // powers of two up to the core count, then the core count itself
+    for (int threads = 1; threads <= cores; threads = threads < cores
+        ? Math.min(2 * threads, cores) : cores + 1) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        if (Double.doubleToRawLongBits(tree.evaluateParallel(pool)) != expected) {
+          throw new AssertionError("parallel result differs from sequential");
+        }
+        double ms = measure(() -> tree.evaluateParallel(pool));
+        System.out.printf("%8d %10.1f %8.2fx%n", threads, ms, sequentialMs / ms);
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  /** Balanced postfix over + - * with operands in [1, 2) so values stay finite. */
+  private static void balanced(int leaves, Random rnd, StringBuilder out) {
+    if (leaves == 1) {
+      out.append(1 + rnd.nextDouble()).append(' ');
+      return;
+    }
+    balanced(leaves / 2, rnd, out);
+    balanced(leaves - leaves / 2, rnd, out);
+    out.append("+-*".charAt(rnd.nextInt(3))).append(' ');
+  }
+
+  /** Best wall time of several rounds, in milliseconds. */
+  private static double measure(Runnable r) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      r.run();
+    }
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      long start = System.nanoTime();
+      r.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best / 1e6;
+  }
+}
@@ -0,0 +1,86 @@
+import intervals.IntervalSet;
+import intervals.IntervalTree;
+import intervals.PackedInterval;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Combining N random intervals: the sort-and-sweep bulk operations of
+ * {@link IntervalSet}, sequential and parallel, against the old route of
+ * writing an N-leaf postfix string and evaluating an {@link IntervalTree}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xss1g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BulkIntervalBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  public int intervals;
+
+  private long[] packed;
+  private int[] starts;
+  private int[] ends;
+
+  /** Random intervals spread so that about half of them overlap a neighbour. */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(42);
+    packed = new long[intervals];
+    starts = new int[intervals];
+    ends = new int[intervals];
+    for (int i = 0; i < intervals; i++) {
+      starts[i] = rnd.nextInt(4 * intervals);
+      ends[i] = starts[i] + rnd.nextInt(4);
+      packed[i] = PackedInterval.of(starts[i], ends[i]);
+    }
+  }
+
+  /** Sort the packed intervals, then sweep. */
+  @Benchmark
+  public IntervalSet unionAll() {
+    return IntervalSet.unionAll(packed);
+  }
+
+  /** Sort the packed intervals in parallel, then sweep. */
+  @Benchmark
+  public IntervalSet parallelUnionAll() {
+    return IntervalSet.parallelUnionAll(packed);
+  }
+
+  /** Pack the columns, sort, then sweep. */
+  @Benchmark
+  public IntervalSet unionAllColumns() {
+    return IntervalSet.unionAll(starts, ends);
+  }
+
+  /** A single linear pass. */
+  @Benchmark
+  public IntervalSet intersectAll() {
+    return IntervalSet.intersectAll(starts, ends);
+  }
+
+  /** Build an N-leaf union chain as text, parse it and evaluate the hull. */
+  @Benchmark
+  public long treeUnion() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(starts[0]).append(',').append(ends[0]);
+    for (int i = 1; i < intervals; i++) {
+      sb.append(' ').append(starts[i]).append(',').append(ends[i]).append(" U");
+    }
+    return new IntervalTree(sb.toString()).evaluatePacked();
+  }
+}
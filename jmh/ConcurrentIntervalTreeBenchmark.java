@@ -0,0 +1,107 @@
+import intervals.ConcurrentIntervalTree;
+import intervals.MutableIntervalTree;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read and write throughput of one tree shared by seven reader threads and
+ * one writer that keeps moving leaves.
+ *
+ * <p>The {@code cow} group uses {@link ConcurrentIntervalTree}: readers take
+ * the current version from an atomic reference and the writer publishes path
+ * copies. The {@code rwlock} group guards a {@link MutableIntervalTree} with
+ * a {@link ReentrantReadWriteLock}; the writer re-evaluates while holding
+ * the write lock, so readers under the read lock only read the cached root.
+ * JMH reports each method's throughput separately.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentIntervalTreeBenchmark {
+
+  /** The shared trees, one per group. */
+  @State(Scope.Group)
+  public static class Shared {
+    @Param({"1001", "100001"})
+    public int nodes;
+
+    ConcurrentIntervalTree cow;
+    MutableIntervalTree locked;
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Parse both trees from the same balanced expression. */
+    @Setup
+    public void setup() {
+      String postfix = Shapes.intervals("BALANCED", nodes, 42);
+      cow = new ConcurrentIntervalTree(postfix);
+      locked = new MutableIntervalTree(postfix);
+      locked.evaluatePacked();
+    }
+  }
+
+  /** The writer's position in its sequence of updates. */
+  @State(Scope.Thread)
+  public static class Writer {
+    int next;
+  }
+
+  /** Read the current result without locking. */
+  @Benchmark
+  @Group("cow")
+  @GroupThreads(7)
+  public long cowRead(Shared s) {
+    return s.cow.evaluatePacked();
+  }
+
+  /** Publish a version with one leaf moved. */
+  @Benchmark
+  @Group("cow")
+  @GroupThreads(1)
+  public Object cowWrite(Shared s, Writer w) {
+    int leaf = w.next++ % s.cow.snapshot().leafCount();
+    return s.cow.setLeaf(leaf, w.next & 1023, (w.next & 1023) + 10);
+  }
+
+  /** Read the current result under the read lock. */
+  @Benchmark
+  @Group("rwlock")
+  @GroupThreads(7)
+  public long lockedRead(Shared s) {
+    s.lock.readLock().lock();
+    try {
+      return s.locked.evaluatePacked();
+    } finally {
+      s.lock.readLock().unlock();
+    }
+  }
+
+  /** Move one leaf and re-evaluate under the write lock. */
+  @Benchmark
+  @Group("rwlock")
+  @GroupThreads(1)
+  public long lockedWrite(Shared s, Writer w) {
+    s.lock.writeLock().lock();
+    try {
+      int leaf = w.next++ % s.locked.leafCount();
+      s.locked.setLeaf(leaf, w.next & 1023, (w.next & 1023) + 10);
+      return s.locked.evaluatePacked();
+    } finally {
+      s.lock.writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+import expression.ExpressionTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse, evaluate and render costs of {@link ExpressionTree} across tree
+ * shapes and sizes. Run with {@code ./gradlew jmh}; allocation per operation
+ * is reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionTreeBenchmark {
+
+  /** A generated expression and its parsed tree. */
+  @State(Scope.Benchmark)
+  public static class Input {
+    @Param({"BALANCED", "RANDOM", "LEFT_DEEP", "RIGHT_DEEP"})
+    public String shape;
+
+    @Param({"11", "1001", "100001", "1000001"})
+    public int nodes;
+
+    String postfix;
+    ExpressionTree tree;
+
+    /** Generate the input and parse it once for the tree benchmarks. */
+    @Setup
+    public void setup() {
+      postfix = Shapes.expression(shape, nodes, 42);
+      tree = new ExpressionTree(postfix);
+    }
+  }
+
+  /**
+   * Inputs for {@link #textTree}. The drawing of a degenerate tree repeats
+   * its indentation on every line, so output grows with the square of the
+   * depth and the largest sizes would not fit in memory.
+   */
+  @State(Scope.Benchmark)
+  public static class TextTreeInput {
+    @Param({"BALANCED", "RANDOM", "LEFT_DEEP", "RIGHT_DEEP"})
+    public String shape;
+
+    @Param({"11", "1001", "10001"})
+    public int nodes;
+
+    ExpressionTree tree;
+
+    /** Generate and parse the input. */
+    @Setup
+    public void setup() {
+      tree = new ExpressionTree(Shapes.expression(shape, nodes, 42));
+    }
+  }
+
+  /** Tokenize and build a tree. */
+  @Benchmark
+  public ExpressionTree parse(Input in) {
+    return new ExpressionTree(in.postfix);
+  }
+
+  /** Evaluate a parsed tree. */
+  @Benchmark
+  public double evaluate(Input in) {
+    return in.tree.evaluate();
+  }
+
+  /** Render fully parenthesized infix. */
+  @Benchmark
+  public String infix(Input in) {
+    return in.tree.infix();
+  }
+
+  /** Render Scheme syntax. */
+  @Benchmark
+  public String schemeExpression(Input in) {
+    return in.tree.schemeExpression();
+  }
+
+  /** Draw the text tree. */
+  @Benchmark
+  public String textTree(TextTreeInput in) {
+    return in.tree.textTree();
+  }
+}
@@ -0,0 +1,66 @@
+import intervals.IntervalJoin;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Joining two random collections of the same size, such as reservations
+ * against maintenance windows, sequentially and on the common pool. The
+ * sink only counts, so the figures are the cost of finding the pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IntervalJoinBenchmark {
+
+  @Param({"100000", "1000000", "10000000"})
+  public int intervals;
+
+  private int[] leftStarts;
+  private int[] leftEnds;
+  private int[] rightStarts;
+  private int[] rightEnds;
+
+  /** Short intervals on the left, longer ones on the right, about ten pairs each. */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(42);
+    int range = 100 * intervals;
+    leftStarts = new int[intervals];
+    leftEnds = new int[intervals];
+    rightStarts = new int[intervals];
+    rightEnds = new int[intervals];
+    for (int i = 0; i < intervals; i++) {
+      leftStarts[i] = rnd.nextInt(range);
+      leftEnds[i] = leftStarts[i] + rnd.nextInt(100);
+      rightStarts[i] = rnd.nextInt(range);
+      rightEnds[i] = rightStarts[i] + rnd.nextInt(2000);
+    }
+  }
+
+  /** Sort both sides, then one sweep on this thread. */
+  @Benchmark
+  public long join() {
+    return IntervalJoin.join(leftStarts, leftEnds, rightStarts, rightEnds, (l, r) -> { });
+  }
+
+  /** Parallel sorts, then one sweep per partition on the common pool. */
+  @Benchmark
+  public long parallelJoin() {
+    return IntervalJoin.parallelJoin(leftStarts, leftEnds, rightStarts, rightEnds,
+        (l, r) -> { });
+  }
+}
@@ -0,0 +1,229 @@
+import intervals.Interval;
+import intervals.IntervalTree;
+import intervals.MutableIntervalTree;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse, evaluate and render costs of {@link IntervalTree} across tree
+ * shapes and sizes. Run with {@code ./gradlew jmh}; allocation per operation
+ * is reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ *
+ * <p>{@code IntervalTree} evaluates recursively, so the forks get a large
+ * thread stack for the deep shapes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class IntervalTreeBenchmark {
+
+  /** A generated interval expression and its parsed tree. */
+  @State(Scope.Benchmark)
+  public static class Input {
+    @Param({"BALANCED", "RANDOM", "LEFT_DEEP", "RIGHT_DEEP"})
+    public String shape;
+
+    @Param({"11", "1001", "100001", "1000001"})
+    public int nodes;
+
+    String postfix;
+    IntervalTree tree;
+
+    /** Generate the input and parse it once for the tree benchmarks. */
+    @Setup
+    public void setup() {
+      postfix = Shapes.intervals(shape, nodes, 42);
+      tree = new IntervalTree(postfix);
+    }
+  }
+
+  /**
+   * An intersection-only chain, as used for filters: random intervals whose
+   * running intersection soon becomes empty. Compares the binary chain with
+   * its {@link IntervalTree#optimize() optimized} n-ary form.
+   */
+  @State(Scope.Benchmark)
+  public static class FilterInput {
+    @Param({"11", "1001", "100001"})
+    public int nodes;
+
+    IntervalTree tree;
+    IntervalTree optimized;
+
+    /** Generate, parse and optimize the chain. */
+    @Setup
+    public void setup() {
+      Random rnd = new Random(42);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < (nodes + 1) / 2; i++) {
+        int start = rnd.nextInt(1000);
+        sb.append(start).append(',').append(start + rnd.nextInt(500)).append(' ');
+        if (i > 0) {
+          sb.append("I ");
+        }
+      }
+      tree = new IntervalTree(sb.toString());
+      optimized = tree.optimize();
+    }
+  }
+
+  /**
+   * A balanced tree whose leaves are nudged one at a time, as a booking
+   * service does, compared with re-evaluating the whole tree.
+   */
+  @State(Scope.Thread)
+  public static class MutableInput {
+    @Param({"1001", "100001"})
+    public int nodes;
+
+    MutableIntervalTree tree;
+    int next;
+
+    /** Parse the tree and evaluate it once, so every operator is cached. */
+    @Setup
+    public void setup() {
+      tree = new MutableIntervalTree(Shapes.intervals("BALANCED", nodes, 42));
+      tree.evaluate();
+    }
+  }
+
+  /**
+   * One rule checked against many records, each binding {@code x} and
+   * {@code y} to an interval.
+   */
+  @State(Scope.Benchmark)
+  public static class BatchInput {
+    static final String RULE = "x 0,500 I y 250,750 I U";
+
+    @Param({"100000"})
+    public int rows;
+
+    IntervalTree tree;
+    Map<String, int[]> starts = new HashMap<>();
+    Map<String, int[]> ends = new HashMap<>();
+    int[] outStarts;
+    int[] outEnds;
+
+    /** Generate the columns and parse the rule. */
+    @Setup
+    public void setup() {
+      Random rnd = new Random(42);
+      for (String name : new String[] {"x", "y"}) {
+        int[] s = new int[rows];
+        int[] e = new int[rows];
+        for (int i = 0; i < rows; i++) {
+          s[i] = rnd.nextInt(1000);
+          e[i] = s[i] + rnd.nextInt(200);
+        }
+        starts.put(name, s);
+        ends.put(name, e);
+      }
+      tree = new IntervalTree(RULE);
+      outStarts = new int[rows];
+      outEnds = new int[rows];
+    }
+  }
+
+  /**
+   * Inputs for {@link #textTree}. The drawing of a degenerate tree repeats
+   * its indentation on every line, so output grows with the square of the
+   * depth and the largest sizes would not fit in memory.
+   */
+  @State(Scope.Benchmark)
+  public static class TextTreeInput {
+    @Param({"BALANCED", "RANDOM", "LEFT_DEEP", "RIGHT_DEEP"})
+    public String shape;
+
+    @Param({"11", "1001", "10001"})
+    public int nodes;
+
+    IntervalTree tree;
+
+    /** Generate and parse the input. */
+    @Setup
+    public void setup() {
+      tree = new IntervalTree(Shapes.intervals(shape, nodes, 42));
+    }
+  }
+
+  /** Tokenize and build a tree. */
+  @Benchmark
+  public IntervalTree parse(Input in) {
+    return new IntervalTree(in.postfix);
+  }
+
+  /** Evaluate a parsed tree. */
+  @Benchmark
+  public Interval evaluate(Input in) {
+    return in.tree.evaluate();
+  }
+
+  /** Evaluate a parsed tree to a packed long, allocating nothing. */
+  @Benchmark
+  public long evaluatePacked(Input in) {
+    return in.tree.evaluatePacked();
+  }
+
+  /** Evaluate an intersection chain as parsed. */
+  @Benchmark
+  public long filter(FilterInput in) {
+    return in.tree.evaluatePacked();
+  }
+
+  /** Evaluate an intersection chain flattened, stopping once it is empty. */
+  @Benchmark
+  public long filterOptimized(FilterInput in) {
+    return in.optimized.evaluatePacked();
+  }
+
+  /** Move one leaf and re-evaluate, recomputing only its path to the root. */
+  @Benchmark
+  public long nudgeAndEvaluate(MutableInput in) {
+    int leaf = in.next++ % in.tree.leafCount();
+    in.tree.setLeaf(leaf, in.next & 1023, (in.next & 1023) + 10);
+    return in.tree.evaluatePacked();
+  }
+
+  /** Evaluate the rule for every record in one columnar pass. */
+  @Benchmark
+  public int[] batchColumns(BatchInput in) {
+    in.tree.evaluate(in.starts, in.ends, in.outStarts, in.outEnds);
+    return in.outEnds;
+  }
+
+  /** Evaluate the rule for every record by formatting and parsing a literal string. */
+  @Benchmark
+  public long batchPerRowStrings(BatchInput in) {
+    int[] xs = in.starts.get("x");
+    int[] xe = in.ends.get("x");
+    int[] ys = in.starts.get("y");
+    int[] ye = in.ends.get("y");
+    long sum = 0;
+    for (int i = 0; i < in.rows; i++) {
+      String postfix = xs[i] + "," + xe[i] + " 0,500 I " + ys[i] + "," + ye[i] + " 250,750 I U";
+      sum += new IntervalTree(postfix).evaluatePacked();
+    }
+    return sum;
+  }
+
+  /** Draw the text tree. */
+  @Benchmark
+  public String textTree(TextTreeInput in) {
+    return in.tree.textTree();
+  }
+}
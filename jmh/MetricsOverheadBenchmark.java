@@ -0,0 +1,95 @@
+import expression.ExpressionTree;
+import intervals.IntervalTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import postfix.Metrics;
+
+/**
+ * Cost of {@link Metrics} on small trees, where fixed per-call overhead is
+ * most visible. Each {@code metrics} setting runs in its own fork:
+ * {@code baseline} switches metrics off for the whole JVM with
+ * {@code postfix.metrics.off}, so the JIT compiles the uninstrumented path;
+ * {@code disabled} is the default, paying one flag read per call; and
+ * {@code enabled} records everything. Disabled against baseline is the cost
+ * of the flag, and enabled against baseline the price of recording.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+  @Param({"baseline", "disabled", "enabled"})
+  public String metrics;
+
+  @Param({"11", "101"})
+  public int nodes;
+
+  private String expression;
+  private String intervals;
+  private ExpressionTree expressionTree;
+  private IntervalTree intervalTree;
+
+  /** Generate and parse the inputs, then switch metrics to the parameter. */
+  @Setup
+  public void setup() {
+    boolean baseline = metrics.equals("baseline");
+    if (baseline) {
+      // read once when Metrics is initialized, so this must come before any tree
+      System.setProperty("postfix.metrics.off", "true");
+    }
+    expression = Shapes.expression("RANDOM", nodes, 42);
+    intervals = Shapes.intervals("RANDOM", nodes, 42);
+    expressionTree = new ExpressionTree(expression);
+    intervalTree = new IntervalTree(intervals);
+    Metrics.setEnabled(!metrics.equals("disabled"));
+    if (baseline && Metrics.isEnabled()) {
+      throw new IllegalStateException("Metrics was initialized before the baseline switch");
+    }
+  }
+
+  /** Leave metrics off and empty for the next trial. */
+  @TearDown
+  public void tearDown() {
+    Metrics.setEnabled(false);
+    Metrics.EXPRESSION.reset();
+    Metrics.INTERVAL.reset();
+  }
+
+  /** Parse an arithmetic expression. */
+  @Benchmark
+  public ExpressionTree parseExpression() {
+    return new ExpressionTree(expression);
+  }
+
+  /** Evaluate a parsed arithmetic expression. */
+  @Benchmark
+  public double evaluateExpression() {
+    return expressionTree.evaluate();
+  }
+
+  /** Parse an interval expression. */
+  @Benchmark
+  public IntervalTree parseIntervals() {
+    return new IntervalTree(intervals);
+  }
+
+  /** Evaluate a parsed interval expression. */
+  @Benchmark
+  public Object evaluateIntervals() {
+    return intervalTree.evaluate();
+  }
+}
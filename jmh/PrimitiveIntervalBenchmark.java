@@ -0,0 +1,72 @@
+import intervals.DoubleInterval;
+import intervals.DoubleIntervalTree;
+import intervals.Interval;
+import intervals.IntervalArena;
+import intervals.LongInterval;
+import intervals.LongIntervalTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluation cost of the {@code long} and {@code double} interval trees
+ * against the {@code int} {@link IntervalArena} they are laid out like, on
+ * the same expressions. The three should be within noise of each other.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveIntervalBenchmark {
+
+  /** One expression parsed by each tree. */
+  @State(Scope.Benchmark)
+  public static class Input {
+    @Param({"BALANCED", "RANDOM"})
+    public String shape;
+
+    @Param({"1001", "100001"})
+    public int nodes;
+
+    IntervalArena ints;
+    LongIntervalTree longs;
+    DoubleIntervalTree doubles;
+
+    /** Generate the expression and parse it three ways. */
+    @Setup
+    public void setup() {
+      String postfix = Shapes.intervals(shape, nodes, 42);
+      ints = new IntervalArena(postfix);
+      longs = new LongIntervalTree(postfix);
+      doubles = new DoubleIntervalTree(postfix);
+    }
+  }
+
+  /** Evaluate with int coordinates. */
+  @Benchmark
+  public Interval evaluateInt(Input in) {
+    return in.ints.evaluate();
+  }
+
+  /** Evaluate with long coordinates. */
+  @Benchmark
+  public LongInterval evaluateLong(Input in) {
+    return in.longs.evaluate();
+  }
+
+  /** Evaluate with double coordinates. */
+  @Benchmark
+  public DoubleInterval evaluateDouble(Input in) {
+    return in.doubles.evaluate();
+  }
+}
@@ -0,0 +1,106 @@
+import java.util.Random;
+
+/**
+ * Generators for benchmark inputs: postfix strings of a given node count in
+ * one of several tree shapes.
+ *
+ * <ul>
+ *   <li>{@code BALANCED}: complete binary tree, depth log2(n)</li>
+ *   <li>{@code RANDOM}: operators placed at random, depth around sqrt(n)</li>
+ *   <li>{@code LEFT_DEEP}: {@code a b op c op d op ...}, depth n/2</li>
+ *   <li>{@code RIGHT_DEEP}: {@code a b c ... op op op}, depth n/2</li>
+ * </ul>
+ *
+ * <p>Output is deterministic for a given seed so runs are comparable.
+ */
+final class Shapes {
+
+  private Shapes() {
+  }
+
+  /**
+   * Arithmetic over + - * with operands in [1, 2), so no division by zero.
+   *
+   * @param shape one of the shape names above
+   * @param nodes total node count; rounded down to an odd number
+   * @param seed random seed
+   * @return the postfix string
+   */
+  static String expression(String shape, int nodes, long seed) {
+    Random rnd = new Random(seed);
+    return generate(shape, nodes, () -> Double.toString(1 + rnd.nextDouble()),
+        () -> "+-*".charAt(rnd.nextInt(3)), rnd);
+  }
+
+  /**
+   * Union and intersection over intervals with ends in [0, 1000).
+   *
+   * @param shape one of the shape names above
+   * @param nodes total node count; rounded down to an odd number
+   * @param seed random seed
+   * @return the postfix string
+   */
+  static String intervals(String shape, int nodes, long seed) {
+    Random rnd = new Random(seed);
+    return generate(shape, nodes, () -> {
+      int start = rnd.nextInt(1000);
+      return start + "," + (start + rnd.nextInt(100));
+    }, () -> rnd.nextBoolean() ? 'U' : 'I', rnd);
+  }
+
+  private interface Token {
+    Object next();
+  }
+
+  private static String generate(String shape, int nodes, Token operand, Token operator,
+      Random rnd) {
+    int leaves = Math.max(1, (nodes + 1) / 2);
+    StringBuilder out = new StringBuilder(leaves * 24);
+    switch (shape) {
+      case "BALANCED":
+        balanced(leaves, operand, operator, out);
+        break;
+      case "RANDOM":
+        int depth = 0;
+        int remaining = leaves;
+        while (remaining > 0 || depth > 1) {
+          if (remaining > 0 && (depth < 2 || rnd.nextBoolean())) {
+            out.append(operand.next()).append(' ');
+            remaining--;
+            depth++;
+          } else {
+            out.append(operator.next()).append(' ');
+            depth--;
+          }
+        }
+        break;
+      case "LEFT_DEEP":
+        out.append(operand.next()).append(' ');
+        for (int i = 1; i < leaves; i++) {
+          out.append(operand.next()).append(' ').append(operator.next()).append(' ');
+        }
+        break;
+      case "RIGHT_DEEP":
+        for (int i = 0; i < leaves; i++) {
+          out.append(operand.next()).append(' ');
+        }
+        for (int i = 1; i < leaves; i++) {
+          out.append(operator.next()).append(' ');
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("unknown shape: " + shape);
+    }
+    return out.toString();
+  }
+
+  private static void balanced(int leaves, Token operand, Token operator, StringBuilder out) {
+    if (leaves == 1) {
+      out.append(operand.next()).append(' ');
+      return;
+    }
+    balanced(leaves / 2, operand, operator, out);
+    balanced(leaves - leaves / 2, operand, operator, out);
+    out.append(operator.next()).append(' ');
+  }
+}
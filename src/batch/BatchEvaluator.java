@@ -0,0 +1,328 @@
+package batch;
+
+import expression.ExpressionArena;
+import intervals.IntervalArena;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a file of postfix expressions, one per line, on a fixed pool of
+ * worker threads.
+ *
+ * <p>The input is read through a {@link FileChannel} in large blocks. Each
+ * block, cut at its last line break, becomes one task that decodes, parses
+ * and evaluates its lines and encodes the results, so the reading thread
+ * does no per-line work. At most two tasks per worker are in flight; the
+ * reader waits for the oldest before submitting more, which bounds memory
+ * and lets results be written strictly in input order.
+ *
+ * <p>Line {@code n} of the output holds the value of line {@code n} of the
+ * input. A line that fails to parse or evaluate leaves its output line empty
+ * and is reported on the error file as {@code <line number>: <message>};
+ * the run carries on. Blank input lines give blank output lines and no
+ * error.
+ *
+ * <p>Lines are parsed into {@link ExpressionArena} or {@link IntervalArena},
+ * which give the same results as {@code ExpressionTree} and
+ * {@code IntervalTree} with far fewer allocations per line.
+ */
+public final class BatchEvaluator {
+
+  /** What the input lines contain. */
+  public enum Mode {
+    /** Arithmetic expressions; each result is printed as a double. */
+    EXPRESSION,
+    /** Interval expressions; each result is printed as {@code start,end}. */
+    INTERVAL
+  }
+
+  /** Totals for one run. */
+  public static final class Summary {
+    private final long lines;
+    private final long failures;
+
+    Summary(long lines, long failures) {
+      this.lines = lines;
+      this.failures = failures;
+    }
+
+    /**
+     * Input lines read, including failed and blank ones.
+     *
+     * @return the count
+     */
+    public long lines() {
+      return lines;
+    }
+
+    /**
+     * Lines reported on the error file.
+     *
+     * @return the count
+     */
+    public long failures() {
+      return failures;
+    }
+
+    @Override
+    public String toString() {
+      return lines + " lines, " + failures + " failed";
+    }
+  }
+
+  /** Default size of each read, and so of each task's share of the input. */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+  private final Mode mode;
+  private final int threads;
+  private final int blockSize;
+
+  /**
+   * Create an evaluator with one thread per processor and
+   * {@link #DEFAULT_BLOCK_SIZE} reads.
+   *
+   * @param mode what the input lines contain
+   */
+  public BatchEvaluator(Mode mode) {
+    this(mode, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Create an evaluator.
+   *
+   * @param mode what the input lines contain
+   * @param threads number of worker threads
+   * @param blockSize bytes per read; a line longer than this grows the buffer
+   * @throws IllegalArgumentException if threads or blockSize is not positive
+   */
+  public BatchEvaluator(Mode mode, int threads, int blockSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be positive");
+    }
+    this.mode = mode;
+    this.threads = threads;
+    this.blockSize = blockSize;
+  }
+
+  /** Results of one block, encoded and ready to write. */
+  private static final class Result {
+    private final byte[] output;
+    private final int lines;
+    /** Block-relative line index and message of each failure, in order. */
+    private final int[] failedLines;
+    private final String[] messages;
+
+    Result(byte[] output, int lines, int[] failedLines, String[] messages) {
+      this.output = output;
+      this.lines = lines;
+      this.failedLines = failedLines;
+      this.messages = messages;
+    }
+  }
+
+  /**
+   * Evaluate every line of {@code input}, replacing {@code output} and
+   * {@code errors}.
+   *
+   * @param input file of postfix expressions, UTF-8, one per line
+   * @param output file to receive one result per input line
+   * @param errors file to receive one line per failed input line
+   * @return line and failure counts
+   * @throws IOException if a file cannot be read or written
+   */
+  public Summary run(Path input, Path output, Path errors) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "batch-evaluator");
+      t.setDaemon(true);
+      return t;
+    });
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        FileChannel err = FileChannel.open(errors, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      Deque<Future<Result>> pending = new ArrayDeque<>();
+      OrderedWriter writer = new OrderedWriter(out, err);
+      ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+      boolean eof = false;
+      while (!eof) {
+        eof = in.read(buffer) < 0;
+        int cut = eof ? buffer.position() : lastLineBreak(buffer) + 1;
+        if (cut == 0 && !eof) {
+          // a line longer than the buffer; grow and keep reading
+          if (!buffer.hasRemaining()) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+          }
+          continue;
+        }
+        if (cut > 0) {
+          byte[] block = Arrays.copyOf(buffer.array(), cut);
+          pending.add(pool.submit(() -> evaluate(block)));
+          if (pending.size() >= 2 * threads) {
+            writer.write(await(pending.poll()));
+          }
+        }
+        buffer.flip().position(cut);
+        buffer.compact();
+      }
+      while (!pending.isEmpty()) {
+        writer.write(await(pending.poll()));
+      }
+      return new Summary(writer.lines, writer.failures);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** Index of the last '\n' in the filled part of the buffer, or -1. */
+  private static int lastLineBreak(ByteBuffer buffer) {
+    byte[] bytes = buffer.array();
+    for (int i = buffer.position() - 1; i >= 0; i--) {
+      if (bytes[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static Result await(Future<Result> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /** Evaluate the lines of one block, which ends at a line break or EOF. */
+  private Result evaluate(byte[] block) {
+    StringBuilder out = new StringBuilder(block.length);
+    int[] failedLines = new int[8];
+    String[] messages = new String[8];
+    int failures = 0;
+    int lines = 0;
+    int start = 0;
+    while (start < block.length) {
+      int end = start;
+      while (end < block.length && block[end] != '\n') {
+        end++;
+      }
+      int next = end + 1;
+      if (end > start && block[end - 1] == '\r') {
+        end--;
+      }
+      String line = new String(block, start, end - start, StandardCharsets.UTF_8);
+      if (!line.isBlank()) {
+        try {
+          out.append(evaluate(line));
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException e) {
+          if (failures == failedLines.length) {
+            failedLines = Arrays.copyOf(failedLines, 2 * failures);
+            messages = Arrays.copyOf(messages, 2 * failures);
+          }
+          failedLines[failures] = lines;
+          messages[failures++] = e.getMessage();
+        }
+      }
+      out.append('\n');
+      lines++;
+      start = next;
+    }
+    return new Result(out.toString().getBytes(StandardCharsets.UTF_8), lines,
+        Arrays.copyOf(failedLines, failures), Arrays.copyOf(messages, failures));
+  }
+
+  private String evaluate(String line) {
+    if (mode == Mode.INTERVAL) {
+      return new IntervalArena(line).evaluate().toString();
+    }
+    return Double.toString(new ExpressionArena(line).evaluate());
+  }
+
+  /** Writes results in order, numbering failures from the start of the file. */
+  private static final class OrderedWriter {
+    private final FileChannel out;
+    private final FileChannel err;
+    private long lines;
+    private long failures;
+
+    OrderedWriter(FileChannel out, FileChannel err) {
+      this.out = out;
+      this.err = err;
+    }
+
+    void write(Result result) throws IOException {
+      writeFully(out, ByteBuffer.wrap(result.output));
+      if (result.failedLines.length > 0) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < result.failedLines.length; i++) {
+          sb.append(lines + result.failedLines[i] + 1).append(": ")
+              .append(result.messages[i]).append('\n');
+        }
+        writeFully(err, ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        failures += result.failedLines.length;
+      }
+      lines += result.lines;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * Command-line entry point.
+   *
+   * <pre>
+   *   java batch.BatchEvaluator [--intervals] [--threads N] input output errors
+   * </pre>
+   *
+   * @param args options followed by the three file names
+   * @throws IOException if a file cannot be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    Mode mode = Mode.EXPRESSION;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int i = 0;
+    for (; i < args.length && args[i].startsWith("--"); i++) {
+      if (args[i].equals("--intervals")) {
+        mode = Mode.INTERVAL;
+      } else if (args[i].equals("--threads") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+    if (args.length - i != 3) {
+      System.err.println(
+          "usage: BatchEvaluator [--intervals] [--threads N] input output errors");
+      System.exit(2);
+    }
+    long start = System.nanoTime();
+    Summary summary = new BatchEvaluator(mode, threads, DEFAULT_BLOCK_SIZE)
+        .run(Paths.get(args[i]), Paths.get(args[i + 1]), Paths.get(args[i + 2]));
+    System.err.printf("%s in %.1f s%n", summary, (System.nanoTime() - start) / 1e9);
+  }
+}
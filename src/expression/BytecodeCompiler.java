@@ -0,0 +1,353 @@
+package expression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Translates a {@link PostfixProgram} into a hidden class implementing
+ * {@link DoubleSupplier}, or {@link ToDoubleFunction} over a
+ * {@code double[]} of variable values when the program reads variables.
+ *
+ * <p>The generated {@code getAsDouble()} is the program unrolled into
+ * straight-line JVM bytecode: one {@code ldc2_w} per constant and one
+ * {@code dadd}/{@code dsub}/{@code dmul} per operator. Division calls
+ * {@link PostfixProgram#divide} to keep the division-by-zero check, and
+ * registers for shared subexpressions become local variables. Each variable
+ * is a {@code daload} from the values array on every call. With no
+ * branches the method needs no stack map frames, so the class file is
+ * small enough to write by hand without a bytecode library.
+ */
+final class BytecodeCompiler {
+
+  private static final int MAX_CODE_LENGTH = 65535;
+  private static final int MAX_CONSTANT_POOL = 65535;
+
+  // fixed constant pool entries, see writeClass()
+  private static final int THIS_CLASS = 2;
+  private static final int OBJECT_CLASS = 4;
+  private static final int SUPPLIER_CLASS = 6;
+  private static final int INIT_NAME = 7;
+  private static final int VOID_DESC = 8;
+  private static final int OBJECT_INIT = 10;
+  private static final int METHOD_NAME = 11;
+  private static final int DOUBLE_DESC = 12;
+  private static final int CODE_ATTR = 13;
+  private static final int DIVIDE = 19;
+  private static final int FUNCTION_CLASS = 21;
+  private static final int APPLY_NAME = 22;
+  private static final int APPLY_DESC = 23;
+  private static final int DOUBLE_ARRAY = 25;
+  private static final int FIRST_DOUBLE = 26;
+
+  private static final int DCONST_0 = 0x0e;
+  private static final int DCONST_1 = 0x0f;
+  private static final int ICONST_0 = 0x03;
+  private static final int BIPUSH = 0x10;
+  private static final int SIPUSH = 0x11;
+  private static final int LDC2_W = 0x14;
+  private static final int DLOAD = 0x18;
+  private static final int ALOAD_0 = 0x2a;
+  private static final int ALOAD_1 = 0x2b;
+  private static final int DALOAD = 0x31;
+  private static final int ASTORE_1 = 0x4c;
+  private static final int DSTORE = 0x39;
+  private static final int DUP2 = 0x5c;
+  private static final int DADD = 0x63;
+  private static final int DSUB = 0x67;
+  private static final int DMUL = 0x6b;
+  private static final int DRETURN = 0xaf;
+  private static final int RETURN = 0xb1;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int CHECKCAST = 0xc0;
+  private static final int WIDE = 0xc4;
+
+  private static final long ZERO_BITS = Double.doubleToRawLongBits(0.0);
+  private static final long ONE_BITS = Double.doubleToRawLongBits(1.0);
+
+  private BytecodeCompiler() {
+  }
+
+  /**
+   * Compile a program into a hidden class.
+   *
+   * <p>Programs too large for a single JVM method fall back to a supplier
+   * that interprets the program.
+   *
+   * @param program the program to compile
+   * @return a supplier evaluating the program
+   * @throws IllegalStateException if the program reads variables
+   */
+  static DoubleSupplier compile(PostfixProgram program) {
+    if (!program.variables().isEmpty()) {
+      throw new IllegalStateException("cannot compile unbound variable: "
+          + program.variables().get(0));
+    }
+    byte[] classFile = writeClass(program, false);
+    if (classFile == null) {
+      return program::evaluate;
+    }
+    return (DoubleSupplier) define(classFile);
+  }
+
+  /**
+   * Compile a program that may read variables into a hidden class.
+   *
+   * <p>Programs too large for a single JVM method fall back to a function
+   * that interprets the program.
+   *
+   * @param program the program to compile
+   * @return a function of the variable values, indexed as in
+   *     {@link PostfixProgram#variables()}
+   */
+  @SuppressWarnings("unchecked")
+  static ToDoubleFunction<double[]> compileFunction(PostfixProgram program) {
+    byte[] classFile = writeClass(program, true);
+    if (classFile == null) {
+      return values -> program.evaluate(values, program.newStack());
+    }
+    return (ToDoubleFunction<double[]>) define(classFile);
+  }
+
+  /** Define a hidden class and create its one instance. */
+  private static Object define(byte[] classFile) {
+    try {
+      MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(classFile, true);
+      return hidden
+          .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+          .invoke();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException("could not define compiled expression", e);
+    }
+  }
+
+  /**
+   * Write the class file, or return null if the program exceeds JVM limits.
+   * A function takes the values array as local 1, and its registers start
+   * at local 2.
+   */
+  private static byte[] writeClass(PostfixProgram program, boolean function) {
+    final byte[] code = program.code();
+    final double[] constants = program.constants();
+    final int[] operands = program.operands();
+
+    // distinct constants other than 0.0 and 1.0 go in the pool (two slots each)
+    Map<Long, Integer> pool = new HashMap<>();
+    int nextEntry = FIRST_DOUBLE;
+    for (double c : constants) {
+      long bits = Double.doubleToRawLongBits(c);
+      if (bits != ZERO_BITS && bits != ONE_BITS && !pool.containsKey(bits)) {
+        if (nextEntry + 2 > MAX_CONSTANT_POOL) {
+          return null;
+        }
+        pool.put(bits, nextEntry);
+        nextEntry += 2;
+      }
+    }
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream(code.length * 3 + 5);
+    if (function) {
+      // the erased parameter is an Object; cast it once
+      body.write(ALOAD_1);
+      writeIndexed(body, CHECKCAST, DOUBLE_ARRAY);
+      body.write(ASTORE_1);
+    }
+    int firstLocal = function ? 2 : 1;
+    int k = 0;
+    int v = 0;
+    for (byte op : code) {
+      switch (op) {
+        case PostfixProgram.PUSH:
+          long bits = Double.doubleToRawLongBits(constants[k++]);
+          if (bits == ZERO_BITS) {
+            body.write(DCONST_0);
+          } else if (bits == ONE_BITS) {
+            body.write(DCONST_1);
+          } else {
+            writeIndexed(body, LDC2_W, pool.get(bits));
+          }
+          break;
+        case PostfixProgram.ADD:
+          body.write(DADD);
+          break;
+        case PostfixProgram.SUB:
+          body.write(DSUB);
+          break;
+        case PostfixProgram.MUL:
+          body.write(DMUL);
+          break;
+        case PostfixProgram.DIV:
+          writeIndexed(body, INVOKESTATIC, DIVIDE);
+          break;
+        case PostfixProgram.LOAD:
+          int slot = operands[v++];
+          if (slot > Short.MAX_VALUE) {
+            return null;
+          }
+          body.write(ALOAD_1);
+          if (slot <= 5) {
+            body.write(ICONST_0 + slot);
+          } else if (slot <= Byte.MAX_VALUE) {
+            body.write(BIPUSH);
+            body.write(slot);
+          } else {
+            writeIndexed(body, SIPUSH, slot);
+          }
+          body.write(DALOAD);
+          break;
+        case PostfixProgram.STORE:
+          body.write(DUP2);
+          writeLocal(body, DSTORE, firstLocal, operands[v++]);
+          break;
+        case PostfixProgram.FETCH:
+          writeLocal(body, DLOAD, firstLocal, operands[v++]);
+          break;
+        default:
+          throw new IllegalStateException("bad opcode: " + op);
+      }
+    }
+    body.write(DRETURN);
+    // a double takes two operand stack slots and two locals
+    int maxStack = 2 * program.depth();
+    int maxLocals = firstLocal + 2 * program.registers();
+    if (body.size() > MAX_CODE_LENGTH || maxStack > MAX_CODE_LENGTH
+        || maxLocals > MAX_CODE_LENGTH) {
+      return null;
+    }
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + 16 * pool.size() + 512);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(52);
+
+      out.writeShort(nextEntry);
+      utf8(out, "expression/CompiledExpression");           // 1
+      classRef(out, 1);                                      // 2
+      utf8(out, "java/lang/Object");                         // 3
+      classRef(out, 3);                                      // 4
+      utf8(out, "java/util/function/DoubleSupplier");        // 5
+      classRef(out, 5);                                      // 6
+      utf8(out, "<init>");                                   // 7
+      utf8(out, "()V");                                      // 8
+      nameAndType(out, INIT_NAME, VOID_DESC);                // 9
+      memberRef(out, OBJECT_CLASS, 9);                       // 10
+      utf8(out, "getAsDouble");                              // 11
+      utf8(out, "()D");                                      // 12
+      utf8(out, "Code");                                     // 13
+      utf8(out, "expression/PostfixProgram");                // 14
+      classRef(out, 14);                                     // 15
+      utf8(out, "divide");                                   // 16
+      utf8(out, "(DD)D");                                    // 17
+      nameAndType(out, 16, 17);                              // 18
+      memberRef(out, 15, 18);                                // 19
+      utf8(out, "java/util/function/ToDoubleFunction");      // 20
+      classRef(out, 20);                                     // 21
+      utf8(out, "applyAsDouble");                            // 22
+      utf8(out, "(Ljava/lang/Object;)D");                    // 23
+      utf8(out, "[D");                                       // 24
+      classRef(out, 24);                                     // 25
+      long[] ordered = new long[pool.size()];
+      for (Map.Entry<Long, Integer> e : pool.entrySet()) {
+        ordered[(e.getValue() - FIRST_DOUBLE) / 2] = e.getKey();
+      }
+      for (long bits : ordered) {
+        out.writeByte(6);
+        out.writeLong(bits);
+      }
+
+      out.writeShort(0x0031);                                // public final super
+      out.writeShort(THIS_CLASS);
+      out.writeShort(OBJECT_CLASS);
+      out.writeShort(1);
+      out.writeShort(function ? FUNCTION_CLASS : SUPPLIER_CLASS);
+      out.writeShort(0);                                     // fields
+
+      out.writeShort(2);                                     // methods
+      byte[] init = {
+          (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, (byte) OBJECT_INIT, (byte) RETURN
+      };
+      method(out, 0x0001, INIT_NAME, VOID_DESC, 1, 1, init);
+      if (function) {
+        method(out, 0x0011, APPLY_NAME, APPLY_DESC, maxStack, maxLocals, body.toByteArray());
+      } else {
+        method(out, 0x0011, METHOD_NAME, DOUBLE_DESC, maxStack, maxLocals, body.toByteArray());
+      }
+
+      out.writeShort(0);                                     // class attributes
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeIndexed(ByteArrayOutputStream body, int opcode, int index) {
+    body.write(opcode);
+    body.write(index >>> 8);
+    body.write(index & 0xff);
+  }
+
+  /** Load or store the double in register {@code register}, the first at {@code firstLocal}. */
+  private static void writeLocal(ByteArrayOutputStream body, int opcode, int firstLocal,
+      int register) {
+    int local = firstLocal + 2 * register;
+    if (local > 0xff) {
+      body.write(WIDE);
+      writeIndexed(body, opcode, local);
+    } else {
+      body.write(opcode);
+      body.write(local);
+    }
+  }
+
+  private static void utf8(DataOutputStream out, String s) throws IOException {
+    out.writeByte(1);
+    out.writeUTF(s);
+  }
+
+  private static void classRef(DataOutputStream out, int name) throws IOException {
+    out.writeByte(7);
+    out.writeShort(name);
+  }
+
+  private static void nameAndType(DataOutputStream out, int name, int desc) throws IOException {
+    out.writeByte(12);
+    out.writeShort(name);
+    out.writeShort(desc);
+  }
+
+  private static void memberRef(DataOutputStream out, int owner, int nameAndType)
+      throws IOException {
+    out.writeByte(10);
+    out.writeShort(owner);
+    out.writeShort(nameAndType);
+  }
+
+  private static void method(DataOutputStream out, int flags, int name, int desc,
+      int maxStack, int maxLocals, byte[] code) throws IOException {
+    out.writeShort(flags);
+    out.writeShort(name);
+    out.writeShort(desc);
+    out.writeShort(1);
+    out.writeShort(CODE_ATTR);
+    out.writeInt(12 + code.length);
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(code.length);
+    out.write(code);
+    out.writeShort(0);                                       // exception table
+    out.writeShort(0);                                       // code attributes
+  }
+}
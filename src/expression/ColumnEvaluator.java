@@ -0,0 +1,110 @@
+package expression;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a {@link PostfixProgram} over many rows one operator at a time.
+ *
+ * <p>Rows are processed in blocks of {@value #BLOCK} so every operand stays
+ * in cache. Within a block each opcode becomes a simple counted loop over
+ * primitive arrays, which C2 auto-vectorizes into SIMD instructions on
+ * platforms that have them and runs as plain scalar code elsewhere.
+ * Variable operands are read straight from their columns rather than
+ * copied; only intermediate results use the per-slot scratch buffers, and
+ * each register holds one block of a shared subexpression's values.
+ */
+final class ColumnEvaluator {
+
+  static final int BLOCK = 1024;
+
+  private final PostfixProgram program;
+  private final double[][] columns;
+
+  /** Operand stack: each slot is a view of {@code arrays[i]} at {@code offsets[i]}. */
+  private final double[][] arrays;
+  private final int[] offsets;
+  private final double[][] scratch;
+  private final double[][] registers;
+
+  ColumnEvaluator(PostfixProgram program, double[][] columns) {
+    this.program = program;
+    this.columns = columns;
+    this.arrays = new double[program.depth()][];
+    this.offsets = new int[program.depth()];
+    this.scratch = new double[program.depth()][BLOCK];
+    this.registers = new double[program.registers()][BLOCK];
+  }
+
+  void evaluate(double[] out) {
+    for (int row = 0; row < out.length; row += BLOCK) {
+      int len = Math.min(BLOCK, out.length - row);
+      evaluateBlock(row, len);
+      System.arraycopy(arrays[0], offsets[0], out, row, len);
+    }
+  }
+
+  private void evaluateBlock(int row, int len) {
+    final byte[] code = program.code();
+    final double[] constants = program.constants();
+    final int[] operands = program.operands();
+    int sp = 0;
+    int k = 0;
+    int v = 0;
+    for (byte op : code) {
+      if (op == PostfixProgram.PUSH) {
+        Arrays.fill(scratch[sp], 0, len, constants[k++]);
+        arrays[sp] = scratch[sp];
+        offsets[sp++] = 0;
+      } else if (op == PostfixProgram.LOAD) {
+        arrays[sp] = columns[operands[v++]];
+        offsets[sp++] = row;
+      } else if (op == PostfixProgram.STORE) {
+        System.arraycopy(arrays[sp - 1], offsets[sp - 1], registers[operands[v++]], 0, len);
+      } else if (op == PostfixProgram.FETCH) {
+        arrays[sp] = registers[operands[v++]];
+        offsets[sp++] = 0;
+      } else {
+        sp--;
+        double[] dst = scratch[sp - 1];
+        apply(op, arrays[sp - 1], offsets[sp - 1], arrays[sp], offsets[sp], dst, len);
+        arrays[sp - 1] = dst;
+        offsets[sp - 1] = 0;
+      }
+    }
+  }
+
+  /** dst[i] = a[ao + i] op b[bo + i]; dst may be the same array as a when ao is 0. */
+  private static void apply(byte op, double[] a, int ao, double[] b, int bo, double[] dst,
+      int len) {
+    switch (op) {
+      case PostfixProgram.ADD:
+        for (int i = 0; i < len; i++) {
+          dst[i] = a[ao + i] + b[bo + i];
+        }
+        break;
+      case PostfixProgram.SUB:
+        for (int i = 0; i < len; i++) {
+          dst[i] = a[ao + i] - b[bo + i];
+        }
+        break;
+      case PostfixProgram.MUL:
+        for (int i = 0; i < len; i++) {
+          dst[i] = a[ao + i] * b[bo + i];
+        }
+        break;
+      case PostfixProgram.DIV:
+        // check first so the divide loop itself stays branch-free
+        for (int i = 0; i < len; i++) {
+          if (b[bo + i] == 0.0) {
+            throw new ArithmeticException("division by zero");
+          }
+        }
+        for (int i = 0; i < len; i++) {
+          dst[i] = a[ao + i] / b[bo + i];
+        }
+        break;
+      default:
+        throw new IllegalStateException("bad opcode: " + op);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package expression;
 
+import java.io.IOException;
+
 /**
  * Interface for expression trees that support evaluation
  * and different string representations.
@@ -23,6 +25,20 @@ public interface Expression {
    */
   String infix();
 
+  /**
+   * Write the infix form of this expression to {@code out}.
+   *
+   * <p>Large expressions can be streamed to a {@code Writer} this way
+   * without first building the whole string. Writers that are not buffered
+   * should be wrapped in a {@code BufferedWriter}.
+   *
+   * @param out where to write
+   * @throws IOException if writing fails
+   */
+  default void infix(Appendable out) throws IOException {
+    out.append(infix());
+  }
+
   /**
    * Return a Scheme-style representation of this expression.
    *
@@ -33,6 +49,17 @@ public interface Expression {
    */
   String schemeExpression();
 
+  /**
+   * Write the Scheme form of this expression to {@code out}.
+   *
+   * @param out where to write
+   * @throws IOException if writing fails
+   * @see #infix(Appendable)
+   */
+  default void schemeExpression(Appendable out) throws IOException {
+    out.append(schemeExpression());
+  }
+
   /**
    * Return a tree-style textual representation of this expression.
    *
@@ -74,4 +101,15 @@ public interface Expression {
    * @return the expression drawn as a text tree
    */
   String textTree();
+
+  /**
+   * Write the text tree form of this expression to {@code out}.
+   *
+   * @param out where to write
+   * @throws IOException if writing fails
+   * @see #infix(Appendable)
+   */
+  default void textTree(Appendable out) throws IOException {
+    out.append(textTree());
+  }
 }
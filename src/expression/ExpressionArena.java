@@ -0,0 +1,270 @@
+package expression;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import postfix.EvaluateEvent;
+import postfix.Metrics;
+import postfix.TreeRenderer;
+
+/**
+ * Expression tree stored as parallel primitive arrays instead of node
+ * objects.
+ *
+ * <p>Node {@code i} has opcode {@code op[i]}: {@link PostfixProgram#PUSH} for
+ * a number held in {@code value[i]}, {@link PostfixProgram#LOAD} for a
+ * variable whose name is {@code names[left[i]]}, or one of
+ * {@link PostfixProgram#ADD} to {@link PostfixProgram#DIV} for an operator
+ * with children {@code left[i]} and {@code right[i]}. Nodes are laid out in
+ * postfix order, so children always precede their parent and the root is
+ * the last node. A node costs 17 bytes of array payload and no object
+ * header, against 24 to 40 bytes for an {@link ExpressionTree} node, and the
+ * whole tree is five objects however large it is.
+ *
+ * <p>Parsing goes through the same {@link ExpressionParser} as
+ * {@link ExpressionTree}, and the printed forms through the same
+ * {@link TreeRenderer}s, walking {@code left}/{@code right} with a stack
+ * sized to the tree height, so inputs, errors and output all match.
+ * {@link #evaluate()} is a single forward loop over the arrays.
+ */
+public final class ExpressionArena implements Expression {
+
+  private final byte[] op;
+  private final int[] left;
+  private final int[] right;
+  private final double[] value;
+  private final String[] names;
+  private final int height;
+  private final int maxStack;
+
+  /**
+   * Parse a space-separated postfix string straight into arrays.
+   *
+   * @param postfix space-separated tokens (numbers, variables and + - * /)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public ExpressionArena(String postfix) {
+    ArenaBuilder builder = new ArenaBuilder(postfix);
+    ExpressionParser parser = new ExpressionParser(postfix, builder);
+    int n = parser.nodes;
+    this.op = Arrays.copyOf(builder.op, n);
+    this.left = Arrays.copyOf(builder.left, n);
+    this.right = Arrays.copyOf(builder.right, n);
+    this.value = Arrays.copyOf(builder.value, n);
+    this.names = builder.variables.keySet().toArray(new String[0]);
+    this.height = parser.height;
+    this.maxStack = parser.maxDepth;
+  }
+
+  /** Fills the parallel arrays for {@link ExpressionParser}. */
+  private static final class ArenaBuilder implements ExpressionParser.Builder {
+    private final byte[] op;
+    private final int[] left;
+    private final int[] right;
+    private final double[] value;
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+    /** Indices of the pending operands. */
+    private final int[] stack;
+    private int n;
+    private int sp;
+
+    ArenaBuilder(String postfix) {
+      // every token takes at least one character plus a separator
+      int capacity = postfix == null ? 0 : (postfix.length() + 1) / 2;
+      this.op = new byte[capacity];
+      this.left = new int[capacity];
+      this.right = new int[capacity];
+      this.value = new double[capacity];
+      this.stack = new int[capacity];
+    }
+
+    @Override
+    public void number(double v) {
+      op[n] = PostfixProgram.PUSH;
+      left[n] = -1;
+      value[n] = v;
+      push();
+    }
+
+    @Override
+    public void variable(String name) {
+      Integer index = variables.get(name);
+      if (index == null) {
+        index = variables.size();
+        variables.put(name, index);
+      }
+      op[n] = PostfixProgram.LOAD;
+      left[n] = index;
+      push();
+    }
+
+    private void push() {
+      right[n] = -1;
+      stack[sp++] = n++;
+    }
+
+    @Override
+    public void operator(char symbol) {
+      op[n] = PostfixProgram.opcode(symbol);
+      left[n] = stack[sp - 2];
+      right[n] = stack[sp - 1];
+      sp--;
+      stack[sp - 1] = n++;
+    }
+  }
+
+  /**
+   * Number of nodes, operators and operands together.
+   *
+   * @return the node count
+   */
+  public int nodeCount() {
+    return op.length;
+  }
+
+  /**
+   * Bytes of array payload held by this tree: the parallel arrays and the
+   * variable name table, excluding array headers and the names themselves.
+   *
+   * @return payload size in bytes
+   */
+  public long payloadBytes() {
+    return (long) op.length * (Byte.BYTES + 2 * Integer.BYTES + Double.BYTES)
+        + (long) names.length * Integer.BYTES;
+  }
+
+  /**
+   * Evaluate in one pass over the arrays, with an operand stack sized to the
+   * deepest point of the postfix sequence.
+   *
+   * @throws IllegalStateException if the expression contains variables
+   * @throws ArithmeticException on division by zero
+   */
+  @Override
+  public double evaluate() {
+    if (!Metrics.isEnabled()) {
+      return evaluateArrays();
+    }
+    long start = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    double result = evaluateArrays();
+    Metrics.EXPRESSION.evaluated(event, start, op.length, height);
+    return result;
+  }
+
+  private double evaluateArrays() {
+    double[] stack = new double[maxStack];
+    int sp = 0;
+    for (int i = 0; i < op.length; i++) {
+      switch (op[i]) {
+        case PostfixProgram.PUSH:
+          stack[sp++] = value[i];
+          break;
+        case PostfixProgram.ADD:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] + stack[sp];
+          break;
+        case PostfixProgram.SUB:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] - stack[sp];
+          break;
+        case PostfixProgram.MUL:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] * stack[sp];
+          break;
+        case PostfixProgram.DIV:
+          sp--;
+          stack[sp - 1] = PostfixProgram.divide(stack[sp - 1], stack[sp]);
+          break;
+        default:
+          throw new IllegalStateException("unbound variable: " + names[left[i]]);
+      }
+    }
+    return stack[0];
+  }
+
+  /** Index-based view of the arrays for {@link TreeRenderer}. */
+  private TreeRenderer.ArrayTree view() {
+    return new TreeRenderer.ArrayTree() {
+      @Override
+      public int root() {
+        return op.length - 1;
+      }
+
+      @Override
+      public int height() {
+        return height;
+      }
+
+      @Override
+      public char operator(int node) {
+        return op[node] >= PostfixProgram.ADD && op[node] <= PostfixProgram.DIV
+            ? "+-*/".charAt(op[node] - PostfixProgram.ADD)
+            : 0;
+      }
+
+      @Override
+      public int left(int node) {
+        return left[node];
+      }
+
+      @Override
+      public int right(int node) {
+        return right[node];
+      }
+
+      @Override
+      public CharSequence leafText(int node) {
+        return op[node] == PostfixProgram.PUSH
+            ? ExpressionTree.fmt(value[node])
+            : names[left[node]];
+      }
+    };
+  }
+
+  private void render(TreeRenderer r) throws IOException {
+    try {
+      r.render(view());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public String infix() {
+    StringBuilder out = new StringBuilder();
+    TreeRenderer.infix(out).render(view());
+    return out.toString();
+  }
+
+  @Override
+  public void infix(Appendable out) throws IOException {
+    render(TreeRenderer.infix(out));
+  }
+
+  @Override
+  public String schemeExpression() {
+    StringBuilder out = new StringBuilder();
+    TreeRenderer.scheme(out).render(view());
+    return out.toString();
+  }
+
+  @Override
+  public void schemeExpression(Appendable out) throws IOException {
+    render(TreeRenderer.scheme(out));
+  }
+
+  @Override
+  public String textTree() {
+    StringBuilder out = new StringBuilder();
+    TreeRenderer.textTree(out).render(view());
+    return out.toString();
+  }
+
+  @Override
+  public void textTree(Appendable out) throws IOException {
+    render(TreeRenderer.textTree(out));
+  }
+}
@@ -0,0 +1,131 @@
+package expression;
+
+import java.util.Arrays;
+import postfix.Metrics;
+import postfix.Metrics.FailureReason;
+import postfix.ParseEvent;
+import postfix.PostfixLexer;
+
+/**
+ * The postfix grammar shared by every expression form.
+ *
+ * <p>Tokens are read with a {@link PostfixLexer} and handed to a
+ * {@link Builder} in postfix order, so the node tree, the array arena and
+ * the mutable tree accept exactly the same inputs and reject bad ones with
+ * the same messages. The parser checks operand counts itself and records
+ * the parse in {@link Metrics#EXPRESSION}; a builder only stores nodes.
+ */
+final class ExpressionParser {
+
+  /** Receives the nodes of an expression, children before their parent. */
+  interface Builder {
+    /**
+     * Add a number operand.
+     *
+     * @param value the number
+     */
+    void number(double value);
+
+    /**
+     * Add a variable operand.
+     *
+     * @param name the variable name
+     */
+    void variable(String name);
+
+    /**
+     * Combine the two most recently completed operands.
+     *
+     * @param op one of + - * /
+     */
+    void operator(char op);
+  }
+
+  /** Number of nodes, operators and operands together. */
+  final int nodes;
+
+  /** Number of levels; a single operand has height 1. */
+  final int height;
+
+  /** Most operands pending at once, the stack a postfix evaluation needs. */
+  final int maxDepth;
+
+  /**
+   * Parse a space-separated postfix string into {@code builder}.
+   *
+   * @param postfix space-separated tokens (numbers, variables and + - * /)
+   * @param builder receives the nodes
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  ExpressionParser(String postfix, Builder builder) {
+    if (postfix == null) {
+      throw Metrics.EXPRESSION.parseFailure(FailureReason.EMPTY, "expression must be non-empty");
+    }
+    long start = 0;
+    ParseEvent event = null;
+    if (Metrics.isEnabled()) {
+      start = System.nanoTime();
+      event = Metrics.beginParse();
+    }
+
+    PostfixLexer lex = new PostfixLexer(postfix);
+    if (!lex.next()) {
+      throw Metrics.EXPRESSION.parseFailure(FailureReason.EMPTY, "expression must be non-empty");
+    }
+    // heights of the pending operands
+    int[] heights = new int[16];
+    int sp = 0;
+    int nodes = 0;
+    int maxDepth = 0;
+
+    do {
+      if (isOperator(lex)) {
+        if (sp < 2) {
+          throw Metrics.EXPRESSION.parseFailure(FailureReason.INSUFFICIENT_OPERANDS,
+              "insufficient operands for operator: " + lex.text());
+        }
+        builder.operator(lex.charAt(lex.start()));
+        sp--;
+        heights[sp - 1] = 1 + Math.max(heights[sp - 1], heights[sp]);
+      } else {
+        if (isVariable(lex)) {
+          builder.variable(lex.text());
+        } else {
+          double value;
+          try {
+            value = lex.parseDouble();
+          } catch (NumberFormatException e) {
+            throw Metrics.EXPRESSION.parseFailure(FailureReason.INVALID_TOKEN,
+                "invalid token: " + lex.text());
+          }
+          builder.number(value);
+        }
+        if (sp == heights.length) {
+          heights = Arrays.copyOf(heights, 2 * sp);
+        }
+        heights[sp++] = 1;
+        maxDepth = Math.max(maxDepth, sp);
+      }
+      nodes++;
+    } while (lex.next());
+
+    if (sp != 1) {
+      throw Metrics.EXPRESSION.parseFailure(FailureReason.TOO_MANY_OPERANDS, "too many operands");
+    }
+    this.nodes = nodes;
+    this.height = heights[0];
+    this.maxDepth = maxDepth;
+    if (event != null) {
+      Metrics.EXPRESSION.parsed(event, start, postfix.length(), nodes, height);
+    }
+  }
+
+  static boolean isOperator(PostfixLexer lex) {
+    return lex.isChar('+') || lex.isChar('-') || lex.isChar('*') || lex.isChar('/');
+  }
+
+  /** Identifiers are variables, except the number spellings NaN and Infinity. */
+  static boolean isVariable(PostfixLexer lex) {
+    return lex.isIdentifier() && !lex.tokenEquals("NaN") && !lex.tokenEquals("Infinity");
+  }
+}
@@ -1,24 +1,48 @@
 package expression;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+import postfix.EvaluateEvent;
+import postfix.Metrics;
+import postfix.ParseCache;
+import postfix.TreeRenderer;
 
 /**
  * Expression tree for algebraic expressions parsed from postfix.
  *
  * <p>Supports evaluation, infix/Scheme printing, and a simple text tree view.
+ * Besides numbers, operands may be named variables such as {@code x} or
+ * {@code price_2}; trees with variables are evaluated in bulk through
+ * {@link #evaluate(Map, double[])}.
  */
 public class ExpressionTree implements Expression {
 
   /** Base node for the tree. */
   private abstract static class Node {
-    abstract double evaluate();
+    /** Number of levels in this subtree; a leaf has height 1. */
+    abstract int height();
 
-    abstract String infix();
-
-    abstract String schemeExpression();
-
-    abstract String textTree(String prefix, boolean isLast);
+    /** Number of leaves in this subtree. */
+    abstract int leaves();
   }
 
   /** Leaf node holding a number. */
@@ -30,173 +54,1075 @@ public class ExpressionTree implements Expression {
     }
 
     @Override
-    double evaluate() {
-      return value;
+    int height() {
+      return 1;
     }
 
     @Override
-    String infix() {
-      return fmt(value);
+    int leaves() {
+      return 1;
+    }
+  }
+
+  /** Leaf node naming a variable bound at evaluation time. */
+  private static final class VariableNode extends Node {
+    private final String name;
+
+    VariableNode(String name) {
+      this.name = name;
     }
 
     @Override
-    String schemeExpression() {
-      return fmt(value);
+    int height() {
+      return 1;
     }
 
     @Override
-    String textTree(String prefix, boolean isLast) {
-      return fmt(value);
+    int leaves() {
+      return 1;
     }
   }
 
   /** Internal node holding a binary operator. */
   private static final class OperatorNode extends Node {
-    private final String op;
+    private final char op;
     private final Node left;
     private final Node right;
+    private final int height;
+    private final int leaves;
+    /** Register for this node's value if it is shared in a DAG, otherwise -1. */
+    private int slot = -1;
 
-    OperatorNode(String op, Node left, Node right) {
+    OperatorNode(char op, Node left, Node right) {
       this.op = op;
       this.left = left;
       this.right = right;
+      this.height = 1 + Math.max(left.height(), right.height());
+      this.leaves = left.leaves() + right.leaves();
     }
 
     @Override
-    double evaluate() {
-      final double a = left.evaluate();
-      final double b = right.evaluate();
-      switch (op) {
-        case "+":
-          return a + b;
-        case "-":
-          return a - b;
-        case "*":
-          return a * b;
-        case "/":
-          if (b == 0.0) {
-            throw new ArithmeticException("division by zero");
-          }
-          return a / b;
-        default:
-          throw new IllegalArgumentException("unknown operator: " + op);
+    int height() {
+      return height;
+    }
+
+    @Override
+    int leaves() {
+      return leaves;
+    }
+
+    double apply(double a, double b) {
+      return ExpressionTree.apply(op, a, b);
+    }
+  }
+
+  /**
+   * Callbacks for an in-order walk of the tree.
+   *
+   * <p>{@link #walk} drives these from an explicit stack, so trees of any
+   * depth are visited in constant Java stack space.
+   */
+  private abstract static class Visitor {
+    /** Called for a {@link NumberNode} or {@link VariableNode}. */
+    abstract void leaf(Node n);
+
+    /**
+     * Called before {@link #enter}; returning true treats the whole subtree
+     * as already visited.
+     */
+    boolean skip(OperatorNode n) {
+      return false;
+    }
+
+    /** Called before the left subtree of {@code n}. */
+    abstract void enter(OperatorNode n);
+
+    /** Called between the left and right subtrees of {@code n}. */
+    abstract void between(OperatorNode n);
+
+    /** Called after the right subtree of {@code n}. */
+    abstract void exit(OperatorNode n);
+  }
+
+  /** Feeds the walk to a shared {@link TreeRenderer}. */
+  private static final class RenderVisitor extends Visitor {
+    private final TreeRenderer out;
+
+    RenderVisitor(TreeRenderer out) {
+      this.out = out;
+    }
+
+    @Override
+    void leaf(Node n) {
+      out.leaf(leafText(n));
+    }
+
+    @Override
+    void enter(OperatorNode n) {
+      out.enter(n.op, 2);
+    }
+
+    @Override
+    void between(OperatorNode n) {
+      out.between(n.op, true);
+    }
+
+    @Override
+    void exit(OperatorNode n) {
+      out.exit(n.op);
+    }
+  }
+
+  /** Builds nodes for {@link ExpressionParser}. */
+  private static final class TreeBuilder implements ExpressionParser.Builder {
+    private final Deque<Node> stack = new ArrayDeque<>();
+
+    @Override
+    public void number(double value) {
+      stack.push(new NumberNode(value));
+    }
+
+    @Override
+    public void variable(String name) {
+      stack.push(new VariableNode(name));
+    }
+
+    @Override
+    public void operator(char op) {
+      Node right = stack.pop();
+      Node left = stack.pop();
+      stack.push(new OperatorNode(op, left, right));
+    }
+  }
+
+  /**
+   * Lowers the tree into a {@link PostfixProgram}. In a DAG, the first
+   * occurrence of a shared node stores its value in a register and later
+   * occurrences fetch it instead of recomputing the subtree.
+   */
+  private static final class ProgramBuilder extends Visitor {
+    private final byte[] code;
+    private final double[] constants;
+    private final int[] operands;
+    private final boolean[] stored;
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+    private int pc;
+    private int constantCount;
+    private int operandCount;
+    private int depth;
+    private int maxDepth;
+
+    ProgramBuilder(int nodes, int leaves, int registers) {
+      this.code = new byte[nodes + registers];
+      this.constants = new double[leaves];
+      this.operands = new int[leaves + 2 * registers];
+      this.stored = new boolean[registers];
+    }
+
+    @Override
+    boolean skip(OperatorNode n) {
+      if (n.slot < 0 || !stored[n.slot]) {
+        return false;
       }
+      code[pc++] = PostfixProgram.FETCH;
+      operands[operandCount++] = n.slot;
+      maxDepth = Math.max(maxDepth, ++depth);
+      return true;
     }
 
     @Override
-    String infix() {
-      return "( " + left.infix() + " " + op + " " + right.infix() + " )";
+    void leaf(Node n) {
+      if (n instanceof NumberNode) {
+        code[pc++] = PostfixProgram.PUSH;
+        constants[constantCount++] = ((NumberNode) n).value;
+      } else {
+        code[pc++] = PostfixProgram.LOAD;
+        String name = ((VariableNode) n).name;
+        Integer slot = variables.get(name);
+        if (slot == null) {
+          slot = variables.size();
+          variables.put(name, slot);
+        }
+        operands[operandCount++] = slot;
+      }
+      maxDepth = Math.max(maxDepth, ++depth);
+    }
+
+    @Override
+    void enter(OperatorNode n) {
     }
 
     @Override
-    String schemeExpression() {
-      return "( " + op + " " + left.schemeExpression() + " " + right.schemeExpression() + " )";
+    void between(OperatorNode n) {
     }
 
     @Override
-    String textTree(String prefix, boolean isLast) {
-      StringBuilder sb = new StringBuilder();
-      sb.append(op).append('\n');
+    void exit(OperatorNode n) {
+      code[pc++] = PostfixProgram.opcode(n.op);
+      depth--;
+      if (n.slot >= 0) {
+        code[pc++] = PostfixProgram.STORE;
+        operands[operandCount++] = n.slot;
+        stored[n.slot] = true;
+      }
+    }
 
-      // connector lines from operator to children
-      sb.append(prefix).append("|\n");
-      sb.append(prefix).append("|\n");
+    PostfixProgram build() {
+      return new PostfixProgram(Arrays.copyOf(code, pc), Arrays.copyOf(constants, constantCount),
+          Arrays.copyOf(operands, operandCount), variables.keySet().toArray(new String[0]),
+          maxDepth, stored.length);
+    }
+  }
 
-      // left child
-      sb.append(prefix).append("|___");
-      String leftStr = left.textTree(prefix + "|   ", false);
-      sb.append(leftStr);
-      if (!leftStr.endsWith("\n")) {
-        sb.append('\n');
+  /**
+   * Rebuilds a tree bottom-up as a hash-consed DAG.
+   *
+   * <p>Each distinct leaf and each distinct (operator, left, right) triple
+   * is created once, so identical subtrees become one shared node. Children
+   * are already canonical when their parent is built, so comparing them by
+   * identity is enough. Operators whose operands are both numbers are folded
+   * with the same double arithmetic evaluation would use, except division by
+   * zero, which is kept so that evaluating still throws.
+   */
+  private static final class DagBuilder extends Visitor {
+    private final Map<Long, Node> numbers = new HashMap<>();
+    private final Map<String, Node> variables = new HashMap<>();
+    private final Map<OperatorKey, OperatorNode> operators = new HashMap<>();
+    private final Deque<Node> results = new ArrayDeque<>();
+
+    @Override
+    void leaf(Node n) {
+      if (n instanceof NumberNode) {
+        results.push(number(((NumberNode) n).value));
+      } else {
+        results.push(variables.computeIfAbsent(((VariableNode) n).name, VariableNode::new));
       }
+    }
+
+    @Override
+    void enter(OperatorNode n) {
+    }
+
+    @Override
+    void between(OperatorNode n) {
+    }
+
+    @Override
+    void exit(OperatorNode n) {
+      Node right = results.pop();
+      Node left = results.pop();
+      results.push(operator(n.op, left, right));
+    }
 
-      // spacer before right child
-      sb.append(prefix).append("|\n");
+    private Node number(double value) {
+      // key on the bits so 0.0 and -0.0 stay distinct
+      return numbers.computeIfAbsent(Double.doubleToRawLongBits(value),
+          bits -> new NumberNode(value));
+    }
 
-      // right child
-      sb.append(prefix).append("|___");
-      sb.append(right.textTree(prefix + "    ", true));
+    private Node operator(char op, Node left, Node right) {
+      if (left instanceof NumberNode && right instanceof NumberNode
+          && !(op == '/' && ((NumberNode) right).value == 0.0)) {
+        return number(apply(op, ((NumberNode) left).value, ((NumberNode) right).value));
+      }
+      return operators.computeIfAbsent(new OperatorKey(op, left, right),
+          k -> new OperatorNode(op, left, right));
+    }
 
-      return sb.toString();
+    /**
+     * Finish the DAG: count the nodes reachable from the root (folding leaves
+     * some behind) and give a register to every operator with several parents.
+     */
+    ExpressionTree build() {
+      Node root = results.pop();
+      Map<Node, Integer> parents = new IdentityHashMap<>();
+      parents.put(root, 0);
+      Deque<Node> pending = new ArrayDeque<>();
+      pending.push(root);
+      int shared = 0;
+      while (!pending.isEmpty()) {
+        Node n = pending.pop();
+        if (n instanceof OperatorNode) {
+          for (Node child : new Node[] {((OperatorNode) n).left, ((OperatorNode) n).right}) {
+            int count = parents.merge(child, 1, Integer::sum);
+            if (count == 1) {
+              pending.push(child);
+            } else if (count == 2 && child instanceof OperatorNode) {
+              ((OperatorNode) child).slot = shared++;
+            }
+          }
+        }
+      }
+      return new ExpressionTree(root, parents.size(), shared);
     }
   }
 
-  private final Node root;
+  /** Hash-consing key: an operator applied to two canonical children. */
+  private static final class OperatorKey {
+    private final char op;
+    private final Node left;
+    private final Node right;
+
+    OperatorKey(char op, Node left, Node right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof OperatorKey)) {
+        return false;
+      }
+      OperatorKey that = (OperatorKey) obj;
+      return op == that.op && left == that.left && right == that.right;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * op + System.identityHashCode(left)) + System.identityHashCode(right);
+    }
+  }
 
   /**
-   * Build an expression tree from a space-separated postfix string.
+   * Writes the binary form read by {@link #fromBytes}.
    *
-   * @param postfix space-separated tokens (numbers and + - * /)
-   * @throws IllegalArgumentException if the expression is malformed
+   * <p>The layout is a header followed by one record per node in postfix
+   * order. All multi-byte integers are unsigned LEB128 varints.
+   * <pre>
+   *   header:  magic "EXPR", version byte, varint node count,
+   *            varint register count, varint record count
+   *   NUMBER   tag, 8-byte big-endian IEEE 754 bits
+   *   NEW_VAR  tag, varint UTF-8 length, UTF-8 name (defines the next index)
+   *   VAR      tag, varint index of a name defined earlier
+   *   + - * /  tag; with SHARED set, followed by a varint register
+   *   FETCH    tag, varint register of an operator written earlier
+   * </pre>
+   * Shared operators of an {@link #optimize() optimized} tree are written
+   * once and then referenced, so the DAG and its registers survive the trip.
    */
-  public ExpressionTree(String postfix) {
-    if (postfix == null || postfix.trim().isEmpty()) {
-      throw new IllegalArgumentException("expression must be non-empty");
+  private static final class BinaryWriter extends Visitor {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Map<String, Integer> variables = new HashMap<>();
+    private final boolean[] written;
+    private int records;
+
+    BinaryWriter(int registers) {
+      this.written = new boolean[registers];
     }
-    this.root = parsePostfix(postfix.trim());
-  }
 
-  private Node parsePostfix(String s) {
-    String[] tokens = s.split("\\s+");
-    Deque<Node> st = new ArrayDeque<>();
+    @Override
+    boolean skip(OperatorNode n) {
+      if (n.slot < 0 || !written[n.slot]) {
+        return false;
+      }
+      bytes.write(TAG_FETCH);
+      writeVarint(bytes, n.slot);
+      records++;
+      return true;
+    }
 
-    for (String tok : tokens) {
-      if (isOperator(tok)) {
-        if (st.size() < 2) {
-          throw new IllegalArgumentException("insufficient operands for operator: " + tok);
+    @Override
+    void leaf(Node n) {
+      if (n instanceof NumberNode) {
+        bytes.write(TAG_NUMBER);
+        long bits = Double.doubleToRawLongBits(((NumberNode) n).value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          bytes.write((int) (bits >>> shift));
         }
-        Node right = st.pop();
-        Node left = st.pop();
-        st.push(new OperatorNode(tok, left, right));
       } else {
-        try {
-          st.push(new NumberNode(Double.parseDouble(tok)));
-        } catch (NumberFormatException e) {
-          throw new IllegalArgumentException("invalid token: " + tok);
+        String name = ((VariableNode) n).name;
+        Integer index = variables.get(name);
+        if (index == null) {
+          variables.put(name, variables.size());
+          byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+          bytes.write(TAG_NEW_VAR);
+          writeVarint(bytes, utf8.length);
+          bytes.write(utf8, 0, utf8.length);
+        } else {
+          bytes.write(TAG_VAR);
+          writeVarint(bytes, index);
         }
       }
+      records++;
     }
 
-    if (st.size() != 1) {
-      throw new IllegalArgumentException(st.isEmpty()
-          ? "no result produced"
-          : "too many operands");
+    @Override
+    void enter(OperatorNode n) {
+    }
+
+    @Override
+    void between(OperatorNode n) {
+    }
+
+    @Override
+    void exit(OperatorNode n) {
+      int tag = PostfixProgram.opcode(n.op);
+      if (n.slot >= 0) {
+        bytes.write(tag | TAG_SHARED);
+        writeVarint(bytes, n.slot);
+        written[n.slot] = true;
+      } else {
+        bytes.write(tag);
+      }
+      records++;
     }
-    return st.pop();
+
+    byte[] toBytes(int nodeCount) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.size() + 20);
+      out.write(MAGIC, 0, MAGIC.length);
+      out.write(FORMAT_VERSION);
+      writeVarint(out, nodeCount);
+      writeVarint(out, written.length);
+      writeVarint(out, records);
+      out.write(bytes.toByteArray(), 0, bytes.size());
+      return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+      while ((value & ~0x7f) != 0) {
+        out.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+  }
+
+  // binary format, see BinaryWriter; operator tags are PostfixProgram opcodes 1-4
+  private static final byte[] MAGIC = {'E', 'X', 'P', 'R'};
+  private static final int FORMAT_VERSION = 1;
+  private static final int TAG_NUMBER = 0;
+  private static final int TAG_NEW_VAR = 5;
+  private static final int TAG_VAR = 6;
+  private static final int TAG_FETCH = 7;
+  private static final int TAG_SHARED = 0x80;
+
+  /** Trees kept by {@link #parse}; a few thousand distinct strings is typical. */
+  private static final ParseCache<ExpressionTree> CACHE =
+      new ParseCache<>(4096, ExpressionTree::new);
+
+  /** Leaves below which {@link #evaluateParallel} stops splitting. */
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  private final Node root;
+  private final int nodeCount;
+  private final int sharedCount;
+
+  /**
+   * Build an expression tree from a space-separated postfix string.
+   *
+   * @param postfix space-separated tokens (numbers and + - * /)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public ExpressionTree(String postfix) {
+    TreeBuilder builder = new TreeBuilder();
+    this.nodeCount = new ExpressionParser(postfix, builder).nodes;
+    this.root = builder.stack.pop();
+    this.sharedCount = 0;
   }
 
-  private static boolean isOperator(String t) {
-    return "+".equals(t) || "-".equals(t) || "*".equals(t) || "/".equals(t);
+  /**
+   * Return the tree for a postfix string, reusing an earlier parse of the
+   * same string when it is still cached.
+   *
+   * <p>Trees are immutable, so a cached tree can be handed to any number of
+   * callers and threads. The cache is bounded and favours strings requested
+   * more than once; see {@link ParseCache}. Use a {@code ParseCache} directly
+   * for a cache of a different size.
+   *
+   * @param postfix space-separated tokens (numbers, variables and + - * /)
+   * @return the parsed tree
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public static ExpressionTree parse(String postfix) {
+    return CACHE.get(postfix);
+  }
+
+  /**
+   * Hit, miss and eviction counts of the cache behind {@link #parse}.
+   *
+   * @return the statistics so far
+   */
+  public static ParseCache.Stats parseCacheStats() {
+    return CACHE.stats();
+  }
+
+  private ExpressionTree(Node root, int nodeCount, int sharedCount) {
+    this.root = root;
+    this.nodeCount = nodeCount;
+    this.sharedCount = sharedCount;
+  }
+
+  static double apply(char op, double a, double b) {
+    switch (op) {
+      case '+':
+        return a + b;
+      case '-':
+        return a - b;
+      case '*':
+        return a * b;
+      case '/':
+        return PostfixProgram.divide(a, b);
+      default:
+        throw new IllegalArgumentException("unknown operator: " + op);
+    }
+  }
+
+  private static String leafText(Node leaf) {
+    return leaf instanceof NumberNode
+        ? fmt(((NumberNode) leaf).value)
+        : ((VariableNode) leaf).name;
   }
 
   /** Format numbers: show "3.0" for integers to match sample output. */
-  private static String fmt(double v) {
+  static String fmt(double v) {
     if (Double.isInfinite(v) || Double.isNaN(v)) {
       return String.valueOf(v);
     }
     if (v == Math.floor(v)) {
+      // below 2^53 the shortest repr is every digit, exactly what %.1f prints
+      if (Math.abs(v) < 0x1p53 && (v != 0.0 || Double.doubleToRawLongBits(v) == 0L)) {
+        return (long) v + ".0";
+      }
       return String.format("%.1f", v);
     }
     return String.valueOf(v);
   }
 
+  /**
+   * Walk the tree in order without recursion, feeding {@code v}.
+   *
+   * @param v the visitor to drive
+   */
+  private void walk(Visitor v) {
+    OperatorNode[] frames = new OperatorNode[root.height()];
+    boolean[] leftDone = new boolean[frames.length];
+    int top = 0;
+    Node node = root;
+    while (true) {
+      while (true) {
+        if (!(node instanceof OperatorNode)) {
+          v.leaf(node);
+          break;
+        }
+        OperatorNode op = (OperatorNode) node;
+        if (v.skip(op)) {
+          break;
+        }
+        v.enter(op);
+        frames[top] = op;
+        leftDone[top++] = false;
+        node = op.left;
+      }
+
+      while (true) {
+        if (top == 0) {
+          return;
+        }
+        OperatorNode op = frames[top - 1];
+        if (!leftDone[top - 1]) {
+          leftDone[top - 1] = true;
+          v.between(op);
+          node = op.right;
+          break;
+        }
+        v.exit(op);
+        top--;
+      }
+    }
+  }
+
+  /**
+   * Evaluate with an explicit operator stack and operand stack, both sized to
+   * the tree height, so arbitrarily deep trees never overflow the Java stack.
+   *
+   * @throws IllegalStateException if the expression contains variables
+   */
   @Override
   public double evaluate() {
-    return root.evaluate();
+    if (!Metrics.isEnabled()) {
+      return evaluate(root);
+    }
+    long start = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    double value = evaluate(root);
+    Metrics.EXPRESSION.evaluated(event, start, nodeCount, root.height());
+    return value;
+  }
+
+  private static double evaluate(Node root) {
+    OperatorNode[] frames = new OperatorNode[root.height()];
+    boolean[] leftDone = new boolean[frames.length];
+    double[] values = new double[frames.length];
+    int top = 0;
+    int sp = 0;
+    Node node = root;
+    while (true) {
+      while (true) {
+        if (node instanceof OperatorNode) {
+          OperatorNode op = (OperatorNode) node;
+          frames[top] = op;
+          leftDone[top++] = false;
+          node = op.left;
+        } else if (node instanceof NumberNode) {
+          values[sp++] = ((NumberNode) node).value;
+          break;
+        } else {
+          throw new IllegalStateException("unbound variable: " + ((VariableNode) node).name);
+        }
+      }
+
+      while (true) {
+        if (top == 0) {
+          return values[0];
+        }
+        OperatorNode op = frames[top - 1];
+        if (!leftDone[top - 1]) {
+          leftDone[top - 1] = true;
+          node = op.right;
+          break;
+        }
+        sp--;
+        values[sp - 1] = op.apply(values[sp - 1], values[sp]);
+        top--;
+      }
+    }
+  }
+
+  /**
+   * Evaluate on the common {@link ForkJoinPool}.
+   *
+   * @return the same value as {@link #evaluate()}, bit for bit
+   * @throws IllegalStateException if the expression contains variables
+   * @throws ArithmeticException on division by zero
+   * @see #evaluateParallel(ForkJoinPool)
+   */
+  public double evaluateParallel() {
+    return evaluateParallel(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Evaluate large subtrees concurrently on {@code pool}.
+   *
+   * <p>Subtrees with fewer than 16384 leaves are evaluated sequentially;
+   * larger ones are split using the leaf counts recorded in every node when
+   * the tree was built. Each operator still
+   * combines exactly the same two operand values as in {@link #evaluate()},
+   * so the result is bit-for-bit identical, and any exception is the one
+   * sequential evaluation would throw. Small trees are simply evaluated on
+   * the calling thread.
+   *
+   * @param pool the pool to run on
+   * @return the same value as {@link #evaluate()}
+   * @throws IllegalStateException if the expression contains variables
+   * @throws ArithmeticException on division by zero
+   */
+  public double evaluateParallel(ForkJoinPool pool) {
+    if (root.leaves() < PARALLEL_THRESHOLD) {
+      return evaluate();
+    }
+    if (!Metrics.isEnabled()) {
+      return evaluateParallel(root, pool);
+    }
+    long start = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    double value = evaluateParallel(root, pool);
+    Metrics.EXPRESSION.evaluated(event, start, nodeCount, root.height());
+    return value;
+  }
+
+  /**
+   * Run {@link EvaluateTask} on the pool. On failure the tree is walked
+   * again sequentially, without recording it as a second evaluation, so the
+   * exception thrown is the one {@link #evaluate()} would throw.
+   */
+  private static double evaluateParallel(Node root, ForkJoinPool pool) {
+    EvaluateTask task = new EvaluateTask(root);
+    try {
+      pool.invoke(task);
+    } catch (ArithmeticException | IllegalStateException e) {
+      // several subtrees may fail at once; report the first in sequential order
+      return evaluate(root);
+    }
+    return task.value;
+  }
+
+  /**
+   * Evaluates one subtree. Walks down the larger child at every operator,
+   * forking the smaller one if it is big enough to be worth a task and
+   * evaluating it in place otherwise, then combines the results on the way
+   * back up. Forked subtrees are at most half their parent's size, so joins
+   * nest only logarithmically deep even in very lopsided trees.
+   */
+  private static final class EvaluateTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Node node;
+    private double value;
+
+    EvaluateTask(Node node) {
+      this.node = node;
+    }
+
+    @Override
+    protected void compute() {
+      OperatorNode[] spine = new OperatorNode[16];
+      EvaluateTask[] forked = new EvaluateTask[16];
+      double[] sibling = new double[16];
+      int top = 0;
+      Node n = node;
+      while (n.leaves() >= PARALLEL_THRESHOLD) {
+        OperatorNode op = (OperatorNode) n;
+        boolean leftBigger = op.left.leaves() >= op.right.leaves();
+        Node small = leftBigger ? op.right : op.left;
+        if (top == spine.length) {
+          spine = Arrays.copyOf(spine, 2 * top);
+          forked = Arrays.copyOf(forked, 2 * top);
+          sibling = Arrays.copyOf(sibling, 2 * top);
+        }
+        spine[top] = op;
+        if (small.leaves() >= PARALLEL_THRESHOLD) {
+          forked[top] = new EvaluateTask(small);
+          forked[top].fork();
+        } else {
+          sibling[top] = evaluate(small);
+        }
+        top++;
+        n = leftBigger ? op.left : op.right;
+      }
+      double result = evaluate(n);
+      while (top > 0) {
+        OperatorNode op = spine[--top];
+        double other = sibling[top];
+        if (forked[top] != null) {
+          forked[top].join();
+          other = forked[top].value;
+        }
+        boolean leftBigger = op.left.leaves() >= op.right.leaves();
+        result = leftBigger ? op.apply(result, other) : op.apply(other, result);
+      }
+      value = result;
+    }
+  }
+
+  /**
+   * Evaluate this expression once per row of a set of variable columns.
+   *
+   * <p>Row {@code i} binds every variable to {@code columns.get(name)[i]} and
+   * stores the result in {@code out[i]}. The work runs one operator at a time
+   * over blocks of rows, in simple loops the JIT compiles to SIMD
+   * instructions, rather than walking the tree once per row.
+   *
+   * @param columns values for each variable; each column needs at least
+   *     {@code out.length} entries
+   * @param out receives one result per row
+   * @throws IllegalArgumentException if a variable has no column or a column
+   *     is too short
+   * @throws ArithmeticException on division by zero in any row
+   */
+  public void evaluate(Map<String, double[]> columns, double[] out) {
+    toProgram().evaluate(columns, out);
+  }
+
+  /**
+   * Build an optimized copy of this expression.
+   *
+   * <p>The copy is a DAG: identical subtrees are stored once and shared.
+   * {@link #toProgram()}, and so batch evaluation and {@link #compile()},
+   * computes each shared subtree once and reuses its value. Subtrees made
+   * only of numbers are folded into a single number using exactly the double
+   * arithmetic evaluation would perform, so results are bit-for-bit the
+   * same. A division whose divisor is the constant zero is left in place, so
+   * evaluating still throws {@link ArithmeticException}. The printed forms
+   * show the folded constants and repeat shared subtrees in full.
+   *
+   * <p>Compare {@link #nodeCount()} before and after to see the savings.
+   *
+   * @return the optimized expression
+   */
+  public ExpressionTree optimize() {
+    DagBuilder b = new DagBuilder();
+    walk(b);
+    return b.build();
+  }
+
+  /**
+   * Number of distinct nodes in this expression. For a parsed tree this is
+   * every operand and operator; for an {@link #optimize() optimized} one,
+   * shared subtrees count once.
+   *
+   * @return the distinct node count
+   */
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * Encode this tree in a compact, versioned binary form.
+   *
+   * <p>Numbers are stored as their exact IEEE 754 bits and the structure as
+   * one tag byte per node, so {@link #fromBytes} rebuilds a tree that
+   * evaluates to the identical value, with no text to tokenize or numbers to
+   * parse. Optimized trees keep their shared subexpressions. Encodings can be
+   * concatenated, for example into one file holding a whole library of
+   * expressions.
+   *
+   * @return the encoded tree
+   */
+  public byte[] toBytes() {
+    BinaryWriter w = new BinaryWriter(sharedCount);
+    walk(w);
+    return w.toBytes(nodeCount);
+  }
+
+  /**
+   * Decode one tree written by {@link #toBytes()}, starting at the buffer's
+   * position and leaving the position just past it.
+   *
+   * <p>The buffer may be a memory-mapped {@code FileChannel} region holding
+   * many concatenated trees; call this until it has no bytes remaining to
+   * load them all in one sequential scan. The buffer's byte order is not
+   * used or changed.
+   *
+   * @param in the buffer to read from
+   * @return the decoded tree
+   * @throws IllegalArgumentException if the bytes are not a valid encoding
+   *     or use a newer format version
+   */
+  public static ExpressionTree fromBytes(ByteBuffer in) {
+    int start = in.position();
+    try {
+      for (byte b : MAGIC) {
+        if (in.get() != b) {
+          throw new IllegalArgumentException("not a serialized expression tree");
+        }
+      }
+      int version = in.get() & 0xff;
+      if (version != FORMAT_VERSION) {
+        throw new IllegalArgumentException("unsupported format version: " + version);
+      }
+      // bound every count by the input before allocating for it
+      int nodeCount = readCount(in, "node");
+      OperatorNode[] registers = new OperatorNode[readCount(in, "register")];
+      int records = readCount(in, "record");
+      List<VariableNode> variables = new ArrayList<>();
+      Set<Long> numbers = new HashSet<>();
+      int fetches = 0;
+      int operators = 0;
+      Deque<Node> st = new ArrayDeque<>();
+      for (int i = 0; i < records; i++) {
+        int tag = in.get() & 0xff;
+        // only operators may carry SHARED; any other tag with it set is bad
+        switch (tag) {
+          case TAG_NUMBER:
+            long bits = 0;
+            for (int k = 0; k < 8; k++) {
+              bits = bits << 8 | (in.get() & 0xff);
+            }
+            numbers.add(bits);
+            st.push(new NumberNode(Double.longBitsToDouble(bits)));
+            break;
+          case TAG_NEW_VAR:
+            int length = readVarint(in);
+            if (length > in.remaining()) {
+              throw new BufferUnderflowException();
+            }
+            byte[] utf8 = new byte[length];
+            in.get(utf8);
+            variables.add(new VariableNode(new String(utf8, StandardCharsets.UTF_8)));
+            st.push(variables.get(variables.size() - 1));
+            break;
+          case TAG_VAR:
+            st.push(variables.get(readVarint(in)));
+            break;
+          case TAG_FETCH:
+            OperatorNode shared = registers[readVarint(in)];
+            if (shared == null) {
+              throw new IllegalArgumentException("register used before it is written");
+            }
+            fetches++;
+            st.push(shared);
+            break;
+          case PostfixProgram.ADD:
+          case PostfixProgram.SUB:
+          case PostfixProgram.MUL:
+          case PostfixProgram.DIV:
+          case PostfixProgram.ADD | TAG_SHARED:
+          case PostfixProgram.SUB | TAG_SHARED:
+          case PostfixProgram.MUL | TAG_SHARED:
+          case PostfixProgram.DIV | TAG_SHARED:
+            if (st.size() < 2) {
+              throw new IllegalArgumentException("insufficient operands in record " + i);
+            }
+            Node right = st.pop();
+            Node left = st.pop();
+            OperatorNode op = new OperatorNode("?+-*/".charAt(tag & ~TAG_SHARED), left, right);
+            if ((tag & TAG_SHARED) != 0) {
+              op.slot = readVarint(in);
+              if (registers[op.slot] != null) {
+                throw new IllegalArgumentException("register " + op.slot + " written twice");
+              }
+              registers[op.slot] = op;
+            }
+            operators++;
+            st.push(op);
+            break;
+          default:
+            throw new IllegalArgumentException("bad record tag: " + tag);
+        }
+      }
+      if (st.size() != 1) {
+        throw new IllegalArgumentException(st.isEmpty()
+            ? "no result produced"
+            : "too many operands");
+      }
+      // a parsed tree counts every leaf and operator record; an optimized
+      // one counts each distinct number, variable and operator once
+      if (nodeCount != records - fetches
+          && nodeCount != numbers.size() + variables.size() + operators) {
+        throw new IllegalArgumentException(
+            "node count " + nodeCount + " does not match the " + records + " records");
+      }
+      return new ExpressionTree(st.pop(), nodeCount, registers.length);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("truncated or corrupt expression tree at " + start);
+    }
+  }
+
+  /**
+   * Read a count of items that each take at least one byte further on, so a
+   * count larger than the input left is corrupt rather than a reason to
+   * allocate.
+   */
+  private static int readCount(ByteBuffer in, String what) {
+    int count = readVarint(in);
+    if (count > in.remaining()) {
+      throw new IllegalArgumentException(
+          what + " count " + count + " exceeds the " + in.remaining() + " bytes left");
+    }
+    return count;
+  }
+
+  private static int readVarint(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        if (value < 0) {
+          throw new IllegalArgumentException("varint out of range");
+        }
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("varint too long");
+  }
+
+  /**
+   * Lower this tree into a flat {@link PostfixProgram}.
+   *
+   * <p>The program evaluates to the same value as {@link #evaluate()} but
+   * runs as one loop over primitive arrays, and with a reused operand stack
+   * performs no allocation per evaluation.
+   *
+   * @return the compiled program
+   */
+  public PostfixProgram toProgram() {
+    int leaves = root.leaves();
+    ProgramBuilder b = new ProgramBuilder(2 * leaves - 1, leaves, sharedCount);
+    walk(b);
+    return b.build();
+  }
+
+  /**
+   * Compile this tree into a hidden class whose {@code getAsDouble()} is the
+   * tree's arithmetic as straight-line bytecode. Only expressions without
+   * variables can be compiled.
+   *
+   * <p>The JIT can then inline and register-allocate the expression like
+   * hand-written code. Compilation costs a class definition, so it pays off
+   * only for expressions evaluated many times. Trees too large for a single
+   * JVM method fall back to interpreting {@link #toProgram()}. The result is
+   * stateless and thread-safe.
+   *
+   * @return a supplier computing the same value as {@link #evaluate()}
+   * @throws IllegalStateException if the expression contains variables
+   */
+  public DoubleSupplier compile() {
+    return BytecodeCompiler.compile(toProgram());
+  }
+
+  /**
+   * Compile this tree as {@link #compile()} does, reading each variable
+   * from an array passed on every call, so one compiled class serves any
+   * number of bindings.
+   *
+   * @return a function of the variable values, indexed as in
+   *     {@code toProgram().variables()}
+   * @throws ArrayIndexOutOfBoundsException from the function if the values
+   *     array is too short
+   */
+  public ToDoubleFunction<double[]> compileFunction() {
+    return BytecodeCompiler.compileFunction(toProgram());
+  }
+
+  private void render(TreeRenderer r) throws IOException {
+    try {
+      walk(new RenderVisitor(r));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
   }
 
   @Override
   public String infix() {
-    return root.infix();
+    StringBuilder out = new StringBuilder();
+    walk(new RenderVisitor(TreeRenderer.infix(out)));
+    return out.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Output is produced in a single pass with no intermediate strings.
+   */
+  @Override
+  public void infix(Appendable out) throws IOException {
+    render(TreeRenderer.infix(out));
   }
 
   @Override
   public String schemeExpression() {
-    return root.schemeExpression();
+    StringBuilder out = new StringBuilder();
+    walk(new RenderVisitor(TreeRenderer.scheme(out)));
+    return out.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Output is produced in a single pass with no intermediate strings.
+   */
+  @Override
+  public void schemeExpression(Appendable out) throws IOException {
+    render(TreeRenderer.scheme(out));
   }
 
   @Override
   public String textTree() {
-    return root.textTree("", true);
+    StringBuilder out = new StringBuilder();
+    walk(new RenderVisitor(TreeRenderer.textTree(out)));
+    return out.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Output is produced in a single pass; the indentation is one buffer
+   * that grows and shrinks with the depth.
+   */
+  @Override
+  public void textTree(Appendable out) throws IOException {
+    render(TreeRenderer.textTree(out));
   }
 }
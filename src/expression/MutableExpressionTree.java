@@ -0,0 +1,201 @@
+package expression;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import postfix.IncrementalTree;
+import postfix.TreeRenderer;
+
+/**
+ * Expression tree whose leaf values can be changed after parsing.
+ *
+ * <p>Every operator caches the result it last computed, and
+ * {@link #evaluate()} recomputes only the operators above leaves that
+ * changed; the bookkeeping is done by an {@link IncrementalTree} holding the
+ * raw bits of each {@code double}. Setters never evaluate anything
+ * themselves, so a batch of changes costs one recomputation per affected
+ * operator.
+ *
+ * <p>Variables are set by name, which updates every occurrence. Number
+ * operands are set by position, counting operands from the left of the
+ * postfix string starting at 0. Variables start out unbound, and the
+ * printed forms show their names rather than their values.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class MutableExpressionTree implements Expression {
+
+  /** Value of a variable that has not been set. */
+  private static final long UNSET = Double.doubleToRawLongBits(Double.NaN);
+
+  private final IncrementalTree tree;
+
+  /**
+   * Build a mutable expression tree from a space-separated postfix string.
+   *
+   * @param postfix space-separated tokens (numbers, variables and + - * /)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public MutableExpressionTree(String postfix) {
+    IncrementalTree.Builder builder = new IncrementalTree.Builder();
+    new ExpressionParser(postfix, new ExpressionParser.Builder() {
+      @Override
+      public void number(double value) {
+        builder.leaf(Double.doubleToRawLongBits(value));
+      }
+
+      @Override
+      public void variable(String name) {
+        builder.variable(name, UNSET);
+      }
+
+      @Override
+      public void operator(char op) {
+        builder.operator(op);
+      }
+    });
+    this.tree = builder.build((op, left, right) -> Double.doubleToRawLongBits(
+        ExpressionTree.apply(op, Double.longBitsToDouble(left), Double.longBitsToDouble(right))));
+  }
+
+  /**
+   * Number of operands in this expression.
+   *
+   * @return the leaf count
+   */
+  public int leafCount() {
+    return tree.leafCount();
+  }
+
+  /**
+   * Current value of an operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @return its value; NaN for a variable that has not been set
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public double leaf(int index) {
+    return Double.longBitsToDouble(tree.leaf(index));
+  }
+
+  /**
+   * Change the value of a number operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param value the new value
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if the operand is a variable; use
+   *     {@link #set(String, double)} for those
+   */
+  public void setLeaf(int index, double value) {
+    // raw bits, so that changing 0.0 to -0.0 still counts as a change
+    tree.setLeaf(index, Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * Change several number operands at once. Nothing is recomputed until the
+   * next {@link #evaluate()}.
+   *
+   * @param indices operand positions
+   * @param values new values, parallel to {@code indices}
+   * @throws IllegalArgumentException if the arrays differ in length or an
+   *     operand is a variable
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public void setLeaves(int[] indices, double[] values) {
+    if (indices.length != values.length) {
+      throw new IllegalArgumentException("expected " + indices.length + " values");
+    }
+    for (int i = 0; i < indices.length; i++) {
+      setLeaf(indices[i], values[i]);
+    }
+  }
+
+  /**
+   * Bind a variable, updating every occurrence of it.
+   *
+   * @param name the variable
+   * @param value its new value
+   * @throws IllegalArgumentException if the expression has no such variable
+   */
+  public void set(String name, double value) {
+    tree.set(name, Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * Bind several variables at once. Nothing is recomputed until the next
+   * {@link #evaluate()}.
+   *
+   * @param values new values by variable name
+   * @throws IllegalArgumentException if the expression lacks one of the
+   *     variables; entries before it have already been applied
+   */
+  public void set(Map<String, Double> values) {
+    for (Map.Entry<String, Double> e : values.entrySet()) {
+      set(e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * Evaluate the expression, recomputing only operators whose inputs changed
+   * since the last evaluation. Clean subtrees are not descended into, and
+   * after the first call this performs no allocation.
+   *
+   * @throws IllegalStateException if a variable has not been set
+   * @throws ArithmeticException on division by zero; operators that could
+   *     not be computed stay dirty, so a later evaluation retries them
+   */
+  @Override
+  public double evaluate() {
+    return Double.longBitsToDouble(tree.evaluate());
+  }
+
+  /** Walk the tree, numbers at their current values and variables by name. */
+  private void walk(TreeRenderer out) {
+    tree.render(out, bits -> ExpressionTree.fmt(Double.longBitsToDouble(bits)));
+  }
+
+  private void render(TreeRenderer r) throws IOException {
+    try {
+      walk(r);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public String infix() {
+    StringBuilder out = new StringBuilder();
+    walk(TreeRenderer.infix(out));
+    return out.toString();
+  }
+
+  @Override
+  public void infix(Appendable out) throws IOException {
+    render(TreeRenderer.infix(out));
+  }
+
+  @Override
+  public String schemeExpression() {
+    StringBuilder out = new StringBuilder();
+    walk(TreeRenderer.scheme(out));
+    return out.toString();
+  }
+
+  @Override
+  public void schemeExpression(Appendable out) throws IOException {
+    render(TreeRenderer.scheme(out));
+  }
+
+  @Override
+  public String textTree() {
+    StringBuilder out = new StringBuilder();
+    walk(TreeRenderer.textTree(out));
+    return out.toString();
+  }
+
+  @Override
+  public void textTree(Appendable out) throws IOException {
+    render(TreeRenderer.textTree(out));
+  }
+}
@@ -0,0 +1,263 @@
+package expression;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat, pointer-free form of an {@link ExpressionTree}.
+ *
+ * <p>A program is a {@code byte[]} opcode stream in postfix order plus a
+ * {@code double[]} constant pool. Every {@link #PUSH} consumes the next
+ * constant and every {@link #LOAD}, {@link #STORE} or {@link #FETCH} the
+ * next entry of an {@code int[]} operand stream, so no operand indices are
+ * stored in the code itself. Evaluation is a single
+ * linear loop over both arrays and an operand stack supplied by the caller,
+ * which lets hot paths evaluate the same program repeatedly without
+ * allocating.
+ *
+ * <p>Programs lowered from an {@link ExpressionTree#optimize() optimized}
+ * tree keep each shared subexpression's value in a register: the first
+ * occurrence computes it and {@link #STORE}s it, later ones {@link #FETCH}
+ * it. Registers live in the operand stack array above the stack itself.
+ *
+ * <p>Programs are immutable and may be shared between threads; each thread
+ * needs its own operand stack from {@link #newStack()}.
+ */
+public final class PostfixProgram {
+
+  /** Push the next constant. */
+  static final byte PUSH = 0;
+  /** Pop b, pop a, push a + b. */
+  static final byte ADD = 1;
+  /** Pop b, pop a, push a - b. */
+  static final byte SUB = 2;
+  /** Pop b, pop a, push a * b. */
+  static final byte MUL = 3;
+  /** Pop b, pop a, push a / b; throws if b is zero. */
+  static final byte DIV = 4;
+  /** Push the value of the next variable slot. */
+  static final byte LOAD = 5;
+  /** Copy the top of the stack into the next register; the value stays on the stack. */
+  static final byte STORE = 6;
+  /** Push the value of the next register. */
+  static final byte FETCH = 7;
+
+  private static final double[] NO_VALUES = new double[0];
+
+  private final byte[] code;
+  private final double[] constants;
+  private final int[] operands;
+  private final String[] variables;
+  private final int depth;
+  private final int registers;
+
+  PostfixProgram(byte[] code, double[] constants, int[] operands, String[] variables,
+      int depth, int registers) {
+    this.code = code;
+    this.constants = constants;
+    this.operands = operands;
+    this.variables = variables;
+    this.depth = depth;
+    this.registers = registers;
+  }
+
+  /**
+   * Map an operator symbol to its opcode.
+   *
+   * @param op one of + - * /
+   * @return the opcode
+   */
+  static byte opcode(char op) {
+    switch (op) {
+      case '+':
+        return ADD;
+      case '-':
+        return SUB;
+      case '*':
+        return MUL;
+      case '/':
+        return DIV;
+      default:
+        throw new IllegalArgumentException("unknown operator: " + op);
+    }
+  }
+
+  /** Division with the tree's division-by-zero check. */
+  static double divide(double a, double b) {
+    if (b == 0.0) {
+      throw new ArithmeticException("division by zero");
+    }
+    return a / b;
+  }
+
+  byte[] code() {
+    return code;
+  }
+
+  double[] constants() {
+    return constants;
+  }
+
+  int[] operands() {
+    return operands;
+  }
+
+  /** Maximum operand stack depth, not counting registers. */
+  int depth() {
+    return depth;
+  }
+
+  int registers() {
+    return registers;
+  }
+
+  /**
+   * Names of the variables this program reads, in order of first use.
+   *
+   * <p>Position {@code i} in this list is slot {@code i} of the values array
+   * passed to {@link #evaluate(double[], double[])}.
+   *
+   * @return the variable names
+   */
+  public List<String> variables() {
+    return List.of(variables);
+  }
+
+  /**
+   * Number of operand stack slots this program needs: its maximum stack
+   * depth plus one register per shared subexpression.
+   *
+   * @return the operand stack size
+   */
+  public int maxStack() {
+    return depth + registers;
+  }
+
+  /**
+   * Allocate an operand stack large enough for this program.
+   *
+   * @return a new stack to pass to {@link #evaluate(double[])}
+   */
+  public double[] newStack() {
+    return new double[maxStack()];
+  }
+
+  /**
+   * Evaluate the program using a caller-supplied operand stack.
+   *
+   * <p>This performs no allocation; the stack may be reused across calls
+   * on the same thread.
+   *
+   * @param stack operand stack with at least {@link #maxStack()} slots
+   * @return the value of the expression
+   * @throws IllegalArgumentException if the stack is too small
+   * @throws IllegalStateException if the program reads variables
+   * @throws ArithmeticException on division by zero
+   */
+  public double evaluate(double[] stack) {
+    if (variables.length > 0) {
+      throw new IllegalStateException("unbound variable: " + variables[0]);
+    }
+    return evaluate(NO_VALUES, stack);
+  }
+
+  /**
+   * Evaluate the program with variables bound by slot.
+   *
+   * <p>This performs no allocation; both arrays may be reused across calls
+   * on the same thread.
+   *
+   * @param values variable values, indexed as in {@link #variables()}
+   * @param stack operand stack with at least {@link #maxStack()} slots
+   * @return the value of the expression
+   * @throws IllegalArgumentException if either array is too small
+   * @throws ArithmeticException on division by zero
+   */
+  public double evaluate(double[] values, double[] stack) {
+    if (stack.length < maxStack()) {
+      throw new IllegalArgumentException("operand stack too small: need " + maxStack());
+    }
+    if (values.length < variables.length) {
+      throw new IllegalArgumentException("expected " + variables.length + " variable values");
+    }
+    final byte[] code = this.code;
+    final double[] constants = this.constants;
+    final int[] operands = this.operands;
+    final int base = depth;
+    int sp = 0;
+    int k = 0;
+    int v = 0;
+    for (int pc = 0; pc < code.length; pc++) {
+      switch (code[pc]) {
+        case PUSH:
+          stack[sp++] = constants[k++];
+          break;
+        case LOAD:
+          stack[sp++] = values[operands[v++]];
+          break;
+        case STORE:
+          stack[base + operands[v++]] = stack[sp - 1];
+          break;
+        case FETCH:
+          stack[sp++] = stack[base + operands[v++]];
+          break;
+        case ADD:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] + stack[sp];
+          break;
+        case SUB:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] - stack[sp];
+          break;
+        case MUL:
+          sp--;
+          stack[sp - 1] = stack[sp - 1] * stack[sp];
+          break;
+        case DIV:
+          sp--;
+          stack[sp - 1] = divide(stack[sp - 1], stack[sp]);
+          break;
+        default:
+          throw new IllegalStateException("bad opcode: " + code[pc]);
+      }
+    }
+    return stack[0];
+  }
+
+  /**
+   * Evaluate the program with a freshly allocated operand stack.
+   *
+   * @return the value of the expression
+   * @throws IllegalStateException if the program reads variables
+   * @throws ArithmeticException on division by zero
+   */
+  public double evaluate() {
+    return evaluate(newStack());
+  }
+
+  /**
+   * Evaluate the program once per row of a set of variable columns.
+   *
+   * @param columns values for each variable; each column needs at least
+   *     {@code out.length} entries
+   * @param out receives one result per row
+   * @throws IllegalArgumentException if a variable has no column or a column
+   *     is too short
+   * @throws ArithmeticException on division by zero in any row
+   * @see ExpressionTree#evaluate(Map, double[])
+   */
+  public void evaluate(Map<String, double[]> columns, double[] out) {
+    double[][] bound = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      double[] column = columns.get(variables[i]);
+      if (column == null) {
+        throw new IllegalArgumentException("no column for variable: " + variables[i]);
+      }
+      if (column.length < out.length) {
+        throw new IllegalArgumentException("column too short for variable: " + variables[i]);
+      }
+      bound[i] = column;
+    }
+    new ColumnEvaluator(this, bound).evaluate(out);
+  }
+}
@@ -0,0 +1,151 @@
+package intervals;
+
+import java.util.Arrays;
+import postfix.PostfixLexer;
+import postfix.TreeRenderer;
+
+/**
+ * Structure of a postfix U/I interval expression stored in primitive
+ * arrays, shared by the array-backed trees over {@code int}, {@code long}
+ * and {@code double} coordinates.
+ *
+ * <p>Node {@code i} is a leaf when {@code op[i]} is {@link #LEAF}, otherwise
+ * a union or intersection of nodes {@code left[i]} and {@code right[i]}.
+ * Nodes are in postfix order, so children precede their parent and the
+ * root is last. The leaf coordinates live in the owning tree's own
+ * primitive arrays, filled through a {@link LeafParser} and read back
+ * through a {@link LeafWriter}, so no coordinate is ever boxed. Parsing
+ * goes through {@link IntervalParser} and drawing through
+ * {@link TreeRenderer}, as for {@link IntervalTree}.
+ */
+final class ArenaShape {
+
+  static final byte LEAF = 0;
+  static final byte UNION = 1;
+  static final byte INTERSECT = 2;
+
+  /** Stores one leaf token. */
+  @FunctionalInterface
+  interface LeafParser {
+    /**
+     * Parse the lexer's current "start,end" token into leaf slot {@code node}.
+     *
+     * @param lexer lexer positioned on the token
+     * @param comma absolute offset of the single comma in the token
+     * @param node slot to fill
+     * @throws IllegalArgumentException if the token is not a valid interval
+     */
+    void parse(PostfixLexer lexer, int comma, int node);
+  }
+
+  /** Formats one leaf. */
+  @FunctionalInterface
+  interface LeafWriter {
+    /**
+     * Format leaf {@code node} as "start,end".
+     *
+     * @param node the leaf
+     * @return its text
+     */
+    CharSequence text(int node);
+  }
+
+  final byte[] op;
+  final int[] left;
+  final int[] right;
+  final int height;
+  final int maxStack;
+
+  /**
+   * Most nodes a postfix string of this length can hold: every token takes
+   * at least one character plus a separator.
+   */
+  static int capacity(String postfixExpression) {
+    return postfixExpression == null ? 0 : (postfixExpression.length() + 1) / 2;
+  }
+
+  /**
+   * Parse the operators and hand each leaf token to {@code leaves}.
+   *
+   * @throws IllegalArgumentException for invalid expressions
+   */
+  ArenaShape(String postfixExpression, LeafParser leaves) {
+    int capacity = capacity(postfixExpression);
+    byte[] op = new byte[capacity];
+    int[] left = new int[capacity];
+    int[] right = new int[capacity];
+    // indices of the pending operands
+    int[] stack = new int[capacity];
+
+    IntervalParser parser = new IntervalParser(postfixExpression, new IntervalParser.Builder() {
+      private int n;
+      private int sp;
+
+      @Override
+      public void interval(PostfixLexer lexer, int comma) {
+        leaves.parse(lexer, comma, n);
+        op[n] = LEAF;
+        left[n] = -1;
+        right[n] = -1;
+        stack[sp++] = n++;
+      }
+
+      @Override
+      public void operator(char symbol) {
+        op[n] = symbol == 'U' ? UNION : INTERSECT;
+        left[n] = stack[sp - 2];
+        right[n] = stack[sp - 1];
+        sp--;
+        stack[sp - 1] = n++;
+      }
+    });
+
+    this.op = Arrays.copyOf(op, parser.nodes);
+    this.left = Arrays.copyOf(left, parser.nodes);
+    this.right = Arrays.copyOf(right, parser.nodes);
+    this.height = parser.height;
+    this.maxStack = parser.maxDepth;
+  }
+
+  /** Number of nodes, operators and leaves together. */
+  int size() {
+    return op.length;
+  }
+
+  /** Draw the tree as {@link Intervals#textTree()} does. */
+  String textTree(LeafWriter leaves) {
+    StringBuilder out = new StringBuilder();
+    TreeRenderer.textTree(out).render(new TreeRenderer.ArrayTree() {
+      @Override
+      public int root() {
+        return op.length - 1;
+      }
+
+      @Override
+      public int height() {
+        return height;
+      }
+
+      @Override
+      public char operator(int node) {
+        return op[node] == LEAF ? 0 : op[node] == UNION ? 'U' : 'I';
+      }
+
+      @Override
+      public int left(int node) {
+        return left[node];
+      }
+
+      @Override
+      public int right(int node) {
+        return right[node];
+      }
+
+      @Override
+      public CharSequence leafText(int node) {
+        return leaves.text(node);
+      }
+    });
+    return out.toString();
+  }
+}
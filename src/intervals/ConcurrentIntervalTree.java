@@ -0,0 +1,112 @@
+package intervals;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Interval tree shared between threads, with lock-free reads.
+ *
+ * <p>The current {@link PersistentIntervalTree} version is held in a single
+ * {@link AtomicReference}. Readers take one volatile read and then work on
+ * an immutable snapshot, so they never block, never see a half-applied
+ * update and never delay writers. Writers derive the next version by path
+ * copying and publish it with compare-and-set, retrying if another writer
+ * got in first, so concurrent writers are safe too; a retry repeats only
+ * the O(depth) path copy.
+ *
+ * <p>Several reads that must agree, such as a result and a leaf, should
+ * use one {@link #snapshot()} rather than separate calls.
+ */
+public final class ConcurrentIntervalTree implements Intervals {
+
+  private final AtomicReference<PersistentIntervalTree> current;
+
+  /**
+   * Parse the initial version from a space-separated postfix string.
+   *
+   * @param postfix space-separated tokens (intervals, U and I)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public ConcurrentIntervalTree(String postfix) {
+    this(new PersistentIntervalTree(postfix));
+  }
+
+  /**
+   * Start from an existing version.
+   *
+   * @param initial the first version readers see
+   */
+  public ConcurrentIntervalTree(PersistentIntervalTree initial) {
+    this.current = new AtomicReference<>(initial);
+  }
+
+  /**
+   * The version published most recently.
+   *
+   * @return an immutable snapshot
+   */
+  public PersistentIntervalTree snapshot() {
+    return current.get();
+  }
+
+  /**
+   * Change one operand and publish the new version.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param start new start, inclusive
+   * @param end new end, inclusive
+   * @return the version published
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public PersistentIntervalTree setLeaf(int index, int start, int end) {
+    return current.updateAndGet(tree -> tree.withLeaf(index, start, end));
+  }
+
+  /**
+   * Change several operands and publish them together as one version, so
+   * no reader sees only some of them.
+   *
+   * @param indices operand positions
+   * @param starts new starts, parallel to {@code indices}
+   * @param ends new ends, parallel to {@code indices}
+   * @return the version published
+   * @throws IllegalArgumentException if the arrays differ in length or an
+   *     interval has start &gt; end
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public PersistentIntervalTree setLeaves(int[] indices, int[] starts, int[] ends) {
+    return current.updateAndGet(tree -> tree.withLeaves(indices, starts, ends));
+  }
+
+  /**
+   * Publish the version computed from the current one. The function may
+   * run more than once when writers race, so it must not have side
+   * effects.
+   *
+   * @param change derives the next version
+   * @return the version published
+   */
+  public PersistentIntervalTree update(UnaryOperator<PersistentIntervalTree> change) {
+    return current.updateAndGet(change);
+  }
+
+  @Override
+  public Interval evaluate() {
+    return current.get().evaluate();
+  }
+
+  /**
+   * Result of the current version without allocating.
+   *
+   * @return the result, packed as by {@link PackedInterval}
+   */
+  public long evaluatePacked() {
+    return current.get().evaluatePacked();
+  }
+
+  @Override
+  public String textTree() {
+    return current.get().textTree();
+  }
+}
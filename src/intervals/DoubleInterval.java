@@ -0,0 +1,137 @@
+package intervals;
+
+import postfix.PostfixLexer;
+
+/**
+ * Interval with {@code double} start and end points, for continuous
+ * coordinates. Behaves like {@link Interval}, with negative infinity in
+ * place of {@link Integer#MIN_VALUE} for {@link #EMPTY}. Infinite bounds
+ * are allowed; NaN is not.
+ */
+public final class DoubleInterval {
+  /**
+   * The result of intersecting intervals that do not overlap, shared by
+   * every such intersection.
+   */
+  public static final DoubleInterval EMPTY =
+      new DoubleInterval(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+  private final double start;
+  private final double end;
+
+  /**
+   * Creates an interval from start to end.
+   *
+   * @param start starting point
+   * @param end ending point
+   * @throws IllegalArgumentException if start &gt; end or either is NaN
+   */
+  public DoubleInterval(double start, double end) {
+    if (!(start <= end)) {
+      throw new IllegalArgumentException("Invalid interval");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Parse a "start,end" token.
+   *
+   * @param token the token, without surrounding spaces
+   * @return the interval
+   * @throws IllegalArgumentException if the token is not a valid interval
+   */
+  public static DoubleInterval parse(String token) {
+    int comma = token.indexOf(',');
+    if (comma <= 0 || comma == token.length() - 1 || token.indexOf(',', comma + 1) != -1) {
+      throw new IllegalArgumentException("Invalid interval: " + token);
+    }
+    try {
+      return new DoubleInterval(PostfixLexer.parseDouble(token, 0, comma),
+          PostfixLexer.parseDouble(token, comma + 1, token.length()));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid interval: " + token);
+    }
+  }
+
+  /**
+   * Gets the starting point.
+   *
+   * @return start, inclusive
+   */
+  public double getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the ending point.
+   *
+   * @return end, inclusive
+   */
+  public double getEnd() {
+    return end;
+  }
+
+  /**
+   * Finds the intersection with another interval.
+   * Returns {@link #EMPTY} if intervals don't overlap.
+   *
+   * @param other the interval to intersect with
+   * @return intersection interval
+   */
+  public DoubleInterval intersect(DoubleInterval other) {
+    double newStart = Math.max(this.start, other.start);
+    double newEnd = Math.min(this.end, other.end);
+    if (newStart > newEnd) {
+      return EMPTY;
+    }
+    return new DoubleInterval(newStart, newEnd);
+  }
+
+  /**
+   * Returns the union with another interval.
+   *
+   * @param other the interval to union with
+   * @return union interval
+   */
+  public DoubleInterval union(DoubleInterval other) {
+    return new DoubleInterval(Math.min(this.start, other.start),
+        Math.max(this.end, other.end));
+  }
+
+  /**
+   * String representation as "start,end", using {@link Double#toString}
+   * so the result parses back to the same interval.
+   *
+   * @return interval as string
+   */
+  @Override
+  public String toString() {
+    return start + "," + end;
+  }
+
+  /**
+   * Checks if two intervals are equal, comparing bounds as
+   * {@link Double#equals} does, so 0.0 and -0.0 differ.
+   *
+   * @param obj object to compare
+   * @return true if intervals have same start and end
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DoubleInterval)) {
+      return false;
+    }
+    DoubleInterval that = (DoubleInterval) obj;
+    return Double.doubleToLongBits(this.start) == Double.doubleToLongBits(that.start)
+        && Double.doubleToLongBits(this.end) == Double.doubleToLongBits(that.end);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Double.hashCode(start)) + Double.hashCode(end);
+  }
+}
@@ -0,0 +1,110 @@
+package intervals;
+
+import java.util.Arrays;
+import postfix.EvaluateEvent;
+import postfix.Metrics;
+
+/**
+ * Interval tree over {@code double} coordinates, for continuous values
+ * such as seconds or positions.
+ *
+ * <p>Stored like {@link IntervalArena}: an {@link ArenaShape} holds the
+ * operators and the leaf bounds sit in two {@code double[]} arrays, so
+ * {@link #evaluate()} is one forward loop over primitive arrays with a
+ * primitive stack, allocating only its result. Nothing on the parse or
+ * evaluation path is boxed. Expressions use {@code U} and {@code I}, with
+ * the same rules as {@link DoubleInterval}; bounds may be infinite but not
+ * NaN.
+ */
+public final class DoubleIntervalTree {
+
+  private final ArenaShape shape;
+  private final double[] start;
+  private final double[] end;
+
+  /**
+   * Parse a space-separated postfix string of "start,end" tokens, U and I.
+   *
+   * @param postfixExpression space-separated postfix string
+   * @throws IllegalArgumentException for invalid expressions
+   */
+  public DoubleIntervalTree(String postfixExpression) {
+    int capacity = ArenaShape.capacity(postfixExpression);
+    double[] start = new double[capacity];
+    double[] end = new double[capacity];
+    this.shape = new ArenaShape(postfixExpression, (lexer, comma, i) -> {
+      start[i] = lexer.parseDouble(lexer.start(), comma);
+      end[i] = lexer.parseDouble(comma + 1, lexer.end());
+      // also rejects NaN bounds
+      if (!(start[i] <= end[i])) {
+        throw new IllegalArgumentException("Invalid interval");
+      }
+    });
+    this.start = Arrays.copyOf(start, shape.size());
+    this.end = Arrays.copyOf(end, shape.size());
+  }
+
+  /**
+   * Number of nodes, operators and intervals together.
+   *
+   * @return the node count
+   */
+  public int nodeCount() {
+    return shape.size();
+  }
+
+  /**
+   * Evaluate in one pass over the arrays.
+   *
+   * @return the result; {@link DoubleInterval#EMPTY} if an intersection at
+   *     the root does not overlap
+   */
+  public DoubleInterval evaluate() {
+    if (!Metrics.isEnabled()) {
+      return evaluateArrays();
+    }
+    long startNanos = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    DoubleInterval result = evaluateArrays();
+    Metrics.INTERVAL.evaluated(event, startNanos, shape.size(), shape.height);
+    return result;
+  }
+
+  private DoubleInterval evaluateArrays() {
+    byte[] op = shape.op;
+    double[] lo = new double[shape.maxStack];
+    double[] hi = new double[shape.maxStack];
+    int sp = 0;
+    for (int i = 0; i < op.length; i++) {
+      if (op[i] == ArenaShape.LEAF) {
+        lo[sp] = start[i];
+        hi[sp++] = end[i];
+        continue;
+      }
+      sp--;
+      if (op[i] == ArenaShape.UNION) {
+        lo[sp - 1] = Math.min(lo[sp - 1], lo[sp]);
+        hi[sp - 1] = Math.max(hi[sp - 1], hi[sp]);
+      } else {
+        lo[sp - 1] = Math.max(lo[sp - 1], lo[sp]);
+        hi[sp - 1] = Math.min(hi[sp - 1], hi[sp]);
+        if (lo[sp - 1] > hi[sp - 1]) {
+          // no overlap, as in DoubleInterval.intersect
+          lo[sp - 1] = Double.NEGATIVE_INFINITY;
+          hi[sp - 1] = Double.NEGATIVE_INFINITY;
+        }
+      }
+    }
+    return lo[0] == Double.NEGATIVE_INFINITY && hi[0] == Double.NEGATIVE_INFINITY
+        ? DoubleInterval.EMPTY : new DoubleInterval(lo[0], hi[0]);
+  }
+
+  /**
+   * Draw the tree in the same layout as {@link IntervalTree#textTree()}.
+   *
+   * @return the drawing
+   */
+  public String textTree() {
+    return shape.textTree(i -> start[i] + "," + end[i]);
+  }
+}
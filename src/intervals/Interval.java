@@ -1,13 +1,17 @@
 package intervals;
 
-import java.util.Objects;
-
 /**
  * Represents a 1D interval with integer start and end points.
  */
 public class Interval {
-  private int start;
-  private int end;
+  /**
+   * The result of intersecting intervals that do not overlap, shared by
+   * every such intersection.
+   */
+  public static final Interval EMPTY = new Interval(Integer.MIN_VALUE, Integer.MIN_VALUE);
+
+  private final int start;
+  private final int end;
 
   /**
    * Creates an interval from start to end.
@@ -24,9 +28,27 @@ public class Interval {
     this.end = end;
   }
 
+  /**
+   * Gets the starting point.
+   *
+   * @return start, inclusive
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the ending point.
+   *
+   * @return end, inclusive
+   */
+  public int getEnd() {
+    return end;
+  }
+
   /**
    * Finds the intersection with another interval.
-   * Returns [MIN_VALUE, MIN_VALUE] if intervals don't overlap.
+   * Returns {@link #EMPTY} if intervals don't overlap.
    *
    * @param other the interval to intersect with
    * @return intersection interval
@@ -37,7 +59,7 @@ public class Interval {
 
     // No overlap case
     if (newStart > newEnd) {
-      return new Interval(Integer.MIN_VALUE, Integer.MIN_VALUE);
+      return EMPTY;
     }
     return new Interval(newStart, newEnd);
   }
@@ -91,6 +113,7 @@ public class Interval {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(start, end);
+    // same value as Objects.hash(start, end), without boxing
+    return 31 * (31 + start) + end;
   }
 }
\ No newline at end of file
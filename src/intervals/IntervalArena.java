@@ -0,0 +1,115 @@
+package intervals;
+
+import java.util.Arrays;
+import postfix.EvaluateEvent;
+import postfix.Metrics;
+
+/**
+ * Interval tree stored as parallel primitive arrays instead of node objects.
+ *
+ * <p>Node {@code i} is a leaf holding the interval
+ * {@code start[i],end[i]} when {@code op[i]} is {@code LEAF}, otherwise a
+ * union or intersection of nodes {@code left[i]} and {@code right[i]}.
+ * Nodes are laid out in postfix order, so children always precede their
+ * parent and the root is the last node. A node costs 17 bytes of array
+ * payload, where an {@link IntervalTree} node is an object of 24 or 32
+ * bytes.
+ *
+ * <p>The operators are held in an {@link ArenaShape}, as for
+ * {@link LongIntervalTree}, and the bounds in two {@code int[]} arrays.
+ * {@link #evaluate()} is a single forward loop over the arrays that
+ * allocates only the result. Output matches {@link IntervalTree} for the
+ * same input.
+ */
+public final class IntervalArena implements Intervals {
+
+  private final ArenaShape shape;
+  private final int[] start;
+  private final int[] end;
+
+  /**
+   * Parse a space-separated postfix string straight into arrays.
+   *
+   * @param postfixExpression space-separated postfix string
+   * @throws IllegalArgumentException for invalid expressions
+   */
+  public IntervalArena(String postfixExpression) {
+    int capacity = ArenaShape.capacity(postfixExpression);
+    int[] start = new int[capacity];
+    int[] end = new int[capacity];
+    this.shape = new ArenaShape(postfixExpression, (lexer, comma, i) -> {
+      long interval = IntervalParser.parseInterval(lexer, comma);
+      start[i] = PackedInterval.start(interval);
+      end[i] = PackedInterval.end(interval);
+    });
+    this.start = Arrays.copyOf(start, shape.size());
+    this.end = Arrays.copyOf(end, shape.size());
+  }
+
+  /**
+   * Number of nodes, operators and intervals together.
+   *
+   * @return the node count
+   */
+  public int nodeCount() {
+    return shape.size();
+  }
+
+  /**
+   * Bytes of array payload held by this tree, excluding array headers.
+   *
+   * @return payload size in bytes
+   */
+  public long payloadBytes() {
+    return (long) shape.size() * (Byte.BYTES + 4 * Integer.BYTES);
+  }
+
+  /**
+   * Evaluate in one pass over the arrays, with the same union and
+   * intersection rules as {@link Interval}.
+   */
+  @Override
+  public Interval evaluate() {
+    if (!Metrics.isEnabled()) {
+      return evaluateArrays();
+    }
+    long startNanos = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    Interval result = evaluateArrays();
+    Metrics.INTERVAL.evaluated(event, startNanos, shape.size(), shape.height);
+    return result;
+  }
+
+  private Interval evaluateArrays() {
+    byte[] op = shape.op;
+    int[] lo = new int[shape.maxStack];
+    int[] hi = new int[shape.maxStack];
+    int sp = 0;
+    for (int i = 0; i < op.length; i++) {
+      if (op[i] == ArenaShape.LEAF) {
+        lo[sp] = start[i];
+        hi[sp++] = end[i];
+        continue;
+      }
+      sp--;
+      if (op[i] == ArenaShape.UNION) {
+        lo[sp - 1] = Math.min(lo[sp - 1], lo[sp]);
+        hi[sp - 1] = Math.max(hi[sp - 1], hi[sp]);
+      } else {
+        lo[sp - 1] = Math.max(lo[sp - 1], lo[sp]);
+        hi[sp - 1] = Math.min(hi[sp - 1], hi[sp]);
+        if (lo[sp - 1] > hi[sp - 1]) {
+          // no overlap, as in Interval.intersect
+          lo[sp - 1] = Integer.MIN_VALUE;
+          hi[sp - 1] = Integer.MIN_VALUE;
+        }
+      }
+    }
+    return PackedInterval.toInterval(PackedInterval.pack(lo[0], hi[0]));
+  }
+
+  @Override
+  public String textTree() {
+    return shape.textTree(i -> start[i] + "," + end[i]);
+  }
+}
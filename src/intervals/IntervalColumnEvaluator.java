@@ -0,0 +1,170 @@
+package intervals;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates an {@link IntervalTree} over many rows of variable bindings one
+ * operator at a time.
+ *
+ * <p>The tree is lowered once into a postfix instruction list. Rows are then
+ * processed in blocks of {@value #BLOCK}, so every operand stays in cache,
+ * and within a block each instruction is a simple counted loop of
+ * {@code min}/{@code max} over {@code int} arrays, which C2 compiles to SIMD
+ * instructions where available. Variable operands are read straight from
+ * their columns; only intermediate results use the per-slot scratch
+ * buffers, which are allocated once per call rather than per row.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ */
+final class IntervalColumnEvaluator {
+
+  static final int BLOCK = 1024;
+
+  /** Push the constant interval {@code a[i]},{@code b[i]}. */
+  static final byte LEAF = 0;
+  /** Push the columns of variable {@code a[i]}. */
+  static final byte LOAD = 1;
+  /** Replace the top {@code a[i]} operands with their union. */
+  static final byte UNION = 2;
+  /** Replace the top {@code a[i]} operands with their intersection. */
+  static final byte INTERSECT = 3;
+
+  private final byte[] code;
+  private final int[] a;
+  private final int[] b;
+  private final String[] variables;
+  private final int depth;
+
+  IntervalColumnEvaluator(byte[] code, int[] a, int[] b, String[] variables, int depth) {
+    this.code = code;
+    this.a = a;
+    this.b = b;
+    this.variables = variables;
+    this.depth = depth;
+  }
+
+  void evaluate(Map<String, int[]> starts, Map<String, int[]> ends, int[] outStarts,
+      int[] outEnds) {
+    int rows = outStarts.length;
+    if (outEnds.length != rows) {
+      throw new IllegalArgumentException("output arrays differ in length");
+    }
+    int[][] startColumns = new int[variables.length][];
+    int[][] endColumns = new int[variables.length][];
+    for (int v = 0; v < variables.length; v++) {
+      startColumns[v] = column(starts, variables[v], rows);
+      endColumns[v] = column(ends, variables[v], rows);
+    }
+    new Run(startColumns, endColumns).evaluate(outStarts, outEnds);
+  }
+
+  private static int[] column(Map<String, int[]> columns, String name, int rows) {
+    int[] column = columns.get(name);
+    if (column == null) {
+      throw new IllegalArgumentException("no column for variable: " + name);
+    }
+    if (column.length < rows) {
+      throw new IllegalArgumentException("column too short for variable: " + name);
+    }
+    return column;
+  }
+
+  /** Buffers for one call. */
+  private final class Run {
+    private final int[][] startColumns;
+    private final int[][] endColumns;
+
+    /** Operand stack: slot i is a view of {@code lo[i]}/{@code hi[i]} at {@code offsets[i]}. */
+    private final int[][] lo = new int[depth][];
+    private final int[][] hi = new int[depth][];
+    private final int[] offsets = new int[depth];
+    private final int[][] scratchLo = new int[depth][BLOCK];
+    private final int[][] scratchHi = new int[depth][BLOCK];
+
+    Run(int[][] startColumns, int[][] endColumns) {
+      this.startColumns = startColumns;
+      this.endColumns = endColumns;
+    }
+
+    void evaluate(int[] outStarts, int[] outEnds) {
+      for (int row = 0; row < outStarts.length; row += BLOCK) {
+        int len = Math.min(BLOCK, outStarts.length - row);
+        evaluateBlock(row, len);
+        System.arraycopy(lo[0], offsets[0], outStarts, row, len);
+        System.arraycopy(hi[0], offsets[0], outEnds, row, len);
+      }
+    }
+
+    private void evaluateBlock(int row, int len) {
+      int sp = 0;
+      for (int i = 0; i < code.length; i++) {
+        switch (code[i]) {
+          case LEAF:
+            Arrays.fill(scratchLo[sp], 0, len, a[i]);
+            Arrays.fill(scratchHi[sp], 0, len, b[i]);
+            lo[sp] = scratchLo[sp];
+            hi[sp] = scratchHi[sp];
+            offsets[sp++] = 0;
+            break;
+          case LOAD:
+            int[] s = startColumns[a[i]];
+            int[] e = endColumns[a[i]];
+            for (int r = row; r < row + len; r++) {
+              if (s[r] > e[r]) {
+                throw new IllegalArgumentException(
+                    "Invalid interval for variable " + variables[a[i]] + " in row " + r);
+              }
+            }
+            lo[sp] = s;
+            hi[sp] = e;
+            offsets[sp++] = row;
+            break;
+          default:
+            sp -= a[i];
+            combine(code[i], sp, a[i], len);
+            sp++;
+        }
+      }
+    }
+
+    /** Fold operands {@code base} to {@code base + count - 1} into scratch slot base. */
+    private void combine(byte op, int base, int count, int len) {
+      int[] dstLo = scratchLo[base];
+      int[] dstHi = scratchHi[base];
+      int[] lo0 = lo[base];
+      int[] hi0 = hi[base];
+      int off0 = offsets[base];
+      for (int k = base + 1; k < base + count; k++) {
+        int[] lo1 = lo[k];
+        int[] hi1 = hi[k];
+        int off1 = offsets[k];
+        if (op == UNION) {
+          for (int r = 0; r < len; r++) {
+            dstLo[r] = Math.min(lo0[off0 + r], lo1[off1 + r]);
+            dstHi[r] = Math.max(hi0[off0 + r], hi1[off1 + r]);
+          }
+        } else {
+          for (int r = 0; r < len; r++) {
+            dstLo[r] = Math.max(lo0[off0 + r], lo1[off1 + r]);
+            dstHi[r] = Math.min(hi0[off0 + r], hi1[off1 + r]);
+          }
+        }
+        lo0 = dstLo;
+        hi0 = dstHi;
+        off0 = 0;
+      }
+      if (op == INTERSECT) {
+        // once start passes end it stays past, so one check gives Interval.EMPTY
+        for (int r = 0; r < len; r++) {
+          boolean empty = dstLo[r] > dstHi[r];
+          dstLo[r] = empty ? Integer.MIN_VALUE : dstLo[r];
+          dstHi[r] = empty ? Integer.MIN_VALUE : dstHi[r];
+        }
+      }
+      lo[base] = dstLo;
+      hi[base] = dstHi;
+      offsets[base] = 0;
+    }
+  }
+}
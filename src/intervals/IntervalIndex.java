@@ -0,0 +1,341 @@
+package intervals;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic index of intervals answering overlap and stabbing queries.
+ *
+ * <p>This is an augmented AVL tree ordered by (start, end), where every node
+ * also records the largest end in its subtree. A query skips any subtree
+ * whose largest end is before the query and, because nodes are ordered by
+ * start, any right subtree beginning after it. Insert and delete are
+ * O(log n); a query reporting k intervals is O(log n + k) for the typical
+ * case and never worse than O(k log n).
+ *
+ * <p>Nodes live in parallel primitive arrays (21 bytes per interval) rather
+ * than objects, with deleted slots reused, so millions of intervals cost
+ * little heap and no per-node headers. Query results are passed to an
+ * {@link IntervalConsumer} as two {@code int}s, so a query allocates nothing
+ * however many intervals it reports.
+ *
+ * <p>The index is a multiset: the same interval may be inserted more than
+ * once and each delete removes one copy. It is not thread-safe.
+ */
+public final class IntervalIndex {
+
+  /** Receives query results without allocating an {@link Interval} each. */
+  @FunctionalInterface
+  public interface IntervalConsumer {
+    /**
+     * Accept one interval.
+     *
+     * @param start start, inclusive
+     * @param end end, inclusive
+     */
+    void accept(int start, int end);
+  }
+
+  private static final int NIL = -1;
+
+  private int[] start;
+  private int[] end;
+  private int[] maxEnd;
+  private int[] left;
+  private int[] right;
+  private byte[] height;
+  private int root = NIL;
+  private int size;
+  /** Slots in use or freed; slots above this were never used. */
+  private int used;
+  /** Head of the free list of deleted slots, linked through {@code left}. */
+  private int free = NIL;
+
+  /** Whether the last {@link #delete(int, int)} call found its interval. */
+  private boolean removed;
+
+  /** Create an empty index. */
+  public IntervalIndex() {
+    this(16);
+  }
+
+  /**
+   * Create an empty index with room for some intervals before it grows.
+   *
+   * @param capacity expected number of intervals
+   */
+  public IntervalIndex(int capacity) {
+    int n = Math.max(1, capacity);
+    start = new int[n];
+    end = new int[n];
+    maxEnd = new int[n];
+    left = new int[n];
+    right = new int[n];
+    height = new byte[n];
+  }
+
+  /**
+   * Number of intervals stored, counting duplicates.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Add an interval.
+   *
+   * @param start start, inclusive
+   * @param end end, inclusive
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public void insert(int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException("Invalid interval");
+    }
+    root = insert(root, start, end);
+    size++;
+  }
+
+  /**
+   * Add an interval.
+   *
+   * @param interval the interval
+   */
+  public void insert(Interval interval) {
+    insert(interval.getStart(), interval.getEnd());
+  }
+
+  /**
+   * Remove one copy of an interval.
+   *
+   * @param start start, inclusive
+   * @param end end, inclusive
+   * @return true if the interval was present
+   */
+  public boolean delete(int start, int end) {
+    removed = false;
+    root = delete(root, start, end);
+    if (removed) {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Remove one copy of an interval.
+   *
+   * @param interval the interval
+   * @return true if the interval was present
+   */
+  public boolean delete(Interval interval) {
+    return delete(interval.getStart(), interval.getEnd());
+  }
+
+  /**
+   * Report every stored interval that shares at least one point with
+   * {@code [from, to]}, in order of start.
+   *
+   * @param from query start, inclusive
+   * @param to query end, inclusive
+   * @param consumer receives each overlapping interval
+   * @return the number of intervals reported
+   */
+  public int overlapping(int from, int to, IntervalConsumer consumer) {
+    return from > to ? 0 : overlapping(root, from, to, consumer);
+  }
+
+  /**
+   * Report every stored interval containing {@code point}, in order of
+   * start.
+   *
+   * @param point the point
+   * @param consumer receives each containing interval
+   * @return the number of intervals reported
+   */
+  public int stabbing(int point, IntervalConsumer consumer) {
+    return overlapping(root, point, point, consumer);
+  }
+
+  /**
+   * Count the stored intervals overlapping {@code [from, to]}.
+   *
+   * @param from query start, inclusive
+   * @param to query end, inclusive
+   * @return the count
+   */
+  public int countOverlapping(int from, int to) {
+    return overlapping(from, to, (s, e) -> { });
+  }
+
+  /**
+   * Report every stored interval in order of start, then end.
+   *
+   * @param consumer receives each interval
+   */
+  public void forEach(IntervalConsumer consumer) {
+    overlapping(root, Integer.MIN_VALUE, Integer.MAX_VALUE, consumer);
+  }
+
+  private int overlapping(int n, int from, int to, IntervalConsumer consumer) {
+    int count = 0;
+    // iterate down right spines, recursing only into left children
+    while (n != NIL && maxEnd[n] >= from) {
+      count += overlapping(left[n], from, to, consumer);
+      if (start[n] > to) {
+        break;
+      }
+      if (end[n] >= from) {
+        consumer.accept(start[n], end[n]);
+        count++;
+      }
+      n = right[n];
+    }
+    return count;
+  }
+
+  private static int compare(int s1, int e1, int s2, int e2) {
+    int c = Integer.compare(s1, s2);
+    return c != 0 ? c : Integer.compare(e1, e2);
+  }
+
+  private int insert(int n, int s, int e) {
+    if (n == NIL) {
+      return allocate(s, e);
+    }
+    // the call may grow the arrays, so assign to the field only afterwards
+    if (compare(s, e, start[n], end[n]) < 0) {
+      int child = insert(left[n], s, e);
+      left[n] = child;
+    } else {
+      int child = insert(right[n], s, e);
+      right[n] = child;
+    }
+    return rebalance(n);
+  }
+
+  private int delete(int n, int s, int e) {
+    if (n == NIL) {
+      return NIL;
+    }
+    int c = compare(s, e, start[n], end[n]);
+    if (c < 0) {
+      left[n] = delete(left[n], s, e);
+    } else if (c > 0) {
+      right[n] = delete(right[n], s, e);
+    } else {
+      removed = true;
+      if (left[n] == NIL || right[n] == NIL) {
+        int child = left[n] == NIL ? right[n] : left[n];
+        release(n);
+        return child;
+      }
+      // replace with the in-order successor, then remove that
+      int m = right[n];
+      while (left[m] != NIL) {
+        m = left[m];
+      }
+      start[n] = start[m];
+      end[n] = end[m];
+      right[n] = deleteMin(right[n]);
+    }
+    return rebalance(n);
+  }
+
+  private int deleteMin(int n) {
+    if (left[n] == NIL) {
+      int child = right[n];
+      release(n);
+      return child;
+    }
+    left[n] = deleteMin(left[n]);
+    return rebalance(n);
+  }
+
+  private int height(int n) {
+    return n == NIL ? 0 : height[n];
+  }
+
+  private void update(int n) {
+    height[n] = (byte) (1 + Math.max(height(left[n]), height(right[n])));
+    int max = end[n];
+    if (left[n] != NIL) {
+      max = Math.max(max, maxEnd[left[n]]);
+    }
+    if (right[n] != NIL) {
+      max = Math.max(max, maxEnd[right[n]]);
+    }
+    maxEnd[n] = max;
+  }
+
+  private int rebalance(int n) {
+    update(n);
+    int balance = height(left[n]) - height(right[n]);
+    if (balance > 1) {
+      if (height(left[left[n]]) < height(right[left[n]])) {
+        left[n] = rotateLeft(left[n]);
+      }
+      return rotateRight(n);
+    }
+    if (balance < -1) {
+      if (height(right[right[n]]) < height(left[right[n]])) {
+        right[n] = rotateRight(right[n]);
+      }
+      return rotateLeft(n);
+    }
+    return n;
+  }
+
+  private int rotateRight(int n) {
+    int l = left[n];
+    left[n] = right[l];
+    right[l] = n;
+    update(n);
+    update(l);
+    return l;
+  }
+
+  private int rotateLeft(int n) {
+    int r = right[n];
+    right[n] = left[r];
+    left[r] = n;
+    update(n);
+    update(r);
+    return r;
+  }
+
+  private int allocate(int s, int e) {
+    int n;
+    if (free != NIL) {
+      n = free;
+      free = left[n];
+    } else {
+      if (used == start.length) {
+        grow();
+      }
+      n = used++;
+    }
+    start[n] = s;
+    end[n] = e;
+    maxEnd[n] = e;
+    left[n] = NIL;
+    right[n] = NIL;
+    height[n] = 1;
+    return n;
+  }
+
+  private void release(int n) {
+    left[n] = free;
+    free = n;
+  }
+
+  private void grow() {
+    int n = start.length * 2;
+    start = Arrays.copyOf(start, n);
+    end = Arrays.copyOf(end, n);
+    maxEnd = Arrays.copyOf(maxEnd, n);
+    left = Arrays.copyOf(left, n);
+    right = Arrays.copyOf(right, n);
+    height = Arrays.copyOf(height, n);
+  }
+}
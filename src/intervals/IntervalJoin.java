@@ -0,0 +1,325 @@
+package intervals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds every overlapping pair between two collections of intervals.
+ *
+ * <p>Each side is sorted by start once, then a single sweep walks both
+ * sorted lists together: the interval with the earlier start is compared
+ * only with intervals of the other side that start before it ends, all of
+ * which overlap it. A join of n and m intervals reporting k pairs costs
+ * O(n log n + m log m + k) instead of the O(n m) of nested loops.
+ *
+ * <p>Pairs go to a {@link PairConsumer} as the positions of the two
+ * intervals in their inputs, so no pair objects or result list are built.
+ * Intervals are inclusive at both ends, as everywhere in this package, so
+ * {@code 1,2} and {@code 2,3} overlap.
+ */
+public final class IntervalJoin {
+
+  /** Receives one overlapping pair. */
+  @FunctionalInterface
+  public interface PairConsumer {
+    /**
+     * Accept one pair.
+     *
+     * @param left position of the interval in the left input
+     * @param right position of the interval in the right input
+     */
+    void accept(int left, int right);
+  }
+
+  /** Total intervals below which {@link #parallelJoin} runs sequentially. */
+  static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /** Partitions per pool thread, so uneven partitions still balance. */
+  private static final int PARTITIONS_PER_THREAD = 4;
+
+  private IntervalJoin() {
+  }
+
+  /**
+   * Report every pair of a left and a right interval that overlap.
+   *
+   * @param leftStarts starts of the left intervals
+   * @param leftEnds ends of the left intervals, parallel to {@code leftStarts}
+   * @param rightStarts starts of the right intervals
+   * @param rightEnds ends of the right intervals, parallel to {@code rightStarts}
+   * @param sink receives each pair once
+   * @return the number of pairs reported
+   * @throws IllegalArgumentException if the arrays of a side differ in length
+   *     or an interval has start &gt; end
+   */
+  public static long join(int[] leftStarts, int[] leftEnds, int[] rightStarts, int[] rightEnds,
+      PairConsumer sink) {
+    long[] left = sortKeys(leftStarts, leftEnds);
+    long[] right = sortKeys(rightStarts, rightEnds);
+    Arrays.sort(left);
+    Arrays.sort(right);
+    return sweep(left, left.length, leftEnds, right, right.length, rightEnds, Long.MIN_VALUE,
+        sink);
+  }
+
+  /**
+   * Report every overlapping pair of a left and a right interval.
+   *
+   * @param left the left intervals
+   * @param right the right intervals
+   * @param sink receives the list positions of each pair once
+   * @return the number of pairs reported
+   * @see #join(int[], int[], int[], int[], PairConsumer)
+   */
+  public static long join(List<Interval> left, List<Interval> right, PairConsumer sink) {
+    int[][] l = columns(left);
+    int[][] r = columns(right);
+    return join(l[0], l[1], r[0], r[1], sink);
+  }
+
+  /**
+   * Join on the common {@link ForkJoinPool}.
+   *
+   * @param leftStarts starts of the left intervals
+   * @param leftEnds ends of the left intervals, parallel to {@code leftStarts}
+   * @param rightStarts starts of the right intervals
+   * @param rightEnds ends of the right intervals, parallel to {@code rightStarts}
+   * @param sink receives each pair once; called from several threads at once
+   * @return the number of pairs reported
+   * @see #parallelJoin(int[], int[], int[], int[], PairConsumer, ForkJoinPool)
+   */
+  public static long parallelJoin(int[] leftStarts, int[] leftEnds, int[] rightStarts,
+      int[] rightEnds, PairConsumer sink) {
+    return parallelJoin(leftStarts, leftEnds, rightStarts, rightEnds, sink,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Join using the threads of {@code pool}.
+   *
+   * <p>Both sides are sorted in parallel. The coordinate space is then cut
+   * at quantiles of the starts into a few partitions per thread, and each
+   * partition is swept as its own task. A pair belongs to the partition
+   * holding the later of its two starts, so every pair is reported exactly
+   * once; an interval reaching past its own partition is also copied into
+   * the later ones it overlaps. Small inputs are simply joined on the
+   * calling thread.
+   *
+   * <p>The sink is called concurrently from the pool's threads, so it must
+   * be thread-safe, and pairs arrive in no particular order.
+   *
+   * @param leftStarts starts of the left intervals
+   * @param leftEnds ends of the left intervals, parallel to {@code leftStarts}
+   * @param rightStarts starts of the right intervals
+   * @param rightEnds ends of the right intervals, parallel to {@code rightStarts}
+   * @param sink receives each pair once
+   * @param pool the pool to run on
+   * @return the number of pairs reported
+   * @throws IllegalArgumentException if the arrays of a side differ in length
+   *     or an interval has start &gt; end
+   */
+  public static long parallelJoin(int[] leftStarts, int[] leftEnds, int[] rightStarts,
+      int[] rightEnds, PairConsumer sink, ForkJoinPool pool) {
+    if ((long) leftStarts.length + rightStarts.length < PARALLEL_THRESHOLD) {
+      return join(leftStarts, leftEnds, rightStarts, rightEnds, sink);
+    }
+    long[] left = sortKeys(leftStarts, leftEnds);
+    long[] right = sortKeys(rightStarts, rightEnds);
+    // sorting inside the pool makes parallelSort fork onto its threads
+    pool.invoke(new RecursiveAction() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void compute() {
+        Arrays.parallelSort(left);
+        Arrays.parallelSort(right);
+      }
+    });
+
+    long[] bounds = boundaries(left.length >= right.length ? left : right,
+        pool.getParallelism() * PARTITIONS_PER_THREAD);
+    long[][] leftParts = partition(left, leftEnds, bounds);
+    long[][] rightParts = partition(right, rightEnds, bounds);
+    PartitionTask[] tasks = new PartitionTask[bounds.length - 1];
+    for (int p = 0; p < tasks.length; p++) {
+      tasks[p] = new PartitionTask(leftParts[p], leftEnds, rightParts[p], rightEnds,
+          bounds[p], sink);
+    }
+    pool.invoke(new RecursiveAction() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+    long count = 0;
+    for (PartitionTask task : tasks) {
+      count += task.count;
+    }
+    return count;
+  }
+
+  /** Sweeps one partition's intervals. */
+  private static final class PartitionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] left;
+    private final int[] leftEnds;
+    private final long[] right;
+    private final int[] rightEnds;
+    private final long from;
+    private final PairConsumer sink;
+    private long count;
+
+    PartitionTask(long[] left, int[] leftEnds, long[] right, int[] rightEnds, long from,
+        PairConsumer sink) {
+      this.left = left;
+      this.leftEnds = leftEnds;
+      this.right = right;
+      this.rightEnds = rightEnds;
+      this.from = from;
+      this.sink = sink;
+    }
+
+    @Override
+    protected void compute() {
+      count = sweep(left, left.length, leftEnds, right, right.length, rightEnds, from, sink);
+    }
+  }
+
+  /**
+   * Sort keys holding the start in the high 32 bits and the position in the
+   * low 32, so a plain {@code long} sort orders by start.
+   */
+  private static long[] sortKeys(int[] starts, int[] ends) {
+    if (starts.length != ends.length) {
+      throw new IllegalArgumentException("expected " + starts.length + " ends");
+    }
+    long[] keys = new long[starts.length];
+    for (int i = 0; i < keys.length; i++) {
+      if (starts[i] > ends[i]) {
+        throw new IllegalArgumentException("Invalid interval at " + i);
+      }
+      keys[i] = ((long) starts[i] << 32) | i;
+    }
+    return keys;
+  }
+
+  private static int start(long key) {
+    return (int) (key >> 32);
+  }
+
+  private static int position(long key) {
+    return (int) key;
+  }
+
+  /**
+   * Sweep two start-sorted key arrays, reporting pairs whose later start is
+   * at least {@code from}. The interval with the earlier start (the left on
+   * ties) scans forward through the other side until a start passes its
+   * end; everything before that overlaps it.
+   */
+  private static long sweep(long[] left, int nl, int[] leftEnds, long[] right, int nr,
+      int[] rightEnds, long from, PairConsumer sink) {
+    long count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < nl && j < nr) {
+      if (start(left[i]) <= start(right[j])) {
+        int l = position(left[i++]);
+        int end = leftEnds[l];
+        for (int k = j; k < nr && start(right[k]) <= end; k++) {
+          if (start(right[k]) >= from) {
+            sink.accept(l, position(right[k]));
+            count++;
+          }
+        }
+      } else {
+        int r = position(right[j++]);
+        int end = rightEnds[r];
+        for (int k = i; k < nl && start(left[k]) <= end; k++) {
+          if (start(left[k]) >= from) {
+            sink.accept(position(left[k]), r);
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Partition boundaries at quantiles of the sorted starts: partition p
+   * covers starts from {@code bounds[p]} up to but excluding
+   * {@code bounds[p + 1]}.
+   */
+  private static long[] boundaries(long[] sorted, int partitions) {
+    long[] bounds = new long[partitions + 1];
+    int n = 0;
+    bounds[n++] = Long.MIN_VALUE;
+    for (int q = 1; q < partitions; q++) {
+      long start = start(sorted[(int) ((long) q * sorted.length / partitions)]);
+      if (start > bounds[n - 1]) {
+        bounds[n++] = start;
+      }
+    }
+    bounds[n++] = Long.MAX_VALUE;
+    return Arrays.copyOf(bounds, n);
+  }
+
+  /**
+   * Split sorted keys by partition. Each partition gets, in start order,
+   * the intervals from earlier partitions that reach into it, then its own.
+   */
+  private static long[][] partition(long[] sorted, int[] ends, long[] bounds) {
+    int partitions = bounds.length - 1;
+    List<long[]> carried = new ArrayList<>(partitions);
+    int[] carriedSize = new int[partitions];
+    for (int p = 0; p < partitions; p++) {
+      carried.add(new long[16]);
+    }
+    int[] first = new int[partitions + 1];
+    int p = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      while (start(sorted[i]) >= bounds[p + 1]) {
+        first[++p] = i;
+      }
+      int end = ends[position(sorted[i])];
+      for (int q = p + 1; q < partitions && end >= bounds[q]; q++) {
+        long[] list = carried.get(q);
+        if (carriedSize[q] == list.length) {
+          list = Arrays.copyOf(list, 2 * list.length);
+          carried.set(q, list);
+        }
+        list[carriedSize[q]++] = sorted[i];
+      }
+    }
+    while (p < partitions) {
+      first[++p] = sorted.length;
+    }
+
+    long[][] parts = new long[partitions][];
+    for (int q = 0; q < partitions; q++) {
+      int own = first[q + 1] - first[q];
+      long[] part = Arrays.copyOf(carried.get(q), carriedSize[q] + own);
+      System.arraycopy(sorted, first[q], part, carriedSize[q], own);
+      parts[q] = part;
+    }
+    return parts;
+  }
+
+  private static int[][] columns(List<Interval> intervals) {
+    int[] starts = new int[intervals.size()];
+    int[] ends = new int[intervals.size()];
+    int i = 0;
+    for (Interval interval : intervals) {
+      starts[i] = interval.getStart();
+      ends[i++] = interval.getEnd();
+    }
+    return new int[][] {starts, ends};
+  }
+}
@@ -0,0 +1,189 @@
+package intervals;
+
+import java.util.Arrays;
+import postfix.Metrics;
+import postfix.Metrics.FailureReason;
+import postfix.ParseEvent;
+import postfix.PostfixLexer;
+
+/**
+ * The postfix grammar shared by every interval tree form.
+ *
+ * <p>Tokens are read with a {@link PostfixLexer} and handed to a
+ * {@link Builder} in postfix order, so the node trees and the array-backed
+ * trees accept exactly the same inputs and reject bad ones with the same
+ * messages. The parser checks operand counts and the shape of
+ * {@code start,end} tokens itself and records the parse in
+ * {@link Metrics#INTERVAL}; a builder only converts the bounds and stores
+ * nodes. Forms that cannot evaluate {@code D}, {@code C} or variables say
+ * so through {@link Builder#exact()} and {@link Builder#variables()}.
+ */
+final class IntervalParser {
+
+  /** Receives the nodes of an expression, children before their parent. */
+  interface Builder {
+    /**
+     * Add the lexer's current "start,end" token as an operand.
+     *
+     * @param lexer lexer positioned on the token
+     * @param comma absolute offset of the single comma in the token, with
+     *     at least one character on either side
+     * @throws IllegalArgumentException if the bounds are not valid
+     */
+    void interval(PostfixLexer lexer, int comma);
+
+    /**
+     * Add a variable operand. Only called if {@link #variables()} is true.
+     *
+     * @param name the variable name
+     */
+    default void variable(String name) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Combine the most recently completed operands: two for U, I and D,
+     * one for C.
+     *
+     * @param op the operator
+     */
+    void operator(char op);
+
+    /**
+     * Whether this form accepts the set operators D and C.
+     *
+     * @return true if it does
+     */
+    default boolean exact() {
+      return false;
+    }
+
+    /**
+     * Whether this form accepts variables.
+     *
+     * @return true if it does
+     */
+    default boolean variables() {
+      return false;
+    }
+  }
+
+  /** Number of nodes, operators and operands together. */
+  final int nodes;
+
+  /** Number of levels; a single operand has height 1. */
+  final int height;
+
+  /** Most operands pending at once, the stack a postfix evaluation needs. */
+  final int maxDepth;
+
+  /**
+   * Parse a space-separated postfix string into {@code builder}.
+   *
+   * @param postfixExpression space-separated postfix string
+   * @param builder receives the nodes
+   * @throws IllegalArgumentException for invalid expressions
+   */
+  IntervalParser(String postfixExpression, Builder builder) {
+    if (postfixExpression == null) {
+      throw Metrics.INTERVAL.parseFailure(FailureReason.EMPTY,
+          "Expression cannot be null or empty");
+    }
+    PostfixLexer lexer = new PostfixLexer(postfixExpression);
+    if (!lexer.next()) {
+      throw Metrics.INTERVAL.parseFailure(FailureReason.EMPTY,
+          "Expression cannot be null or empty");
+    }
+    long startNanos = 0;
+    ParseEvent event = null;
+    if (Metrics.isEnabled()) {
+      startNanos = System.nanoTime();
+      event = Metrics.beginParse();
+    }
+
+    // heights of the pending operands
+    int[] heights = new int[16];
+    int sp = 0;
+    int nodes = 0;
+    int maxDepth = 0;
+
+    do {
+      if (isOperator(lexer)) {
+        char op = lexer.charAt(lexer.start());
+        if ((op == 'D' || op == 'C') && !builder.exact()) {
+          throw Metrics.INTERVAL.parseFailure(FailureReason.INVALID_TOKEN,
+              "Unsupported operator: " + op);
+        }
+        int arity = op == 'C' ? 1 : 2;
+        if (sp < arity) {
+          throw Metrics.INTERVAL.parseFailure(FailureReason.INSUFFICIENT_OPERANDS,
+              "Invalid expression: insufficient operands for operator " + op);
+        }
+        builder.operator(op);
+        if (arity == 2) {
+          sp--;
+          heights[sp - 1] = Math.max(heights[sp - 1], heights[sp]);
+        }
+        heights[sp - 1]++;
+      } else {
+        if (builder.variables() && lexer.isIdentifier()) {
+          builder.variable(lexer.text());
+        } else {
+          int comma = lexer.indexOf(',', lexer.start());
+          try {
+            if (comma == -1 || lexer.indexOf(',', comma + 1) != -1
+                || comma == lexer.start() || comma == lexer.end() - 1) {
+              throw new IllegalArgumentException("Invalid interval format");
+            }
+            builder.interval(lexer, comma);
+          } catch (IllegalArgumentException e) {
+            throw Metrics.INTERVAL.parseFailure(FailureReason.INVALID_TOKEN,
+                "Invalid interval: " + lexer.text());
+          }
+        }
+        if (sp == heights.length) {
+          heights = Arrays.copyOf(heights, 2 * sp);
+        }
+        heights[sp++] = 1;
+        maxDepth = Math.max(maxDepth, sp);
+      }
+      nodes++;
+    } while (lexer.next());
+
+    if (sp != 1) {
+      throw Metrics.INTERVAL.parseFailure(FailureReason.TOO_MANY_OPERANDS,
+          "Invalid expression: too many operands");
+    }
+    this.nodes = nodes;
+    this.height = heights[0];
+    this.maxDepth = maxDepth;
+    if (event != null) {
+      Metrics.INTERVAL.parsed(event, startNanos, postfixExpression.length(), nodes, height);
+    }
+  }
+
+  /**
+   * Read the bounds of a "start,end" token as {@code int}s.
+   *
+   * @param lexer lexer positioned on the token
+   * @param comma offset of the comma, as passed to {@link Builder#interval}
+   * @return the interval, packed as by {@link PackedInterval}
+   * @throws IllegalArgumentException if a bound is not an {@code int} or
+   *     start &gt; end
+   */
+  static long parseInterval(PostfixLexer lexer, int comma) {
+    int start = lexer.parseInt(lexer.start(), comma);
+    int end = lexer.parseInt(comma + 1, lexer.end());
+    return PackedInterval.of(start, end);
+  }
+
+  /**
+   * Check if the current token is one of the operators U, I, D or C.
+   *
+   * @param lexer lexer positioned on the token
+   * @return true if operator
+   */
+  private static boolean isOperator(PostfixLexer lexer) {
+    return lexer.isChar('U') || lexer.isChar('I') || lexer.isChar('D') || lexer.isChar('C');
+  }
+}
@@ -0,0 +1,628 @@
+package intervals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Exact set of integers, held as sorted, disjoint, non-adjacent closed
+ * intervals.
+ *
+ * <p>Where {@link Interval#union} returns the smallest interval covering
+ * both operands, an {@code IntervalSet} keeps the gaps: the union of
+ * {@code 1,2} and {@code 5,6} is the two intervals {@code 1,2 5,6}.
+ * Endpoints are integers and both ends are included, so {@code 1,2} and
+ * {@code 3,4} together are exactly {@code 1,4} and are stored that way.
+ *
+ * <p>The intervals are packed into one {@code int[]} as
+ * {@code start0, end0, start1, end1, ...}. Every operation is a single
+ * linear merge of the two operands' arrays into a new array, so combining
+ * sets of n and m intervals costs O(n + m) time and one allocation.
+ * Instances are immutable.
+ *
+ * <p>Large collections of intervals, or of whole sets, are combined in one
+ * step with {@link #unionAll(long[])} and {@link #intersectAll(long[])} and
+ * their overloads, rather than by folding pairs or building an
+ * {@link IntervalTree} with a leaf per interval. A union sorts the
+ * intervals once and merges them in a single linear sweep;
+ * {@link #parallelUnionAll(long[])} sorts on the common fork/join pool for
+ * inputs in the millions.
+ */
+public final class IntervalSet {
+
+  /** The set with no elements. */
+  public static final IntervalSet EMPTY = new IntervalSet(new int[0]);
+
+  /** Every {@code int}, the complement of {@link #EMPTY}. */
+  public static final IntervalSet ALL =
+      new IntervalSet(new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE});
+
+  /** Packed bounds; always even length, sorted, disjoint and non-adjacent. */
+  private final int[] bounds;
+
+  private IntervalSet(int[] bounds) {
+    this.bounds = bounds;
+  }
+
+  /**
+   * The set of integers from start to end inclusive.
+   *
+   * @param start first element
+   * @param end last element
+   * @return the set
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public static IntervalSet of(int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException("Invalid interval");
+    }
+    return new IntervalSet(new int[] {start, end});
+  }
+
+  /**
+   * The set of integers covered by an interval.
+   *
+   * @param interval the interval
+   * @return the set
+   */
+  public static IntervalSet of(Interval interval) {
+    return new IntervalSet(new int[] {interval.getStart(), interval.getEnd()});
+  }
+
+  /**
+   * Integers in any of the given intervals: one sort, then one sweep.
+   *
+   * @param packed intervals packed as by {@link PackedInterval}, in any
+   *     order; the array is not modified
+   * @return the union
+   * @throws IllegalArgumentException if an interval has start &gt; end
+   */
+  public static IntervalSet unionAll(long[] packed) {
+    long[] sorted = packed.clone();
+    Arrays.sort(sorted);
+    return unionSorted(sorted, sorted.length);
+  }
+
+  /**
+   * As {@link #unionAll(long[])}, but sorting with
+   * {@link Arrays#parallelSort(long[])}. Worthwhile from a few million
+   * intervals on machines with several cores.
+   *
+   * @param packed intervals packed as by {@link PackedInterval}, in any
+   *     order; the array is not modified
+   * @return the union
+   * @throws IllegalArgumentException if an interval has start &gt; end
+   */
+  public static IntervalSet parallelUnionAll(long[] packed) {
+    long[] sorted = packed.clone();
+    Arrays.parallelSort(sorted);
+    return unionSorted(sorted, sorted.length);
+  }
+
+  /**
+   * Integers in any of the intervals {@code starts[i],ends[i]}.
+   *
+   * @param starts interval starts, in any order
+   * @param ends interval ends, parallel to {@code starts}
+   * @return the union
+   * @throws IllegalArgumentException if the arrays differ in length or an
+   *     interval has start &gt; end
+   */
+  public static IntervalSet unionAll(int[] starts, int[] ends) {
+    long[] packed = pack(starts, ends);
+    Arrays.sort(packed);
+    return unionSorted(packed, packed.length);
+  }
+
+  /**
+   * Integers in any of the given intervals.
+   *
+   * @param intervals the intervals, in any order
+   * @return the union
+   */
+  public static IntervalSet unionAll(Collection<Interval> intervals) {
+    long[] packed = new long[intervals.size()];
+    int n = 0;
+    for (Interval interval : intervals) {
+      packed[n++] = PackedInterval.of(interval);
+    }
+    Arrays.sort(packed);
+    return unionSorted(packed, n);
+  }
+
+  /**
+   * Integers in any of the given sets. Every interval of every set goes
+   * through one sort and one sweep, so combining k sets of N intervals in
+   * all costs O(N log N) rather than the O(kN) of folding pairs.
+   *
+   * @param sets the sets; the array is not modified
+   * @return the union; {@link #EMPTY} when there are no sets
+   */
+  public static IntervalSet unionAll(IntervalSet[] sets) {
+    if (sets.length == 1) {
+      return sets[0];
+    }
+    int total = 0;
+    for (IntervalSet set : sets) {
+      total += set.size();
+    }
+    long[] packed = new long[total];
+    int n = 0;
+    for (IntervalSet set : sets) {
+      for (int i = 0; i < set.bounds.length; i += 2) {
+        packed[n++] = PackedInterval.pack(set.bounds[i], set.bounds[i + 1]);
+      }
+    }
+    Arrays.sort(packed);
+    return unionSorted(packed, n);
+  }
+
+  /**
+   * Integers in any of the given intervals, which must already be ordered
+   * by start as {@link PackedInterval#compare} orders them. Only the sweep
+   * is done, so the intervals can be streamed without holding them all.
+   *
+   * @param sorted the intervals, ascending by start
+   * @return the union
+   * @throws IllegalArgumentException if the intervals are out of order
+   */
+  public static IntervalSet unionAllSorted(Iterator<Interval> sorted) {
+    int[] out = new int[16];
+    int n = 0;
+    int previous = Integer.MIN_VALUE;
+    while (sorted.hasNext()) {
+      Interval interval = sorted.next();
+      int start = interval.getStart();
+      if (start < previous) {
+        throw new IllegalArgumentException("intervals not sorted by start at " + interval);
+      }
+      previous = start;
+      if (n > 0 && (long) start <= (long) out[n - 1] + 1) {
+        out[n - 1] = Math.max(out[n - 1], interval.getEnd());
+      } else {
+        if (n == out.length) {
+          out = Arrays.copyOf(out, 2 * n);
+        }
+        out[n++] = start;
+        out[n++] = interval.getEnd();
+      }
+    }
+    return n == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, n));
+  }
+
+  /**
+   * Integers in any of the given intervals, which must already be in
+   * ascending order as packed {@code long}s. Only the sweep is done.
+   *
+   * @param sorted intervals packed as by {@link PackedInterval}, ascending
+   * @return the union
+   * @throws IllegalArgumentException if the intervals are out of order or
+   *     one has start &gt; end
+   */
+  public static IntervalSet unionAllSorted(long[] sorted) {
+    return unionSorted(sorted, sorted.length);
+  }
+
+  /** Sweep the first n intervals of a sorted packed array, as {@link #union}. */
+  private static IntervalSet unionSorted(long[] sorted, int n) {
+    int[] out = new int[2 * n];
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      int start = PackedInterval.start(sorted[i]);
+      int end = PackedInterval.end(sorted[i]);
+      if (start > end) {
+        throw new IllegalArgumentException("Invalid interval");
+      }
+      if (i > 0 && sorted[i] < sorted[i - 1]) {
+        throw new IllegalArgumentException("intervals not sorted at index " + i);
+      }
+      // extend the last interval if this one overlaps or touches it
+      if (size > 0 && (long) start <= (long) out[size - 1] + 1) {
+        out[size - 1] = Math.max(out[size - 1], end);
+      } else {
+        out[size++] = start;
+        out[size++] = end;
+      }
+    }
+    return size == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, size));
+  }
+
+  private static long[] pack(int[] starts, int[] ends) {
+    if (starts.length != ends.length) {
+      throw new IllegalArgumentException("expected " + starts.length + " ends");
+    }
+    long[] packed = new long[starts.length];
+    for (int i = 0; i < packed.length; i++) {
+      packed[i] = PackedInterval.of(starts[i], ends[i]);
+    }
+    return packed;
+  }
+
+  /**
+   * Integers in every one of the given intervals. That is at most one
+   * interval, found in a single pass with no sort.
+   *
+   * @param packed intervals packed as by {@link PackedInterval}, in any order
+   * @return the intersection; {@link #ALL} when there are no intervals
+   * @throws IllegalArgumentException if an interval has start &gt; end
+   */
+  public static IntervalSet intersectAll(long[] packed) {
+    int start = Integer.MIN_VALUE;
+    int end = Integer.MAX_VALUE;
+    for (long p : packed) {
+      if (PackedInterval.start(p) > PackedInterval.end(p)) {
+        throw new IllegalArgumentException("Invalid interval");
+      }
+      start = Math.max(start, PackedInterval.start(p));
+      end = Math.min(end, PackedInterval.end(p));
+    }
+    return start > end ? EMPTY : new IntervalSet(new int[] {start, end});
+  }
+
+  /**
+   * Integers in every one of the intervals {@code starts[i],ends[i]}.
+   *
+   * @param starts interval starts
+   * @param ends interval ends, parallel to {@code starts}
+   * @return the intersection; {@link #ALL} when there are no intervals
+   * @throws IllegalArgumentException if the arrays differ in length or an
+   *     interval has start &gt; end
+   */
+  public static IntervalSet intersectAll(int[] starts, int[] ends) {
+    if (starts.length != ends.length) {
+      throw new IllegalArgumentException("expected " + starts.length + " ends");
+    }
+    int start = Integer.MIN_VALUE;
+    int end = Integer.MAX_VALUE;
+    for (int i = 0; i < starts.length; i++) {
+      if (starts[i] > ends[i]) {
+        throw new IllegalArgumentException("Invalid interval");
+      }
+      start = Math.max(start, starts[i]);
+      end = Math.min(end, ends[i]);
+    }
+    return start > end ? EMPTY : new IntervalSet(new int[] {start, end});
+  }
+
+  /**
+   * Integers in every one of the given intervals.
+   *
+   * @param intervals the intervals, in any order
+   * @return the intersection; {@link #ALL} when there are no intervals
+   */
+  public static IntervalSet intersectAll(Iterable<Interval> intervals) {
+    int start = Integer.MIN_VALUE;
+    int end = Integer.MAX_VALUE;
+    for (Interval interval : intervals) {
+      start = Math.max(start, interval.getStart());
+      end = Math.min(end, interval.getEnd());
+      if (start > end) {
+        // nothing further can make it non-empty
+        return EMPTY;
+      }
+    }
+    return new IntervalSet(new int[] {start, end});
+  }
+
+  /**
+   * Integers in every one of the given sets, found by one sweep over all
+   * their bounds. Each set's intervals are disjoint, so a point lies in
+   * every set exactly when k intervals cover it.
+   *
+   * @param sets the sets; the array is not modified
+   * @return the intersection; {@link #ALL} when there are no sets
+   */
+  public static IntervalSet intersectAll(IntervalSet[] sets) {
+    if (sets.length == 1) {
+      return sets[0];
+    }
+    int total = 0;
+    for (IntervalSet set : sets) {
+      if (set.bounds.length == 0) {
+        return EMPTY;
+      }
+      total += set.size();
+    }
+    if (sets.length == 0) {
+      return ALL;
+    }
+    int[] starts = new int[total];
+    // one past each end, as a long so that MAX_VALUE does not wrap
+    long[] ends = new long[total];
+    int n = 0;
+    for (IntervalSet set : sets) {
+      for (int i = 0; i < set.bounds.length; i += 2) {
+        starts[n] = set.bounds[i];
+        ends[n++] = set.bounds[i + 1] + 1L;
+      }
+    }
+    Arrays.sort(starts);
+    Arrays.sort(ends);
+    int[] out = new int[16];
+    int size = 0;
+    int covering = 0;
+    int j = 0;
+    for (int i = 0; i < total; i++) {
+      // intervals ending before this start close first
+      while (ends[j] <= starts[i]) {
+        if (covering-- == sets.length) {
+          out[size - 1] = (int) (ends[j] - 1);
+        }
+        j++;
+      }
+      if (++covering == sets.length) {
+        if (size == out.length) {
+          out = Arrays.copyOf(out, 2 * size);
+        }
+        out[size++] = starts[i];
+        out[size++] = 0;
+      }
+    }
+    if (covering == sets.length) {
+      out[size - 1] = (int) (ends[j] - 1);
+    }
+    return size == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, size));
+  }
+
+  /**
+   * Number of disjoint intervals in the set.
+   *
+   * @return the count, 0 for the empty set
+   */
+  public int size() {
+    return bounds.length / 2;
+  }
+
+  /**
+   * Check whether the set has no elements.
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty() {
+    return bounds.length == 0;
+  }
+
+  /**
+   * Start of the i-th interval in ascending order.
+   *
+   * @param i index, from 0 to {@link #size()} - 1
+   * @return the start, inclusive
+   */
+  public int start(int i) {
+    return bounds[2 * i];
+  }
+
+  /**
+   * End of the i-th interval in ascending order.
+   *
+   * @param i index, from 0 to {@link #size()} - 1
+   * @return the end, inclusive
+   */
+  public int end(int i) {
+    return bounds[2 * i + 1];
+  }
+
+  /**
+   * Check whether a point is in the set, by binary search.
+   *
+   * @param point the integer to look for
+   * @return true if some interval contains it
+   */
+  public boolean contains(int point) {
+    int lo = 0;
+    int hi = size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (point < bounds[2 * mid]) {
+        hi = mid - 1;
+      } else if (point > bounds[2 * mid + 1]) {
+        lo = mid + 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The intervals as objects, in ascending order.
+   *
+   * @return a new list
+   */
+  public List<Interval> toIntervals() {
+    List<Interval> list = new ArrayList<>(size());
+    for (int i = 0; i < bounds.length; i += 2) {
+      list.add(new Interval(bounds[i], bounds[i + 1]));
+    }
+    return list;
+  }
+
+  /**
+   * The smallest interval covering the set, as {@link IntervalTree#evaluate()}
+   * would report it.
+   *
+   * @return the hull, or {@link Interval#EMPTY} if the set is empty
+   */
+  public Interval hull() {
+    if (isEmpty()) {
+      return Interval.EMPTY;
+    }
+    return new Interval(bounds[0], bounds[bounds.length - 1]);
+  }
+
+  /**
+   * Integers in this set, the other, or both.
+   *
+   * @param other the other set
+   * @return the union
+   */
+  public IntervalSet union(IntervalSet other) {
+    int[] a = bounds;
+    int[] b = other.bounds;
+    if (b.length == 0) {
+      return this;
+    }
+    if (a.length == 0) {
+      return other;
+    }
+    int[] out = new int[a.length + b.length];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length || j < b.length) {
+      int start;
+      int end;
+      if (j == b.length || (i < a.length && a[i] <= b[j])) {
+        start = a[i];
+        end = a[i + 1];
+        i += 2;
+      } else {
+        start = b[j];
+        end = b[j + 1];
+        j += 2;
+      }
+      // extend the last interval if this one overlaps or touches it
+      if (n > 0 && (long) start <= (long) out[n - 1] + 1) {
+        out[n - 1] = Math.max(out[n - 1], end);
+      } else {
+        out[n++] = start;
+        out[n++] = end;
+      }
+    }
+    return new IntervalSet(n == out.length ? out : Arrays.copyOf(out, n));
+  }
+
+  /**
+   * Integers in both this set and the other.
+   *
+   * @param other the other set
+   * @return the intersection
+   */
+  public IntervalSet intersect(IntervalSet other) {
+    int[] a = bounds;
+    int[] b = other.bounds;
+    int[] out = new int[a.length + b.length];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      int start = Math.max(a[i], b[j]);
+      int end = Math.min(a[i + 1], b[j + 1]);
+      if (start <= end) {
+        out[n++] = start;
+        out[n++] = end;
+      }
+      // the interval ending first cannot meet anything further on
+      if (a[i + 1] < b[j + 1]) {
+        i += 2;
+      } else {
+        j += 2;
+      }
+    }
+    return n == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, n));
+  }
+
+  /**
+   * Integers in this set but not the other.
+   *
+   * @param other the set to remove
+   * @return the difference
+   */
+  public IntervalSet difference(IntervalSet other) {
+    int[] a = bounds;
+    int[] b = other.bounds;
+    // each interval of b can split at most one interval of a in two
+    int[] out = new int[a.length + b.length];
+    int n = 0;
+    int j = 0;
+    for (int i = 0; i < a.length; i += 2) {
+      long start = a[i];
+      int end = a[i + 1];
+      // skip intervals of b wholly before this one
+      while (j < b.length && b[j + 1] < start) {
+        j += 2;
+      }
+      // cut out every interval of b that overlaps this one
+      int k = j;
+      while (k < b.length && b[k] <= end) {
+        if (b[k] > start) {
+          out[n++] = (int) start;
+          out[n++] = b[k] - 1;
+        }
+        start = (long) b[k + 1] + 1;
+        if (b[k + 1] >= end) {
+          break;
+        }
+        k += 2;
+      }
+      if (start <= end) {
+        out[n++] = (int) start;
+        out[n++] = end;
+      }
+    }
+    return n == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, n));
+  }
+
+  /**
+   * Every {@code int} not in this set.
+   *
+   * @return the complement
+   */
+  public IntervalSet complement() {
+    int[] out = new int[bounds.length + 2];
+    int n = 0;
+    long next = Integer.MIN_VALUE;
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (bounds[i] > next) {
+        out[n++] = (int) next;
+        out[n++] = bounds[i] - 1;
+      }
+      next = (long) bounds[i + 1] + 1;
+    }
+    if (next <= Integer.MAX_VALUE) {
+      out[n++] = (int) next;
+      out[n++] = Integer.MAX_VALUE;
+    }
+    return n == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, n));
+  }
+
+  /**
+   * The intervals as {@code start,end} separated by spaces, in braces.
+   *
+   * @return e.g. {@code {1,2 5,6}}, or {@code {}} when empty
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(bounds[i]).append(',').append(bounds[i + 1]);
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Sets are equal when they contain the same integers.
+   *
+   * @param obj object to compare
+   * @return true for an equal set
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof IntervalSet && Arrays.equals(bounds, ((IntervalSet) obj).bounds);
+  }
+
+  /**
+   * Hash code of the packed bounds.
+   *
+   * @return hash code
+   */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bounds);
+  }
+}
@@ -1,10 +1,33 @@
 package intervals;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import postfix.EvaluateEvent;
+import postfix.Metrics;
+import postfix.ParseCache;
+import postfix.PostfixLexer;
+import postfix.TreeRenderer;
 
 /**
  * Interval expression tree implementation for union, intersection operations.
  * Parses postfix notation and builds a tree structure.
+ *
+ * <p>Besides {@code U} and {@code I}, expressions may use the binary
+ * difference operator {@code D} and the unary complement operator {@code C}.
+ * Their results are generally not single intervals, so trees using them are
+ * evaluated with {@link #evaluateSet()}, which computes exact
+ * {@link IntervalSet}s for every operator.
+ *
+ * <p>Operands may also be named variables such as {@code slot} or
+ * {@code booking_2}, standing for an interval bound at evaluation time. One
+ * parsed tree is then evaluated for many bindings at once with
+ * {@link #evaluate(Map, Map, int[], int[])}.
  */
 public class IntervalTree implements Intervals {
 
@@ -13,20 +36,79 @@ public class IntervalTree implements Intervals {
    */
   private abstract static class Node {
     /**
-     * Evaluate the node and get its interval.
+     * Evaluate the node and get its interval, recursing into the operands;
+     * deep trees go through {@link IntervalTree#evaluatePacked(Node)}.
      *
-     * @return resulting interval
+     * @return resulting interval, packed as by {@link PackedInterval}
      */
-    abstract Interval evaluate();
+    abstract long evaluate();
+
+
+    /**
+     * Get the operator symbol.
+     *
+     * @return the symbol, or 0 for a leaf
+     */
+    char symbol() {
+      return 0;
+    }
+
+    /**
+     * Get the number of operands.
+     *
+     * @return operand count, 0 for a leaf
+     */
+    int arity() {
+      return 0;
+    }
+
+    /**
+     * Get one operand of an operator.
+     *
+     * @param i operand position, from 0 at the left
+     * @return the operand
+     */
+    Node operand(int i) {
+      throw new IndexOutOfBoundsException("leaf has no operands");
+    }
 
     /**
-     * Get text representation of subtree.
+     * Get the exact value of a leaf.
      *
-     * @param prefix spacing prefix
-     * @param isLast is this the last child
-     * @return formatted tree string
+     * @return the set the leaf denotes
      */
-    abstract String textTree(String prefix, boolean isLast);
+    IntervalSet leafSet() {
+      throw new UnsupportedOperationException("not a leaf");
+    }
+
+    /**
+     * Get the printed form of a leaf.
+     *
+     * @return leaf text
+     */
+    String leafText() {
+      throw new UnsupportedOperationException("not a leaf");
+    }
+
+    /**
+     * Whether the subtree holds a variable, so that evaluating it without
+     * bindings always throws.
+     *
+     * @return true if it does
+     */
+    boolean hasVariables() {
+      return false;
+    }
+
+    /**
+     * Whether the subtree uses D or C, so that {@link #evaluate()} always
+     * throws for it.
+     *
+     * @return true if it does
+     */
+    boolean needsSet() {
+      return false;
+    }
 
     /**
      * Get tree height.
@@ -34,70 +116,144 @@ public class IntervalTree implements Intervals {
      * @return height
      */
     abstract int getHeight();
+
+    /**
+     * Get number of nodes in subtree.
+     *
+     * @return node count
+     */
+    abstract int getSize();
   }
 
   /**
    * Leaf node containing an interval.
    */
   private static class IntervalNode extends Node {
-    private final Interval interval;
+    private final long interval;
 
     /**
      * Create leaf node.
      *
-     * @param interval the interval to store
+     * @param interval the packed interval to store
      */
-    public IntervalNode(Interval interval) {
+    public IntervalNode(long interval) {
       this.interval = interval;
     }
 
     @Override
-    Interval evaluate() {
+    long evaluate() {
       return interval;
     }
 
     @Override
-    String textTree(String prefix, boolean isLast) {
-      return interval.toString();
+    IntervalSet leafSet() {
+      return IntervalSet.of(PackedInterval.start(interval), PackedInterval.end(interval));
+    }
+
+    @Override
+    String leafText() {
+      return PackedInterval.toString(interval);
     }
 
     @Override
     int getHeight() {
       return 1;
     }
+
+    @Override
+    int getSize() {
+      return 1;
+    }
   }
 
   /**
-   * Internal node for operators (U or I).
+   * Leaf node naming an interval variable bound at evaluation time.
+   */
+  private static class VariableNode extends Node {
+    private final String name;
+
+    /**
+     * Create variable node.
+     *
+     * @param name the variable name
+     */
+    public VariableNode(String name) {
+      this.name = name;
+    }
+
+    @Override
+    long evaluate() {
+      throw new IllegalStateException("unbound variable: " + name);
+    }
+
+    @Override
+    IntervalSet leafSet() {
+      throw new IllegalStateException("unbound variable: " + name);
+    }
+
+    @Override
+    String leafText() {
+      return name;
+    }
+
+    @Override
+    boolean hasVariables() {
+      return true;
+    }
+
+    @Override
+    int getHeight() {
+      return 1;
+    }
+
+    @Override
+    int getSize() {
+      return 1;
+    }
+  }
+
+  /**
+   * Internal node for binary operators (U, I or D).
    */
   private static class OperatorNode extends Node {
-    private final String operator;
+    private final char operator;
     private final Node left;
     private final Node right;
+    private final int height;
+    private final int size;
+    private final boolean hasVariables;
+    private final boolean needsSet;
 
     /**
      * Create operator node.
      *
-     * @param operator U for union, I for intersection
+     * @param operator U for union, I for intersection, D for difference
      * @param left left subtree
      * @param right right subtree
      */
-    public OperatorNode(String operator, Node left, Node right) {
+    public OperatorNode(char operator, Node left, Node right) {
       this.operator = operator;
       this.left = left;
       this.right = right;
+      this.height = 1 + Math.max(left.getHeight(), right.getHeight());
+      this.size = 1 + left.getSize() + right.getSize();
+      this.hasVariables = left.hasVariables() || right.hasVariables();
+      this.needsSet = operator == 'D' || left.needsSet() || right.needsSet();
     }
 
     @Override
-    Interval evaluate() {
-      Interval leftInterval = left.evaluate();
-      Interval rightInterval = right.evaluate();
+    long evaluate() {
+      long leftInterval = left.evaluate();
+      long rightInterval = right.evaluate();
 
       switch (operator) {
-        case "U":
-          return leftInterval.union(rightInterval);
-        case "I":
-          return leftInterval.intersect(rightInterval);
+        case 'U':
+          return PackedInterval.union(leftInterval, rightInterval);
+        case 'I':
+          return PackedInterval.intersect(leftInterval, rightInterval);
+        case 'D':
+          throw new IllegalStateException(
+              "difference is not a single interval; use evaluateSet()");
         default:
           // shouldn't happen with valid input
           throw new IllegalArgumentException("Unknown operator: " + operator);
@@ -105,45 +261,232 @@ public class IntervalTree implements Intervals {
     }
 
     @Override
-    String textTree(String prefix, boolean isLast) {
-      StringBuilder result = new StringBuilder();
+    char symbol() {
+      return operator;
+    }
 
-      // Add operator at top
-      result.append(operator).append("\n");
+    @Override
+    int arity() {
+      return 2;
+    }
 
-      // Vertical lines
-      result.append(prefix).append("|\n");
-      result.append(prefix).append("|\n");
+    @Override
+    Node operand(int i) {
+      return i == 0 ? left : right;
+    }
+
+    @Override
+    boolean hasVariables() {
+      return hasVariables;
+    }
+
+    @Override
+    boolean needsSet() {
+      return needsSet;
+    }
+
+    @Override
+    int getHeight() {
+      return height;
+    }
+
+    @Override
+    int getSize() {
+      return size;
+    }
+  }
 
-      // Left child
-      result.append(prefix).append("|___");
-      String leftResult = left.textTree(prefix + "|   ", false);
-      result.append(leftResult);
+  /**
+   * Internal node for the unary complement operator C.
+   */
+  private static class ComplementNode extends Node {
+    private final Node operand;
+    private final int height;
+    private final int size;
+    private final boolean hasVariables;
 
-      // Add newline if needed
-      if (!leftResult.endsWith("\n")) {
-        result.append("\n");
+    /**
+     * Create complement node.
+     *
+     * @param operand the subtree to complement
+     */
+    public ComplementNode(Node operand) {
+      this.operand = operand;
+      this.height = 1 + operand.getHeight();
+      this.size = 1 + operand.getSize();
+      this.hasVariables = operand.hasVariables();
+    }
+
+    @Override
+    long evaluate() {
+      throw new IllegalStateException("complement is not a single interval; use evaluateSet()");
+    }
+
+    @Override
+    char symbol() {
+      return 'C';
+    }
+
+    @Override
+    int arity() {
+      return 1;
+    }
+
+    @Override
+    Node operand(int i) {
+      return operand;
+    }
+
+    @Override
+    boolean hasVariables() {
+      return hasVariables;
+    }
+
+    @Override
+    boolean needsSet() {
+      return true;
+    }
+
+    @Override
+    int getHeight() {
+      return height;
+    }
+
+    @Override
+    int getSize() {
+      return size;
+    }
+  }
+
+  /**
+   * Node applying U or I to any number of operands, built by
+   * {@link #optimize()} from a run of the same operator. Both operators are
+   * associative and commutative, so the operands are combined in a single
+   * min/max sweep. An intersection stops at the first empty running
+   * result, since intersecting the empty interval with anything is empty;
+   * {@link #evaluateSet(Node)} stops likewise once the operands' hulls are
+   * disjoint. Neither stops before an operand that would throw, so skipping
+   * never turns an exception into an empty result.
+   */
+  private static class NaryNode extends Node {
+    private final char operator;
+    private final Node[] operands;
+    private final int height;
+    private final int size;
+    /** Operands from here on never throw in {@link #evaluate()}, so may be skipped. */
+    private final int packedSkippable;
+    /** Operands from here on never throw in {@link #evaluateSet(Node)}. */
+    private final int setSkippable;
+    private final boolean hasVariables;
+    private final boolean needsSet;
+
+    /**
+     * Create n-ary node.
+     *
+     * @param operator U for union, I for intersection
+     * @param operands two or more subtrees, in evaluation order
+     */
+    public NaryNode(char operator, Node[] operands) {
+      this.operator = operator;
+      this.operands = operands;
+      int maxHeight = 0;
+      int total = 1;
+      for (Node operand : operands) {
+        maxHeight = Math.max(maxHeight, operand.getHeight());
+        total += operand.getSize();
+      }
+      this.height = 1 + maxHeight;
+      this.size = total;
+      int packed = 0;
+      int set = 0;
+      boolean variables = false;
+      boolean setOperators = false;
+      for (int i = 0; i < operands.length; i++) {
+        variables |= operands[i].hasVariables();
+        setOperators |= operands[i].needsSet();
+        if (operands[i].hasVariables()) {
+          packed = i + 1;
+          set = i + 1;
+        } else if (operands[i].needsSet()) {
+          packed = i + 1;
+        }
       }
+      this.packedSkippable = packed;
+      this.setSkippable = set;
+      this.hasVariables = variables;
+      this.needsSet = setOperators;
+    }
 
-      // Spacing before right child
-      result.append(prefix).append("|\n");
+    @Override
+    long evaluate() {
+      long first = operands[0].evaluate();
+      int start = PackedInterval.start(first);
+      int end = PackedInterval.end(first);
+      if (operator == 'U') {
+        for (int i = 1; i < operands.length; i++) {
+          long next = operands[i].evaluate();
+          start = Math.min(start, PackedInterval.start(next));
+          end = Math.max(end, PackedInterval.end(next));
+        }
+        return PackedInterval.pack(start, end);
+      }
+      boolean empty = first == PackedInterval.EMPTY;
+      for (int i = 1; i < operands.length; i++) {
+        if (empty && i >= packedSkippable) {
+          return PackedInterval.EMPTY;
+        }
+        long next = operands[i].evaluate();
+        start = Math.max(start, PackedInterval.start(next));
+        end = Math.min(end, PackedInterval.end(next));
+        empty |= start > end || next == PackedInterval.EMPTY;
+      }
+      return empty ? PackedInterval.EMPTY : PackedInterval.pack(start, end);
+    }
 
-      // Right child
-      result.append(prefix).append("|___");
-      String rightResult = right.textTree(prefix + "    ", true);
-      result.append(rightResult);
+    @Override
+    char symbol() {
+      return operator;
+    }
+
+    @Override
+    int arity() {
+      return operands.length;
+    }
+
+    @Override
+    boolean hasVariables() {
+      return hasVariables;
+    }
+
+    @Override
+    boolean needsSet() {
+      return needsSet;
+    }
 
-      return result.toString();
+    @Override
+    Node operand(int i) {
+      return operands[i];
     }
 
     @Override
     int getHeight() {
-      return 1 + Math.max(left.getHeight(), right.getHeight());
+      return height;
+    }
+
+    @Override
+    int getSize() {
+      return size;
     }
   }
 
+  /** Trees kept by {@link #parse}; a few thousand distinct strings is typical. */
+  private static final ParseCache<IntervalTree> CACHE = new ParseCache<>(4096, IntervalTree::new);
+
   private final Node root;
 
+  /** Lowered form for batch evaluation, built on first use; immutable, so races are benign. */
+  private IntervalColumnEvaluator columns;
+
   /**
    * Build tree from postfix expression.
    *
@@ -151,114 +494,591 @@ public class IntervalTree implements Intervals {
    * @throws IllegalArgumentException for invalid expressions
    */
   public IntervalTree(String postfixExpression) throws IllegalArgumentException {
-    if (postfixExpression == null || postfixExpression.trim().isEmpty()) {
-      throw new IllegalArgumentException("Expression cannot be null or empty");
+    TreeBuilder builder = new TreeBuilder();
+    new IntervalParser(postfixExpression, builder);
+    this.root = builder.stack.pop();
+  }
+
+  /** Builds nodes for {@link IntervalParser}. */
+  private static final class TreeBuilder implements IntervalParser.Builder {
+    private final Deque<Node> stack = new ArrayDeque<>();
+
+    @Override
+    public void interval(PostfixLexer lexer, int comma) {
+      stack.push(new IntervalNode(IntervalParser.parseInterval(lexer, comma)));
+    }
+
+    @Override
+    public void variable(String name) {
+      stack.push(new VariableNode(name));
+    }
+
+    @Override
+    public void operator(char op) {
+      if (op == 'C') {
+        stack.push(new ComplementNode(stack.pop()));
+        return;
+      }
+      Node right = stack.pop();
+      Node left = stack.pop();
+      stack.push(new OperatorNode(op, left, right));
+    }
+
+    @Override
+    public boolean exact() {
+      return true;
     }
 
-    this.root = parsePostfix(postfixExpression.trim());
+    @Override
+    public boolean variables() {
+      return true;
+    }
+  }
+
+  private IntervalTree(Node root) {
+    this.root = root;
   }
 
   /**
-   * Parse postfix and build tree using stack.
+   * Return the tree for a postfix string, reusing an earlier parse of the
+   * same string when it is still cached.
+   *
+   * <p>Trees are immutable, so a cached tree can be shared freely between
+   * callers and threads. The cache is bounded; see {@link ParseCache}.
    *
-   * @param expression postfix string
-   * @return root of tree
-   * @throws IllegalArgumentException if malformed
+   * @param postfixExpression space-separated postfix string
+   * @return the parsed tree
+   * @throws IllegalArgumentException for invalid expressions
    */
-  private Node parsePostfix(String expression) throws IllegalArgumentException {
-    String[] tokens = expression.split("\\s+");
-    Stack<Node> stack = new Stack<>();
-
-    for (String token : tokens) {
-      if (isOperator(token)) {
-        // Need two operands for binary operator
-        if (stack.size() < 2) {
-          throw new IllegalArgumentException(
-              "Invalid expression: insufficient operands for operator " + token);
-        }
-        // Pop right then left (reverse order)
-        Node right = stack.pop();
-        Node left = stack.pop();
-        stack.push(new OperatorNode(token, left, right));
-      } else {
-        // Must be an interval
-        try {
-          Interval interval = parseInterval(token);
-          stack.push(new IntervalNode(interval));
-        } catch (IllegalArgumentException e) {
-          throw new IllegalArgumentException("Invalid interval: " + token);
+  public static IntervalTree parse(String postfixExpression) {
+    return CACHE.get(postfixExpression);
+  }
+
+  /**
+   * Hit, miss and eviction counts of the cache behind {@link #parse}.
+   *
+   * @return the statistics so far
+   */
+  public static ParseCache.Stats parseCacheStats() {
+    return CACHE.stats();
+  }
+
+  /**
+   * Build an equivalent tree with every run of the same associative
+   * operator flattened into one n-ary node.
+   *
+   * <p>A chain such as {@code a b U c U d U} becomes a single U over four
+   * operands, evaluated in one loop instead of one call per level. The
+   * rewrite itself keeps its own stack, so trees of any depth can be
+   * optimized. The operands of an
+   * intersection are reordered smallest subtree first, and evaluation
+   * stops at the first empty running result without evaluating the rest,
+   * unless one of the rest would throw. {@link #evaluate()} and
+   * {@link #evaluateSet()} give the same results as on this tree and throw
+   * in the same cases, though possibly for a different operand when several
+   * would throw; {@link #textTree()} shows the flattened shape.
+   *
+   * @return the optimized tree
+   */
+  public IntervalTree optimize() {
+    return new IntervalTree(optimize(root));
+  }
+
+  /**
+   * An operator being rebuilt by {@link #optimize(Node)}, with the optimized
+   * forms of its operands collected so far.
+   */
+  private static final class OptimizeFrame {
+    private final char operator;
+    /** The operands, with a U or I run flattened as by {@link #run(Node)}. */
+    private final Node[] operands;
+    private final List<Node> optimized = new ArrayList<>();
+
+    OptimizeFrame(Node node) {
+      this.operator = node.symbol();
+      this.operands = operator == 'U' || operator == 'I' ? run(node) : operandsOf(node);
+    }
+
+    /** Build the optimized node from the optimized operands. */
+    Node finish() {
+      if (operator == 'C') {
+        return new ComplementNode(optimized.get(0));
+      }
+      if (operator == 'D') {
+        return new OperatorNode('D', optimized.get(0), optimized.get(1));
+      }
+      Node[] array = optimized.toArray(new Node[0]);
+      if (operator == 'I') {
+        // cheap operands first, so an empty result is found sooner
+        Arrays.sort(array, Comparator.comparingInt(Node::getSize));
+      }
+      return new NaryNode(operator, array);
+    }
+  }
+
+  /**
+   * Optimize a subtree without recursion. Every binary or complement node
+   * gets a frame on an explicit stack, and runs of one operator are
+   * flattened within their frame, so no shape of tree costs Java stack
+   * depth. Leaves and nodes that are already n-ary are kept as they are.
+   */
+  private static Node optimize(Node root) {
+    if (!(root instanceof OperatorNode || root instanceof ComplementNode)) {
+      return root;
+    }
+    Deque<OptimizeFrame> frames = new ArrayDeque<>();
+    frames.push(new OptimizeFrame(root));
+    while (true) {
+      OptimizeFrame frame = frames.peek();
+      if (frame.optimized.size() < frame.operands.length) {
+        Node operand = frame.operands[frame.optimized.size()];
+        if (operand instanceof OperatorNode || operand instanceof ComplementNode) {
+          frames.push(new OptimizeFrame(operand));
+        } else {
+          frame.optimized.add(operand);
         }
+        continue;
+      }
+      frames.pop();
+      Node result = frame.finish();
+      if (frames.isEmpty()) {
+        return result;
       }
+      frames.peek().optimized.add(result);
     }
+  }
 
-    // Should have exactly one node left
-    if (stack.size() != 1) {
-      if (stack.isEmpty()) {
-        throw new IllegalArgumentException("Invalid expression: no result");
+  /**
+   * Collect the operands of the run of a binary U or I: the node and every
+   * binary node of the same operator directly below it are merged, and the
+   * rest are returned left to right.
+   */
+  private static Node[] run(Node node) {
+    List<Node> run = new ArrayList<>();
+    Deque<Node> pending = new ArrayDeque<>();
+    pending.push(node);
+    while (!pending.isEmpty()) {
+      Node n = pending.pop();
+      if (n instanceof OperatorNode && n.symbol() == node.symbol()) {
+        pending.push(n.operand(1));
+        pending.push(n.operand(0));
       } else {
-        throw new IllegalArgumentException(
-            "Invalid expression: too many operands");
+        run.add(n);
       }
     }
+    return run.toArray(new Node[0]);
+  }
+
+  /** The operands of a node, left to right. */
+  private static Node[] operandsOf(Node node) {
+    Node[] operands = new Node[node.arity()];
+    for (int i = 0; i < operands.length; i++) {
+      operands[i] = node.operand(i);
+    }
+    return operands;
+  }
 
-    return stack.pop();
+  /**
+   * Number of nodes in the tree; an n-ary node counts once.
+   *
+   * @return the node count
+   */
+  public int nodeCount() {
+    return root.getSize();
   }
 
   /**
-   * Parse "start,end" format into Interval.
-   * Handles negative numbers.
+   * {@inheritDoc}
    *
-   * @param intervalStr string to parse
-   * @return new Interval
-   * @throws IllegalArgumentException if bad format
+   * @throws IllegalStateException if the expression uses D or C
    */
-  private Interval parseInterval(String intervalStr) throws IllegalArgumentException {
-    // Find comma separator
-    int commaIndex = intervalStr.indexOf(',');
-    if (commaIndex == -1) {
-      throw new IllegalArgumentException("Invalid interval format: " + intervalStr);
+  @Override
+  public Interval evaluate() {
+    return PackedInterval.toInterval(evaluatePacked());
+  }
+
+  /**
+   * Evaluate without allocating: every operator combines packed
+   * {@code long}s, and no {@link Interval} is created.
+   *
+   * @return the result of {@link #evaluate()}, packed as by {@link PackedInterval}
+   * @throws IllegalStateException if the expression uses D or C
+   */
+  public long evaluatePacked() {
+    if (!Metrics.isEnabled()) {
+      return evaluatePacked(root);
     }
+    long start = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    long result = evaluatePacked(root);
+    Metrics.INTERVAL.evaluated(event, start, root.getSize(), root.getHeight());
+    return result;
+  }
+
+  /** Subtrees up to this height are evaluated by plain recursion, which allocates nothing. */
+  private static final int RECURSION_LIMIT = 256;
 
-    // Check for multiple commas
-    if (intervalStr.indexOf(',', commaIndex + 1) != -1) {
-      throw new IllegalArgumentException("Invalid interval format: " + intervalStr);
+  /**
+   * A U, I or D node taller than {@link #RECURSION_LIMIT} being evaluated
+   * by {@link #evaluatePacked(Node)}, with the running result of the
+   * operands finished so far.
+   */
+  private static final class PackedFrame {
+    private final Node node;
+    private final char operator;
+    /** Operands from here on may be skipped once empty, as {@link NaryNode#packedSkippable}. */
+    private final int skippable;
+    private int next;
+    private int start;
+    private int end;
+    private boolean empty;
+
+    PackedFrame(Node node) {
+      this.node = node;
+      this.operator = node.symbol();
+      this.skippable = node instanceof NaryNode ? ((NaryNode) node).packedSkippable : node.arity();
+      this.start = operator == 'U' ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+      this.end = operator == 'U' ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+    }
+
+    /** Whether an operand is left to evaluate. */
+    boolean hasNext() {
+      return next < node.arity() && !(empty && next >= skippable);
     }
 
-    // Split at comma
-    String startStr = intervalStr.substring(0, commaIndex).trim();
-    String endStr = intervalStr.substring(commaIndex + 1).trim();
+    /** Combine the value of the next operand into the running result. */
+    void add(long value) {
+      if (operator == 'U') {
+        start = Math.min(start, PackedInterval.start(value));
+        end = Math.max(end, PackedInterval.end(value));
+      } else if (operator == 'I') {
+        start = Math.max(start, PackedInterval.start(value));
+        end = Math.min(end, PackedInterval.end(value));
+        empty |= start > end || value == PackedInterval.EMPTY;
+      }
+    }
 
-    // Both parts must exist
-    if (startStr.isEmpty() || endStr.isEmpty()) {
-      throw new IllegalArgumentException("Invalid interval format: " + intervalStr);
+    /** The value of the node, once all operands are added. */
+    long finish() {
+      if (operator == 'D') {
+        throw new IllegalStateException(
+            "difference is not a single interval; use evaluateSet()");
+      }
+      return empty ? PackedInterval.EMPTY : PackedInterval.pack(start, end);
     }
+  }
 
-    try {
-      int start = Integer.parseInt(startStr);
-      int end = Integer.parseInt(endStr);
-      return new Interval(start, end);
-    } catch (NumberFormatException e) {
-      throw new IllegalArgumentException("Invalid interval values: " + intervalStr);
+  /**
+   * Evaluate a subtree to a packed interval. Shallow subtrees use the
+   * nodes' own recursive {@link Node#evaluate()}; above
+   * {@link #RECURSION_LIMIT} each operator gets a frame on an explicit
+   * stack instead, as in {@link #evaluateSet(Node)}, so trees of any depth
+   * and shape evaluate, allocating one frame per operator above the limit.
+   */
+  private static long evaluatePacked(Node root) {
+    if (!deep(root)) {
+      return root.evaluate();
+    }
+    Deque<PackedFrame> frames = new ArrayDeque<>();
+    frames.push(new PackedFrame(root));
+    while (true) {
+      PackedFrame frame = frames.peek();
+      if (frame.hasNext()) {
+        Node operand = frame.node.operand(frame.next++);
+        if (deep(operand)) {
+          frames.push(new PackedFrame(operand));
+        } else {
+          frame.add(operand.evaluate());
+        }
+        continue;
+      }
+      frames.pop();
+      long result = frame.finish();
+      if (frames.isEmpty()) {
+        return result;
+      }
+      frames.peek().add(result);
     }
   }
 
+  /** Whether a node is a U, I or D too tall to evaluate by recursion. */
+  private static boolean deep(Node node) {
+    return node.arity() >= 2 && node.getHeight() > RECURSION_LIMIT;
+  }
+
   /**
-   * Check if token is U or I operator.
+   * Evaluate exactly: unions keep their gaps, and difference and complement
+   * are supported. Each run of U or I sorts and sweeps all its operands'
+   * intervals once, and D and C merge in linear time.
    *
-   * @param token string to check
-   * @return true if operator
+   * @return the set of integers the expression denotes
    */
-  private boolean isOperator(String token) {
-    return token.equals("U") || token.equals("I");
+  public IntervalSet evaluateSet() {
+    if (!Metrics.isEnabled()) {
+      return evaluateSet(root);
+    }
+    long start = System.nanoTime();
+    EvaluateEvent event = Metrics.beginEvaluate();
+    IntervalSet result = evaluateSet(root);
+    Metrics.INTERVAL.evaluated(event, start, root.getSize(), root.getHeight());
+    return result;
   }
 
-  @Override
-  public Interval evaluate() {
-    return root.evaluate();
+  /**
+   * An operator being evaluated by {@link #evaluateSet(Node)}, with the
+   * values of its finished operands kept on a shared stack from
+   * {@link #base} up.
+   */
+  private static final class SetFrame {
+    private final char operator;
+    private final Node[] operands;
+    private final int base;
+    /** Set for an optimized intersection, which may stop once it is empty. */
+    private final boolean shortCircuit;
+    /** Operands from here on may be skipped, as {@link NaryNode#setSkippable}. */
+    private final int skippable;
+    private int next;
+    /** Intersection of the operands' hulls so far, while shortCircuit. */
+    private int lo = Integer.MIN_VALUE;
+    private int hi = Integer.MAX_VALUE;
+
+    /**
+     * Start evaluating an operator. A binary U or I is combined with the
+     * whole run of the same operator below it, so the run costs one sweep.
+     */
+    SetFrame(Node node, int base) {
+      this.operator = node.symbol();
+      this.base = base;
+      this.shortCircuit = node instanceof NaryNode && operator == 'I';
+      this.skippable = shortCircuit ? ((NaryNode) node).setSkippable : 0;
+      this.operands =
+          node instanceof OperatorNode && operator != 'D' ? run(node) : operandsOf(node);
+    }
+
+    /** Record the value of the next operand. */
+    void add(List<IntervalSet> values, IntervalSet value) {
+      values.add(value);
+      if (shortCircuit) {
+        if (!value.isEmpty()) {
+          lo = Math.max(lo, value.start(0));
+          hi = Math.min(hi, value.end(value.size() - 1));
+        }
+        if (value.isEmpty() || lo > hi) {
+          // disjoint hulls already make the intersection empty
+          lo = 1;
+          hi = 0;
+          if (next >= skippable) {
+            next = operands.length;
+          }
+        }
+      }
+    }
+
+    /** Combine the operand values, which are removed from the stack. */
+    IntervalSet finish(List<IntervalSet> values) {
+      List<IntervalSet> args = values.subList(base, values.size());
+      IntervalSet result;
+      if (lo > hi) {
+        result = IntervalSet.EMPTY;
+      } else if (operator == 'C') {
+        result = args.get(0).complement();
+      } else if (operator == 'D') {
+        result = args.get(0).difference(args.get(1));
+      } else if (operator == 'U') {
+        result = IntervalSet.unionAll(args.toArray(new IntervalSet[0]));
+      } else {
+        result = IntervalSet.intersectAll(args.toArray(new IntervalSet[0]));
+      }
+      args.clear();
+      return result;
+    }
   }
 
+  /**
+   * Evaluate a subtree exactly without recursion. Operands are evaluated
+   * left to right onto one value stack, and each U or I run is combined by
+   * a single {@link IntervalSet#unionAll(IntervalSet[])} or
+   * {@link IntervalSet#intersectAll(IntervalSet[])} sweep rather than folded
+   * pairwise, which would copy the growing result once per operand.
+   */
+  private static IntervalSet evaluateSet(Node root) {
+    if (root.arity() == 0) {
+      return root.leafSet();
+    }
+    Deque<SetFrame> frames = new ArrayDeque<>();
+    List<IntervalSet> values = new ArrayList<>();
+    frames.push(new SetFrame(root, 0));
+    while (true) {
+      SetFrame frame = frames.peek();
+      if (frame.next < frame.operands.length) {
+        Node operand = frame.operands[frame.next++];
+        if (operand.arity() == 0) {
+          frame.add(values, operand.leafSet());
+        } else {
+          frames.push(new SetFrame(operand, values.size()));
+        }
+        continue;
+      }
+      frames.pop();
+      IntervalSet result = frame.finish(values);
+      if (frames.isEmpty()) {
+        return result;
+      }
+      frames.peek().add(values, result);
+    }
+  }
+
+  /**
+   * Evaluate this expression once per row of variable bindings.
+   *
+   * <p>Row {@code i} binds every variable {@code v} to the interval
+   * {@code starts.get(v)[i]},{@code ends.get(v)[i]} and stores the result in
+   * {@code outStarts[i]} and {@code outEnds[i]}, with an empty intersection
+   * reported as {@link Interval#EMPTY}. The work runs one operator at a time
+   * over blocks of rows rather than walking the tree once per row, and
+   * allocates nothing per row.
+   *
+   * @param starts start column for each variable; each needs at least
+   *     {@code outStarts.length} entries
+   * @param ends end column for each variable, likewise
+   * @param outStarts receives the start of each row's result
+   * @param outEnds receives the end of each row's result; same length as
+   *     {@code outStarts}
+   * @throws IllegalArgumentException if a variable has no column, a column is
+   *     too short, the output arrays differ in length, or a bound interval
+   *     has its start after its end
+   * @throws IllegalStateException if the expression uses D or C
+   */
+  public void evaluate(Map<String, int[]> starts, Map<String, int[]> ends, int[] outStarts,
+      int[] outEnds) {
+    IntervalColumnEvaluator evaluator = columns;
+    if (evaluator == null) {
+      evaluator = lower(root);
+      columns = evaluator;
+    }
+    evaluator.evaluate(starts, ends, outStarts, outEnds);
+  }
+
+  /**
+   * Lower a tree to postfix instructions. Nodes are emitted in reverse
+   * preorder with children pushed left to right, which reversed is
+   * postorder, so deep chains need no recursion.
+   */
+  private static IntervalColumnEvaluator lower(Node root) {
+    List<Node> order = new ArrayList<>();
+    Deque<Node> pending = new ArrayDeque<>();
+    pending.push(root);
+    while (!pending.isEmpty()) {
+      Node node = pending.pop();
+      order.add(node);
+      if (node instanceof OperatorNode) {
+        OperatorNode op = (OperatorNode) node;
+        pending.push(op.left);
+        pending.push(op.right);
+      } else if (node instanceof NaryNode) {
+        for (Node operand : ((NaryNode) node).operands) {
+          pending.push(operand);
+        }
+      } else if (node instanceof ComplementNode) {
+        throw new IllegalStateException("complement is not a single interval; use evaluateSet()");
+      }
+    }
+
+    int n = order.size();
+    byte[] code = new byte[n];
+    int[] a = new int[n];
+    int[] b = new int[n];
+    Map<String, Integer> slots = new LinkedHashMap<>();
+    int sp = 0;
+    int depth = 0;
+    for (int i = 0; i < n; i++) {
+      Node node = order.get(n - 1 - i);
+      if (node instanceof IntervalNode) {
+        long interval = ((IntervalNode) node).interval;
+        code[i] = IntervalColumnEvaluator.LEAF;
+        a[i] = PackedInterval.start(interval);
+        b[i] = PackedInterval.end(interval);
+        depth = Math.max(depth, ++sp);
+        continue;
+      }
+      if (node instanceof VariableNode) {
+        String name = ((VariableNode) node).name;
+        Integer slot = slots.get(name);
+        if (slot == null) {
+          slot = slots.size();
+          slots.put(name, slot);
+        }
+        code[i] = IntervalColumnEvaluator.LOAD;
+        a[i] = slot;
+        depth = Math.max(depth, ++sp);
+        continue;
+      }
+      char operator;
+      int arity;
+      if (node instanceof OperatorNode) {
+        operator = ((OperatorNode) node).operator;
+        arity = 2;
+      } else {
+        operator = ((NaryNode) node).operator;
+        arity = ((NaryNode) node).operands.length;
+      }
+      if (operator == 'D') {
+        throw new IllegalStateException(
+            "difference is not a single interval; use evaluateSet()");
+      }
+      code[i] = operator == 'U' ? IntervalColumnEvaluator.UNION : IntervalColumnEvaluator.INTERSECT;
+      a[i] = arity;
+      sp -= arity - 1;
+    }
+    return new IntervalColumnEvaluator(code, a, b, slots.keySet().toArray(new String[0]), depth);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>An n-ary node from {@link #optimize()} is drawn with all its operands
+   * side by side, and C with its single operand drawn like a last one.
+   */
   @Override
   public String textTree() {
-    return root.textTree("", true);
+    StringBuilder out = new StringBuilder();
+    render(TreeRenderer.textTree(out));
+    return out.toString();
+  }
+
+  /**
+   * Walk the tree in order without recursion. Frame {@code i} holds an
+   * operator and the position of the operand to visit next.
+   */
+  private void render(TreeRenderer out) {
+    Node[] frames = new Node[root.getHeight()];
+    int[] next = new int[frames.length];
+    int top = 0;
+    Node node = root;
+    while (true) {
+      while (node.arity() > 0) {
+        out.enter(node.symbol(), node.arity());
+        frames[top] = node;
+        next[top++] = 1;
+        node = node.operand(0);
+      }
+      out.leaf(node.leafText());
+
+      while (true) {
+        if (top == 0) {
+          return;
+        }
+        Node op = frames[top - 1];
+        int i = next[top - 1];
+        if (i < op.arity()) {
+          next[top - 1]++;
+          out.between(op.symbol(), i == op.arity() - 1);
+          node = op.operand(i);
+          break;
+        }
+        out.exit(op.symbol());
+        top--;
+      }
+    }
   }
 }
\ No newline at end of file
@@ -50,7 +50,8 @@ public interface Intervals {
    * - Right child starts 2 lines after left child ends
    * - Vertical lines (|) connect operators to operands
    * - Underscores (___) show horizontal connections
-   * - Operators shown as U or I, intervals as start,end
+   * - Operators shown as U, I, D or C, intervals as start,end
+   * - The unary C has a single child, drawn like a right child
    *
    * @return tree structure as a formatted string
    */
@@ -0,0 +1,126 @@
+package intervals;
+
+import postfix.PostfixLexer;
+
+/**
+ * Interval with {@code long} start and end points, for coordinates such as
+ * epoch nanoseconds that overflow an {@code int}. Behaves exactly like
+ * {@link Interval}, with {@link Long#MIN_VALUE} in place of
+ * {@link Integer#MIN_VALUE} for {@link #EMPTY}.
+ */
+public final class LongInterval {
+  /**
+   * The result of intersecting intervals that do not overlap, shared by
+   * every such intersection.
+   */
+  public static final LongInterval EMPTY = new LongInterval(Long.MIN_VALUE, Long.MIN_VALUE);
+
+  private final long start;
+  private final long end;
+
+  /**
+   * Creates an interval from start to end.
+   *
+   * @param start starting point
+   * @param end ending point
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public LongInterval(long start, long end) {
+    if (start > end) {
+      throw new IllegalArgumentException("Invalid interval");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Parse a "start,end" token.
+   *
+   * @param token the token, without surrounding spaces
+   * @return the interval
+   * @throws IllegalArgumentException if the token is not a valid interval
+   */
+  public static LongInterval parse(String token) {
+    int comma = token.indexOf(',');
+    if (comma <= 0 || comma == token.length() - 1 || token.indexOf(',', comma + 1) != -1) {
+      throw new IllegalArgumentException("Invalid interval: " + token);
+    }
+    try {
+      return new LongInterval(PostfixLexer.parseLong(token, 0, comma),
+          PostfixLexer.parseLong(token, comma + 1, token.length()));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid interval: " + token);
+    }
+  }
+
+  /**
+   * Gets the starting point.
+   *
+   * @return start, inclusive
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the ending point.
+   *
+   * @return end, inclusive
+   */
+  public long getEnd() {
+    return end;
+  }
+
+  /**
+   * Finds the intersection with another interval.
+   * Returns {@link #EMPTY} if intervals don't overlap.
+   *
+   * @param other the interval to intersect with
+   * @return intersection interval
+   */
+  public LongInterval intersect(LongInterval other) {
+    long newStart = Math.max(this.start, other.start);
+    long newEnd = Math.min(this.end, other.end);
+    if (newStart > newEnd) {
+      return EMPTY;
+    }
+    return new LongInterval(newStart, newEnd);
+  }
+
+  /**
+   * Returns the union with another interval.
+   *
+   * @param other the interval to union with
+   * @return union interval
+   */
+  public LongInterval union(LongInterval other) {
+    return new LongInterval(Math.min(this.start, other.start), Math.max(this.end, other.end));
+  }
+
+  /**
+   * String representation as "start,end".
+   *
+   * @return interval as string
+   */
+  @Override
+  public String toString() {
+    return start + "," + end;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LongInterval)) {
+      return false;
+    }
+    LongInterval that = (LongInterval) obj;
+    return this.start == that.start && this.end == that.end;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Long.hashCode(start)) + Long.hashCode(end);
+  }
+}
@@ -0,0 +1,195 @@
+package intervals;
+
+import java.util.Map;
+import postfix.IncrementalTree;
+import postfix.PostfixLexer;
+import postfix.TreeRenderer;
+
+/**
+ * Interval tree whose leaf intervals can be changed after parsing.
+ *
+ * <p>Operators cache the interval they last computed and are recomputed
+ * only when a leaf below them changes; the bookkeeping is done by an
+ * {@link IncrementalTree} over packed intervals, and this class supplies the
+ * {@code U} and {@code I} combine step. {@link #recomputedCount()} reports
+ * how many operator results have been computed so far.
+ *
+ * <p>Variables are set by name, which updates every occurrence. Interval
+ * operands are set by position, counting operands from the left of the
+ * postfix string starting at 0. Variables start out unbound, and
+ * {@link #textTree()} shows their names rather than their values.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class MutableIntervalTree implements Intervals {
+
+  private final IncrementalTree tree;
+
+  /**
+   * Build a mutable interval tree from a space-separated postfix string.
+   *
+   * @param postfix space-separated tokens (intervals, variables, U and I)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public MutableIntervalTree(String postfix) {
+    IncrementalTree.Builder builder = new IncrementalTree.Builder();
+    new IntervalParser(postfix, new IntervalParser.Builder() {
+      @Override
+      public void interval(PostfixLexer lexer, int comma) {
+        builder.leaf(IntervalParser.parseInterval(lexer, comma));
+      }
+
+      @Override
+      public void variable(String name) {
+        builder.variable(name, PackedInterval.EMPTY);
+      }
+
+      @Override
+      public void operator(char op) {
+        builder.operator(op);
+      }
+
+      @Override
+      public boolean variables() {
+        return true;
+      }
+    });
+    this.tree = builder.build((op, left, right) -> op == 'U'
+        ? PackedInterval.union(left, right)
+        : PackedInterval.intersect(left, right));
+  }
+
+  /**
+   * Number of operands in this expression.
+   *
+   * @return the leaf count
+   */
+  public int leafCount() {
+    return tree.leafCount();
+  }
+
+  /**
+   * Current interval of an operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @return its interval; {@link Interval#EMPTY} for a variable that has not
+   *     been set
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public Interval leaf(int index) {
+    return PackedInterval.toInterval(tree.leaf(index));
+  }
+
+  /**
+   * Change an interval operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param start new start, inclusive
+   * @param end new end, inclusive
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if start &gt; end, or the operand is a
+   *     variable; use {@link #set(String, int, int)} for those
+   */
+  public void setLeaf(int index, int start, int end) {
+    tree.setLeaf(index, PackedInterval.of(start, end));
+  }
+
+  /**
+   * Change an interval operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param interval the new interval
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if the operand is a variable
+   */
+  public void setLeaf(int index, Interval interval) {
+    setLeaf(index, interval.getStart(), interval.getEnd());
+  }
+
+  /**
+   * Change several interval operands at once. Nothing is recomputed until
+   * the next {@link #evaluate()}, and an operator above several changed
+   * leaves is recomputed only once.
+   *
+   * @param indices operand positions
+   * @param starts new starts, parallel to {@code indices}
+   * @param ends new ends, parallel to {@code indices}
+   * @throws IllegalArgumentException if the arrays differ in length, an
+   *     operand is a variable or an interval has start &gt; end
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public void setLeaves(int[] indices, int[] starts, int[] ends) {
+    if (indices.length != starts.length || indices.length != ends.length) {
+      throw new IllegalArgumentException("expected " + indices.length + " intervals");
+    }
+    for (int i = 0; i < indices.length; i++) {
+      setLeaf(indices[i], starts[i], ends[i]);
+    }
+  }
+
+  /**
+   * Bind a variable, updating every occurrence of it.
+   *
+   * @param name the variable
+   * @param start its new start, inclusive
+   * @param end its new end, inclusive
+   * @throws IllegalArgumentException if the expression has no such variable
+   *     or start &gt; end
+   */
+  public void set(String name, int start, int end) {
+    tree.set(name, PackedInterval.of(start, end));
+  }
+
+  /**
+   * Bind several variables at once. Nothing is recomputed until the next
+   * {@link #evaluate()}.
+   *
+   * @param values new intervals by variable name
+   * @throws IllegalArgumentException if the expression lacks one of the
+   *     variables; entries before it have already been applied
+   */
+  public void set(Map<String, Interval> values) {
+    for (Map.Entry<String, Interval> e : values.entrySet()) {
+      set(e.getKey(), e.getValue().getStart(), e.getValue().getEnd());
+    }
+  }
+
+  /**
+   * Number of {@code U} and {@code I} results computed since this tree was
+   * built, which shows how much work incremental evaluation has saved.
+   *
+   * @return the count
+   */
+  public long recomputedCount() {
+    return tree.recomputedCount();
+  }
+
+  /**
+   * Evaluate the expression, recomputing only operators whose inputs changed
+   * since the last evaluation. Clean subtrees are not descended into, and
+   * the only allocation is the returned {@link Interval}.
+   *
+   * @throws IllegalStateException if a variable has not been set
+   */
+  @Override
+  public Interval evaluate() {
+    return PackedInterval.toInterval(evaluatePacked());
+  }
+
+  /**
+   * Evaluate as {@link #evaluate()} does, without allocating.
+   *
+   * @return the result, packed as by {@link PackedInterval}
+   * @throws IllegalStateException if a variable has not been set
+   */
+  public long evaluatePacked() {
+    return tree.evaluate();
+  }
+
+  @Override
+  public String textTree() {
+    StringBuilder out = new StringBuilder();
+    tree.render(TreeRenderer.textTree(out), PackedInterval::toString);
+    return out.toString();
+  }
+}
@@ -0,0 +1,127 @@
+package intervals;
+
+/**
+ * Intervals packed into a single {@code long}, so they can be combined
+ * without allocating.
+ *
+ * <p>The start occupies the high 32 bits and the end the low 32 bits, with
+ * the end's sign bit flipped. That makes the natural order of the
+ * {@code long}s the order by start, then end, so {@link #compare} is a plain
+ * {@link Long#compare}. Union and intersection follow {@link Interval}
+ * exactly, including the {@link #EMPTY} result for intervals that do not
+ * overlap. Convert at API boundaries with {@link #of(Interval)} and
+ * {@link #toInterval(long)}.
+ */
+public final class PackedInterval {
+
+  /** Packed form of {@link Interval#EMPTY}. */
+  public static final long EMPTY = pack(Integer.MIN_VALUE, Integer.MIN_VALUE);
+
+  private PackedInterval() {
+  }
+
+  /**
+   * Pack an interval.
+   *
+   * @param start start, inclusive
+   * @param end end, inclusive
+   * @return the packed interval
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public static long of(int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException("Invalid interval");
+    }
+    return pack(start, end);
+  }
+
+  /**
+   * Pack an interval.
+   *
+   * @param interval the interval
+   * @return the packed interval
+   */
+  public static long of(Interval interval) {
+    return pack(interval.getStart(), interval.getEnd());
+  }
+
+  /** Pack without validation; callers guarantee start &lt;= end. */
+  static long pack(int start, int end) {
+    return ((long) start << 32) | ((end ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Start of a packed interval.
+   *
+   * @param packed the packed interval
+   * @return start, inclusive
+   */
+  public static int start(long packed) {
+    return (int) (packed >> 32);
+  }
+
+  /**
+   * End of a packed interval.
+   *
+   * @param packed the packed interval
+   * @return end, inclusive
+   */
+  public static int end(long packed) {
+    return (int) packed ^ Integer.MIN_VALUE;
+  }
+
+  /**
+   * Smallest interval covering both, as {@link Interval#union}.
+   *
+   * @param a packed interval
+   * @param b packed interval
+   * @return the packed union
+   */
+  public static long union(long a, long b) {
+    return pack(Math.min(start(a), start(b)), Math.max(end(a), end(b)));
+  }
+
+  /**
+   * Common part of both, as {@link Interval#intersect}.
+   *
+   * @param a packed interval
+   * @param b packed interval
+   * @return the packed intersection, or {@link #EMPTY} if they do not overlap
+   */
+  public static long intersect(long a, long b) {
+    int start = Math.max(start(a), start(b));
+    int end = Math.min(end(a), end(b));
+    return start > end ? EMPTY : pack(start, end);
+  }
+
+  /**
+   * Order by start, then end.
+   *
+   * @param a packed interval
+   * @param b packed interval
+   * @return negative, zero or positive as a is before, equal to or after b
+   */
+  public static int compare(long a, long b) {
+    return Long.compare(a, b);
+  }
+
+  /**
+   * Unpack to an object, reusing {@link Interval#EMPTY} for the empty result.
+   *
+   * @param packed the packed interval
+   * @return the interval
+   */
+  public static Interval toInterval(long packed) {
+    return packed == EMPTY ? Interval.EMPTY : new Interval(start(packed), end(packed));
+  }
+
+  /**
+   * Format as {@link Interval#toString()} does.
+   *
+   * @param packed the packed interval
+   * @return "start,end"
+   */
+  public static String toString(long packed) {
+    return start(packed) + "," + end(packed);
+  }
+}
@@ -0,0 +1,250 @@
+package intervals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import postfix.PostfixLexer;
+import postfix.TreeRenderer;
+
+/**
+ * Immutable interval tree where changing a leaf builds a new version.
+ *
+ * <p>Every node stores the interval its subtree evaluates to, computed when
+ * the node is created, so {@link #evaluate()} just reads the root. A change
+ * copies only the nodes on the path from the leaf to the root, recomputing
+ * each copy from its children, and shares every other subtree with the
+ * previous version. An update therefore costs O(depth) time and memory, and
+ * old versions remain valid and unchanged.
+ *
+ * <p>Because versions never change, any number of threads may read one
+ * while another derives the next; see {@link ConcurrentIntervalTree} for
+ * publishing versions through an atomic reference. Expressions use
+ * {@code U} and {@code I}, and leaves are addressed by position, counting
+ * operands from the left of the postfix string starting at 0.
+ */
+public final class PersistentIntervalTree implements Intervals {
+
+  /** Leaf when {@code op} is 0, otherwise a U or I operator. */
+  private static final class Node {
+    private final char op;
+    private final Node left;
+    private final Node right;
+    /** Result of the subtree, packed as by {@link PackedInterval}. */
+    private final long value;
+    private final int leaves;
+    private final int height;
+
+    Node(long value) {
+      this.op = 0;
+      this.left = null;
+      this.right = null;
+      this.value = value;
+      this.leaves = 1;
+      this.height = 1;
+    }
+
+    Node(char op, Node left, Node right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+      this.value = op == 'U'
+          ? PackedInterval.union(left.value, right.value)
+          : PackedInterval.intersect(left.value, right.value);
+      this.leaves = left.leaves + right.leaves;
+      this.height = 1 + Math.max(left.height, right.height);
+    }
+  }
+
+  private final Node root;
+
+  /**
+   * Build the first version from a space-separated postfix string.
+   *
+   * @param postfix space-separated tokens (intervals, U and I)
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public PersistentIntervalTree(String postfix) {
+    Deque<Node> st = new ArrayDeque<>();
+    new IntervalParser(postfix, new IntervalParser.Builder() {
+      @Override
+      public void interval(PostfixLexer lexer, int comma) {
+        st.push(new Node(IntervalParser.parseInterval(lexer, comma)));
+      }
+
+      @Override
+      public void operator(char op) {
+        Node right = st.pop();
+        Node left = st.pop();
+        st.push(new Node(op, left, right));
+      }
+    });
+    this.root = st.pop();
+  }
+
+  private PersistentIntervalTree(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Number of operands in this expression.
+   *
+   * @return the leaf count
+   */
+  public int leafCount() {
+    return root.leaves;
+  }
+
+  /**
+   * Interval of an operand in this version.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @return its interval
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public Interval leaf(int index) {
+    checkIndex(index);
+    Node node = root;
+    while (node.op != 0) {
+      if (index < node.left.leaves) {
+        node = node.left;
+      } else {
+        index -= node.left.leaves;
+        node = node.right;
+      }
+    }
+    return PackedInterval.toInterval(node.value);
+  }
+
+  /**
+   * Build the version with one operand changed. This version is unchanged.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param start new start, inclusive
+   * @param end new end, inclusive
+   * @return the new version, sharing every subtree off the changed path;
+   *     this tree itself if the operand already holds that interval
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if start &gt; end
+   */
+  public PersistentIntervalTree withLeaf(int index, int start, int end) {
+    long value = PackedInterval.of(start, end);
+    checkIndex(index);
+    // walk down recording the path, then rebuild it bottom-up without recursion
+    Node[] path = new Node[root.height - 1];
+    int depth = 0;
+    Node node = root;
+    while (node.op != 0) {
+      path[depth++] = node;
+      if (index < node.left.leaves) {
+        node = node.left;
+      } else {
+        index -= node.left.leaves;
+        node = node.right;
+      }
+    }
+    if (node.value == value) {
+      return this;
+    }
+    Node copy = new Node(value);
+    while (depth > 0) {
+      Node parent = path[--depth];
+      copy = node == parent.left
+          ? new Node(parent.op, copy, parent.right)
+          : new Node(parent.op, parent.left, copy);
+      node = parent;
+    }
+    return new PersistentIntervalTree(copy);
+  }
+
+  /**
+   * Build the version with one operand changed.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param interval the new interval
+   * @return the new version
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public PersistentIntervalTree withLeaf(int index, Interval interval) {
+    return withLeaf(index, interval.getStart(), interval.getEnd());
+  }
+
+  /**
+   * Build the version with several operands changed, applied in order.
+   *
+   * @param indices operand positions
+   * @param starts new starts, parallel to {@code indices}
+   * @param ends new ends, parallel to {@code indices}
+   * @return the new version
+   * @throws IllegalArgumentException if the arrays differ in length or an
+   *     interval has start &gt; end
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public PersistentIntervalTree withLeaves(int[] indices, int[] starts, int[] ends) {
+    if (indices.length != starts.length || indices.length != ends.length) {
+      throw new IllegalArgumentException("expected " + indices.length + " intervals");
+    }
+    PersistentIntervalTree tree = this;
+    for (int i = 0; i < indices.length; i++) {
+      tree = tree.withLeaf(indices[i], starts[i], ends[i]);
+    }
+    return tree;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= root.leaves) {
+      throw new IndexOutOfBoundsException("operand " + index + " of " + root.leaves);
+    }
+  }
+
+  /**
+   * Result of this version, computed when it was built, so this only
+   * allocates the returned {@link Interval}.
+   */
+  @Override
+  public Interval evaluate() {
+    return PackedInterval.toInterval(root.value);
+  }
+
+  /**
+   * Result of this version without allocating.
+   *
+   * @return the result, packed as by {@link PackedInterval}
+   */
+  public long evaluatePacked() {
+    return root.value;
+  }
+
+  /** Draw the version as a text tree, walking the nodes without recursion. */
+  @Override
+  public String textTree() {
+    StringBuilder sb = new StringBuilder();
+    TreeRenderer out = TreeRenderer.textTree(sb);
+    Node[] path = new Node[root.height];
+    boolean[] leftDone = new boolean[root.height];
+    int top = 0;
+    Node node = root;
+    while (true) {
+      while (node.op != 0) {
+        out.enter(node.op, 2);
+        path[top] = node;
+        leftDone[top++] = false;
+        node = node.left;
+      }
+      out.leaf(PackedInterval.toString(node.value));
+
+      while (true) {
+        if (top == 0) {
+          return sb.toString();
+        }
+        Node op = path[top - 1];
+        if (!leftDone[top - 1]) {
+          leftDone[top - 1] = true;
+          out.between(op.op, true);
+          node = op.right;
+          break;
+        }
+        out.exit(op.op);
+        top--;
+      }
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package postfix;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one evaluation, committed while {@link Metrics} are enabled
+ * and a recording has {@code postfix.Evaluate} turned on.
+ */
+@Name("postfix.Evaluate")
+@Label("Postfix Evaluate")
+@Category("Postfix")
+@Description("Evaluation of a parsed tree")
+public final class EvaluateEvent extends Event {
+  @Label("Tree Type")
+  String tree;
+
+  @Label("Nodes")
+  int nodes;
+
+  @Label("Depth")
+  int depth;
+}
@@ -0,0 +1,358 @@
+package postfix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * Binary operator tree over {@code long} values that caches every
+ * operator's result and recomputes only what changed.
+ *
+ * <p>This is the engine behind {@code MutableExpressionTree} and
+ * {@code MutableIntervalTree}. Each keeps its values in a {@code long}, the
+ * raw bits of a {@code double} or a packed interval, and supplies only the
+ * operator semantics as a {@link Combiner}. Nodes are held in parallel
+ * arrays in postfix order, so children precede their parent and the root
+ * is last.
+ *
+ * <p>Changing a leaf marks only the operators on its path to the root as
+ * dirty, and {@link #evaluate()} recomputes just the dirty operators, so
+ * after a single change re-evaluation costs O(depth) rather than O(n).
+ * Setters never evaluate anything: any number of leaves may be changed,
+ * and the next {@code evaluate()} recomputes each affected operator once.
+ *
+ * <p>Variables are set by name, which updates every occurrence. Literal
+ * operands are set by position, counting operands from the left of the
+ * postfix string starting at 0.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class IncrementalTree {
+
+  /** Operator semantics over the owner's encoding of values. */
+  @FunctionalInterface
+  public interface Combiner {
+    /**
+     * Apply an operator.
+     *
+     * @param op the operator symbol
+     * @param left value of the left operand
+     * @param right value of the right operand
+     * @return the result
+     */
+    long combine(char op, long left, long right);
+  }
+
+  /** Collects nodes in postfix order, as a parser reports them. */
+  public static final class Builder {
+    private char[] op = new char[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private long[] value = new long[16];
+    private String[] name = new String[16];
+    /** Indices of the pending operands. */
+    private int[] stack = new int[16];
+    private int n;
+    private int sp;
+
+    /**
+     * Add a literal operand.
+     *
+     * @param v its value
+     */
+    public void leaf(long v) {
+      add((char) 0, -1, -1, v, null);
+      push();
+    }
+
+    /**
+     * Add a variable operand, unbound until it is first set.
+     *
+     * @param variable the variable name
+     * @param unset value reported by {@link IncrementalTree#leaf} until then
+     */
+    public void variable(String variable, long unset) {
+      add((char) 0, -1, -1, unset, variable);
+      push();
+    }
+
+    /**
+     * Combine the two most recently completed operands.
+     *
+     * @param symbol the operator
+     */
+    public void operator(char symbol) {
+      add(symbol, stack[sp - 2], stack[sp - 1], 0, null);
+      sp--;
+      stack[sp - 1] = n - 1;
+    }
+
+    private void add(char symbol, int l, int r, long v, String variable) {
+      if (n == op.length) {
+        op = Arrays.copyOf(op, 2 * n);
+        left = Arrays.copyOf(left, 2 * n);
+        right = Arrays.copyOf(right, 2 * n);
+        value = Arrays.copyOf(value, 2 * n);
+        name = Arrays.copyOf(name, 2 * n);
+      }
+      op[n] = symbol;
+      left[n] = l;
+      right[n] = r;
+      value[n] = v;
+      name[n++] = variable;
+    }
+
+    private void push() {
+      if (sp == stack.length) {
+        stack = Arrays.copyOf(stack, 2 * sp);
+      }
+      stack[sp++] = n - 1;
+    }
+
+    /**
+     * Finish the tree. The builder must hold exactly one complete
+     * expression.
+     *
+     * @param combiner operator semantics
+     * @return the tree, with every operator dirty
+     */
+    public IncrementalTree build(Combiner combiner) {
+      return new IncrementalTree(this, combiner);
+    }
+  }
+
+  private final Combiner combiner;
+  private final char[] op;
+  private final int[] left;
+  private final int[] right;
+  private final int[] parent;
+  private final long[] value;
+  /** Set when a leaf below changed since {@link #value} was computed. */
+  private final boolean[] dirty;
+  /** Variable name of each leaf; null for literals and operators. */
+  private final String[] name;
+  /** Node index of each operand, from the left. */
+  private final int[] leaves;
+  private final Map<String, int[]> variables;
+  private final Set<String> unbound;
+  private final int height;
+  /** Frames for {@link #evaluate()}, kept so re-evaluation does not allocate. */
+  private final int[] frames;
+  private final byte[] stages;
+  private long recomputed;
+
+  private IncrementalTree(Builder b, Combiner combiner) {
+    int n = b.n;
+    this.combiner = combiner;
+    this.op = Arrays.copyOf(b.op, n);
+    this.left = Arrays.copyOf(b.left, n);
+    this.right = Arrays.copyOf(b.right, n);
+    this.value = Arrays.copyOf(b.value, n);
+    this.name = Arrays.copyOf(b.name, n);
+    this.parent = new int[n];
+    this.dirty = new boolean[n];
+
+    // children precede parents, so one forward pass sees every child first
+    int[] heights = new int[n];
+    int leafCount = 0;
+    Map<String, List<Integer>> byName = new LinkedHashMap<>();
+    parent[n - 1] = -1;
+    for (int i = 0; i < n; i++) {
+      if (op[i] == 0) {
+        heights[i] = 1;
+        leafCount++;
+        if (name[i] != null) {
+          byName.computeIfAbsent(name[i], k -> new ArrayList<>()).add(i);
+        }
+      } else {
+        heights[i] = 1 + Math.max(heights[left[i]], heights[right[i]]);
+        parent[left[i]] = i;
+        parent[right[i]] = i;
+        dirty[i] = true;
+      }
+    }
+    this.leaves = new int[leafCount];
+    for (int i = 0, k = 0; i < n; i++) {
+      if (op[i] == 0) {
+        leaves[k++] = i;
+      }
+    }
+    this.variables = new HashMap<>();
+    for (Map.Entry<String, List<Integer>> e : byName.entrySet()) {
+      variables.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+    this.unbound = new LinkedHashSet<>(byName.keySet());
+    this.height = heights[n - 1];
+    this.frames = new int[height];
+    this.stages = new byte[height];
+  }
+
+  /**
+   * Number of operands in this expression.
+   *
+   * @return the leaf count
+   */
+  public int leafCount() {
+    return leaves.length;
+  }
+
+  /**
+   * Current value of an operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @return its value; the unset value for a variable never set
+   * @throws IndexOutOfBoundsException if there is no such operand
+   */
+  public long leaf(int index) {
+    return value[leaves[index]];
+  }
+
+  /**
+   * Change the value of a literal operand.
+   *
+   * @param index position of the operand, from 0 at the left
+   * @param v the new value
+   * @throws IndexOutOfBoundsException if there is no such operand
+   * @throws IllegalArgumentException if the operand is a variable
+   */
+  public void setLeaf(int index, long v) {
+    int node = leaves[index];
+    if (name[node] != null) {
+      throw new IllegalArgumentException("operand " + index + " is variable " + name[node]);
+    }
+    update(node, v);
+  }
+
+  /**
+   * Bind a variable, updating every occurrence of it.
+   *
+   * @param variable the variable name
+   * @param v its new value
+   * @throws IllegalArgumentException if the expression has no such variable
+   */
+  public void set(String variable, long v) {
+    int[] occurrences = variables.get(variable);
+    if (occurrences == null) {
+      throw new IllegalArgumentException("unknown variable: " + variable);
+    }
+    unbound.remove(variable);
+    for (int node : occurrences) {
+      update(node, v);
+    }
+  }
+
+  /**
+   * Number of operator results computed since this tree was built. The
+   * first evaluation computes every operator; after that, each evaluation
+   * adds only the operators on paths from changed leaves to the root.
+   *
+   * @return the count
+   */
+  public long recomputedCount() {
+    return recomputed;
+  }
+
+  /**
+   * Store a leaf value and mark its ancestors dirty. The walk stops at the
+   * first ancestor that is already dirty, since everything above it is too,
+   * so a batch of updates touches each operator at most once.
+   */
+  private void update(int node, long v) {
+    if (value[node] == v) {
+      return;
+    }
+    value[node] = v;
+    for (int p = parent[node]; p >= 0 && !dirty[p]; p = parent[p]) {
+      dirty[p] = true;
+    }
+  }
+
+  /**
+   * Evaluate the expression, recomputing only operators whose inputs changed
+   * since the last evaluation. Clean subtrees are not descended into, and
+   * after the first call this performs no allocation.
+   *
+   * @return the value of the root
+   * @throws IllegalStateException if a variable has not been set
+   * @throws RuntimeException whatever the {@link Combiner} throws; operators
+   *     that could not be computed stay dirty, so a later evaluation retries
+   *     them
+   */
+  public long evaluate() {
+    if (!unbound.isEmpty()) {
+      throw new IllegalStateException("unbound variable: " + unbound.iterator().next());
+    }
+    int root = op.length - 1;
+    if (!dirty[root]) {
+      return value[root];
+    }
+    // stage 0: visit left, 1: visit right, 2: both children are clean
+    int depth = 0;
+    frames[depth] = root;
+    stages[depth++] = 0;
+    while (depth > 0) {
+      int node = frames[depth - 1];
+      int stage = stages[depth - 1]++;
+      if (stage == 2) {
+        value[node] = combiner.combine(op[node], value[left[node]], value[right[node]]);
+        dirty[node] = false;
+        recomputed++;
+        depth--;
+      } else {
+        int child = stage == 0 ? left[node] : right[node];
+        if (dirty[child]) {
+          frames[depth] = child;
+          stages[depth++] = 0;
+        }
+      }
+    }
+    return value[root];
+  }
+
+  /**
+   * Write the tree in order, variables by name and literals at their
+   * current values.
+   *
+   * @param out the renderer to feed
+   * @param literals formats a literal's value
+   */
+  public void render(TreeRenderer out, LongFunction<? extends CharSequence> literals) {
+    out.render(new TreeRenderer.ArrayTree() {
+      @Override
+      public int root() {
+        return op.length - 1;
+      }
+
+      @Override
+      public int height() {
+        return height;
+      }
+
+      @Override
+      public char operator(int node) {
+        return op[node];
+      }
+
+      @Override
+      public int left(int node) {
+        return left[node];
+      }
+
+      @Override
+      public int right(int node) {
+        return right[node];
+      }
+
+      @Override
+      public CharSequence leafText(int node) {
+        return name[node] != null ? name[node] : literals.apply(value[node]);
+      }
+    });
+  }
+}
@@ -0,0 +1,138 @@
+package postfix;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of durations in nanoseconds.
+ *
+ * <p>Buckets are log-linear: each power of two is split into eight equal
+ * sub-buckets, so a reported percentile is within 12.5% of the true value
+ * while the whole range of {@code long} fits in under 500 counters.
+ * Recording is one array index computation and one atomic increment, with
+ * no allocation.
+ */
+public final class LatencyHistogram {
+
+  /** Sub-buckets per power of two, as a power of two. */
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Record one duration.
+   *
+   * @param nanos the duration; negative values count as zero
+   */
+  public void record(long nanos) {
+    long v = Math.max(0, nanos);
+    counts.incrementAndGet(bucket(v));
+    total.add(v);
+    max.accumulate(v);
+  }
+
+  /** Values below 8 get a bucket each; above that, 8 buckets per power of two. */
+  private static int bucket(long v) {
+    if (v < SUB_COUNT) {
+      return (int) v;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  /** Largest value that falls in bucket {@code index}. */
+  private static long upperBound(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_COUNT + SUB_BITS - 1;
+    long sub = index % SUB_COUNT;
+    long low = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+    return low + (1L << (exponent - SUB_BITS)) - 1;
+  }
+
+  /**
+   * Number of recorded durations.
+   *
+   * @return the count
+   */
+  public long count() {
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      n += counts.get(i);
+    }
+    return n;
+  }
+
+  /**
+   * Mean recorded duration.
+   *
+   * @return the mean in nanoseconds, or 0 if nothing was recorded
+   */
+  public double mean() {
+    long n = count();
+    return n == 0 ? 0 : (double) total.sum() / n;
+  }
+
+  /**
+   * Longest recorded duration.
+   *
+   * @return the maximum in nanoseconds, or 0 if nothing was recorded
+   */
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * Duration below which the given fraction of recordings fall, rounded up
+   * to the top of its bucket.
+   *
+   * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+   * @return the percentile in nanoseconds, or 0 if nothing was recorded
+   * @throws IllegalArgumentException if fraction is outside [0, 1]
+   */
+  public long percentile(double fraction) {
+    if (!(fraction >= 0 && fraction <= 1)) {
+      throw new IllegalArgumentException("fraction must be between 0 and 1");
+    }
+    long[] snapshot = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /** Forget every recording. Not atomic with respect to concurrent records. */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%.0fns p50=%dns p99=%dns max=%dns",
+        count(), mean(), percentile(0.5), percentile(0.99), max());
+  }
+}
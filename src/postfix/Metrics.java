@@ -0,0 +1,253 @@
+package postfix;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters, latency histograms and JFR events for parsing and
+ * evaluating trees.
+ *
+ * <p>Instrumentation is off by default. While it is off, each instrumented
+ * call costs one read of a volatile flag and nothing is recorded or
+ * allocated. Turn it on with {@link #setEnabled(boolean)}; from then on
+ * every parse and evaluation of an {@code ExpressionTree} or
+ * {@code IntervalTree} updates {@link #EXPRESSION} or {@link #INTERVAL} and,
+ * if a JFR recording has them enabled, emits a {@link ParseEvent} or
+ * {@link EvaluateEvent} carrying the tree's size and depth.
+ *
+ * <p>Starting the JVM with {@code -Dpostfix.metrics.off=true} removes even
+ * the flag read: the switch is a constant, so the JIT drops every
+ * instrumented branch and runs exactly the uninstrumented code, and
+ * {@link #setEnabled(boolean)} has no effect. Benchmarks use this as the
+ * baseline for the cost of the flag.
+ *
+ * <p>Typical use:
+ * <pre>
+ *   Metrics.setEnabled(true);
+ *   ...
+ *   System.out.println(Metrics.EXPRESSION);
+ * </pre>
+ */
+public final class Metrics {
+
+  /** Why a parse was rejected. */
+  public enum FailureReason {
+    /** The input was null, empty or only whitespace. */
+    EMPTY,
+    /** A token was neither an operator nor a valid operand. */
+    INVALID_TOKEN,
+    /** An operator appeared with fewer than two operands available. */
+    INSUFFICIENT_OPERANDS,
+    /** More than one operand was left at the end. */
+    TOO_MANY_OPERANDS
+  }
+
+  /** Metrics for {@code expression.ExpressionTree}. */
+  public static final Metrics EXPRESSION = new Metrics("ExpressionTree");
+
+  /** Metrics for {@code intervals.IntervalTree}. */
+  public static final Metrics INTERVAL = new Metrics("IntervalTree");
+
+  /** False when instrumentation is switched off for the life of the JVM. */
+  private static final boolean AVAILABLE = !Boolean.getBoolean("postfix.metrics.off");
+
+  private static volatile boolean enabled;
+
+  private final String tree;
+  private final LongAdder parses = new LongAdder();
+  private final LongAdder nodesParsed = new LongAdder();
+  private final Map<FailureReason, LongAdder> failures = new EnumMap<>(FailureReason.class);
+  private final LongAdder evaluations = new LongAdder();
+  private final LatencyHistogram parseLatency = new LatencyHistogram();
+  private final LatencyHistogram evaluateLatency = new LatencyHistogram();
+
+  private Metrics(String tree) {
+    this.tree = tree;
+    for (FailureReason reason : FailureReason.values()) {
+      failures.put(reason, new LongAdder());
+    }
+  }
+
+  /**
+   * Turn instrumentation on or off for all trees.
+   *
+   * @param on true to start recording
+   */
+  public static void setEnabled(boolean on) {
+    enabled = on;
+  }
+
+  /**
+   * Check whether instrumentation is on. Instrumented code tests this first
+   * and skips all other work when it is false.
+   *
+   * @return true if recording
+   */
+  public static boolean isEnabled() {
+    return AVAILABLE && enabled;
+  }
+
+  /**
+   * Start timing a parse for JFR. Call only while enabled.
+   *
+   * @return the started event, to pass to {@link #parsed}
+   */
+  public static ParseEvent beginParse() {
+    ParseEvent event = new ParseEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Start timing an evaluation for JFR. Call only while enabled.
+   *
+   * @return the started event, to pass to {@link #evaluated}
+   */
+  public static EvaluateEvent beginEvaluate() {
+    EvaluateEvent event = new EvaluateEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Record a successful parse.
+   *
+   * @param event the event from {@link #beginParse()}
+   * @param startNanos {@link System#nanoTime()} when the parse began
+   * @param length input length in characters
+   * @param nodes nodes in the tree
+   * @param depth height of the tree
+   */
+  public void parsed(ParseEvent event, long startNanos, int length, int nodes, int depth) {
+    parseLatency.record(System.nanoTime() - startNanos);
+    parses.increment();
+    nodesParsed.add(nodes);
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = tree;
+      event.length = length;
+      event.nodes = nodes;
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  /**
+   * Build the exception for a rejected parse, counting it if enabled.
+   *
+   * @param reason why the input was rejected
+   * @param message the exception message
+   * @return the exception for the caller to throw
+   */
+  public IllegalArgumentException parseFailure(FailureReason reason, String message) {
+    if (isEnabled()) {
+      failures.get(reason).increment();
+    }
+    return new IllegalArgumentException(message);
+  }
+
+  /**
+   * Record a completed evaluation.
+   *
+   * @param event the event from {@link #beginEvaluate()}
+   * @param startNanos {@link System#nanoTime()} when the evaluation began
+   * @param nodes nodes in the tree
+   * @param depth height of the tree
+   */
+  public void evaluated(EvaluateEvent event, long startNanos, int nodes, int depth) {
+    evaluateLatency.record(System.nanoTime() - startNanos);
+    evaluations.increment();
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = tree;
+      event.nodes = nodes;
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  /**
+   * Successful parses recorded.
+   *
+   * @return the count
+   */
+  public long parseCount() {
+    return parses.sum();
+  }
+
+  /**
+   * Nodes built by successful parses, summed.
+   *
+   * @return the total
+   */
+  public long nodesParsed() {
+    return nodesParsed.sum();
+  }
+
+  /**
+   * Parses rejected for a given reason.
+   *
+   * @param reason the reason
+   * @return the count
+   */
+  public long parseFailureCount(FailureReason reason) {
+    return failures.get(reason).sum();
+  }
+
+  /**
+   * Completed evaluations recorded.
+   *
+   * @return the count
+   */
+  public long evaluationCount() {
+    return evaluations.sum();
+  }
+
+  /**
+   * Durations of successful parses.
+   *
+   * @return the live histogram
+   */
+  public LatencyHistogram parseLatency() {
+    return parseLatency;
+  }
+
+  /**
+   * Durations of completed evaluations.
+   *
+   * @return the live histogram
+   */
+  public LatencyHistogram evaluateLatency() {
+    return evaluateLatency;
+  }
+
+  /** Zero every counter and histogram. */
+  public void reset() {
+    parses.reset();
+    nodesParsed.reset();
+    evaluations.reset();
+    for (LongAdder count : failures.values()) {
+      count.reset();
+    }
+    parseLatency.reset();
+    evaluateLatency.reset();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(tree)
+        .append(": parses=").append(parseCount())
+        .append(" nodes=").append(nodesParsed())
+        .append(" evaluations=").append(evaluationCount());
+    for (FailureReason reason : FailureReason.values()) {
+      long count = parseFailureCount(reason);
+      if (count > 0) {
+        sb.append(' ').append(reason).append('=').append(count);
+      }
+    }
+    return sb.append("\n  parse    ").append(parseLatency)
+        .append("\n  evaluate ").append(evaluateLatency)
+        .toString();
+  }
+}
@@ -0,0 +1,255 @@
+package postfix;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Thread-safe, size-bounded cache from postfix strings to parsed trees.
+ *
+ * <p>Eviction is segmented LRU. A new entry starts in a probationary
+ * segment and moves to a protected segment, which holds up to 80% of the
+ * capacity, on its second hit. Entries only ever seen once are evicted
+ * first, so a scan over many distinct strings cannot flush the strings that
+ * are requested again and again.
+ *
+ * <p>Keys are spread over independently locked stripes so concurrent
+ * lookups of different strings rarely contend. Parsing happens outside any
+ * lock; if two threads miss on the same string at once, both parse it but
+ * only the first result is kept and returned to both. Strings that fail to
+ * parse are not cached, and the parser's exception is passed through.
+ *
+ * <p>Cached values are shared between callers, so they must be immutable.
+ *
+ * @param <T> the parsed type
+ */
+public final class ParseCache<T> {
+
+  /** Upper bound on lock stripes. */
+  private static final int MAX_STRIPES = 16;
+
+  /** Minimum entries per stripe before the cache is split further. */
+  private static final int MIN_STRIPE_CAPACITY = 64;
+
+  private final Function<String, ? extends T> parser;
+  private final Stripe<T>[] stripes;
+  private final int capacity;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create an empty cache.
+   *
+   * @param capacity maximum number of parsed trees to keep
+   * @param parser parses a string on a miss, e.g. {@code ExpressionTree::new}
+   * @throws IllegalArgumentException if capacity is not positive
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ParseCache(int capacity, Function<String, ? extends T> parser) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.parser = parser;
+    int count = Integer.highestOneBit(
+        Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_CAPACITY)));
+    this.stripes = new Stripe[count];
+    for (int i = 0; i < count; i++) {
+      // share the remainder out so the stripes add up to exactly capacity
+      stripes[i] = new Stripe<>(capacity / count + (i < capacity % count ? 1 : 0));
+    }
+  }
+
+  /**
+   * Return the parsed form of {@code postfix}, parsing and caching it if it
+   * is not already cached.
+   *
+   * @param postfix the string to parse
+   * @return the cached or newly parsed value
+   * @throws RuntimeException whatever the parser throws for a bad string
+   */
+  public T get(String postfix) {
+    if (postfix == null) {
+      return parser.apply(null);
+    }
+    Stripe<T> stripe = stripeFor(postfix);
+    T value = stripe.get(postfix);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    T parsed = parser.apply(postfix);
+    return stripe.putIfAbsent(postfix, parsed, evictions);
+  }
+
+  private Stripe<T> stripeFor(String key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    return stripes[h & (stripes.length - 1)];
+  }
+
+  /**
+   * Maximum number of entries this cache holds.
+   *
+   * @return the capacity
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Number of entries currently cached.
+   *
+   * @return the size
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe<T> stripe : stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  /** Remove every entry. Statistics are kept. */
+  public void clear() {
+    for (Stripe<T> stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  /**
+   * Snapshot of the hit, miss and eviction counts since creation.
+   *
+   * @return the statistics
+   */
+  public Stats stats() {
+    return new Stats(hits.sum(), misses.sum(), evictions.sum());
+  }
+
+  /** Immutable snapshot of cache statistics. */
+  public static final class Stats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    Stats(long hits, long misses, long evictions) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+    }
+
+    /**
+     * Lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long hitCount() {
+      return hits;
+    }
+
+    /**
+     * Lookups that had to parse.
+     *
+     * @return the miss count
+     */
+    public long missCount() {
+      return misses;
+    }
+
+    /**
+     * Entries dropped to stay within capacity.
+     *
+     * @return the eviction count
+     */
+    public long evictionCount() {
+      return evictions;
+    }
+
+    /**
+     * Fraction of lookups that hit, or 1.0 if there were none.
+     *
+     * @return the hit rate
+     */
+    public double hitRate() {
+      long requests = hits + misses;
+      return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+  }
+
+  /**
+   * One lock stripe: a segmented LRU over two access-ordered maps, whose
+   * eldest entries are the least recently used.
+   */
+  private static final class Stripe<T> {
+    private final int capacity;
+    private final int protectedCapacity;
+    private final LinkedHashMap<String, T> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, T> protectedEntries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    Stripe(int capacity) {
+      this.capacity = capacity;
+      this.protectedCapacity = capacity * 4 / 5;
+    }
+
+    synchronized T get(String key) {
+      T value = protectedEntries.get(key);
+      if (value != null) {
+        return value;
+      }
+      value = probation.remove(key);
+      if (value != null) {
+        // second hit: promote, demoting the protected LRU if that segment is full
+        protectedEntries.put(key, value);
+        if (protectedEntries.size() > protectedCapacity) {
+          Map.Entry<String, T> eldest = removeEldest(protectedEntries);
+          probation.put(eldest.getKey(), eldest.getValue());
+        }
+      }
+      return value;
+    }
+
+    synchronized T putIfAbsent(String key, T value, LongAdder evictions) {
+      T existing = protectedEntries.get(key);
+      if (existing == null) {
+        existing = probation.get(key);
+      }
+      if (existing != null) {
+        return existing;
+      }
+      probation.put(key, value);
+      while (probation.size() + protectedEntries.size() > capacity) {
+        removeEldest(probation.isEmpty() ? protectedEntries : probation);
+        evictions.increment();
+      }
+      return value;
+    }
+
+    synchronized int size() {
+      return probation.size() + protectedEntries.size();
+    }
+
+    synchronized void clear() {
+      probation.clear();
+      protectedEntries.clear();
+    }
+
+    private static <T> Map.Entry<String, T> removeEldest(LinkedHashMap<String, T> map) {
+      Iterator<Map.Entry<String, T>> it = map.entrySet().iterator();
+      Map.Entry<String, T> eldest = it.next();
+      Map.Entry<String, T> copy = new AbstractMap.SimpleImmutableEntry<>(eldest);
+      it.remove();
+      return copy;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package postfix;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one successful parse, committed while {@link Metrics} are
+ * enabled and a recording has {@code postfix.Parse} turned on.
+ */
+@Name("postfix.Parse")
+@Label("Postfix Parse")
+@Category("Postfix")
+@Description("Parsing of a postfix string into a tree")
+public final class ParseEvent extends Event {
+  @Label("Tree Type")
+  String tree;
+
+  @Label("Input Length")
+  int length;
+
+  @Label("Nodes")
+  int nodes;
+
+  @Label("Depth")
+  int depth;
+}
@@ -0,0 +1,388 @@
+package postfix;
+
+/**
+ * Whitespace tokenizer for postfix expressions that works on offsets.
+ *
+ * <p>The lexer walks a {@link CharSequence} (a {@code String},
+ * {@code StringBuilder} or {@code CharBuffer}) and exposes each token as a
+ * {@code [start, end)} range instead of allocating a {@code String} per
+ * token. Numbers are parsed in place. Whitespace is any character at or
+ * below U+0020, as for {@link String#trim()}.
+ *
+ * <p>Typical use:
+ * <pre>
+ *   PostfixLexer lex = new PostfixLexer(input);
+ *   while (lex.next()) {
+ *     if (lex.isChar('+')) { ... } else { double v = lex.parseDouble(); ... }
+ *   }
+ * </pre>
+ */
+public final class PostfixLexer {
+
+  /** Exact powers of ten; every one up to 1e22 is representable as a double. */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /** Mantissas with at most this many digits are below 2^53 and exact. */
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private final CharSequence input;
+  private final int limit;
+  private int start;
+  private int end;
+
+  /**
+   * Create a lexer positioned before the first token.
+   *
+   * @param input the text to tokenize
+   */
+  public PostfixLexer(CharSequence input) {
+    this.input = input;
+    this.limit = input.length();
+  }
+
+  /**
+   * Advance to the next token.
+   *
+   * @return false if there are no more tokens
+   */
+  public boolean next() {
+    int i = end;
+    while (i < limit && input.charAt(i) <= ' ') {
+      i++;
+    }
+    if (i == limit) {
+      start = limit;
+      end = limit;
+      return false;
+    }
+    start = i;
+    while (i < limit && input.charAt(i) > ' ') {
+      i++;
+    }
+    end = i;
+    return true;
+  }
+
+  /**
+   * Offset of the first character of the current token.
+   *
+   * @return the start offset, inclusive
+   */
+  public int start() {
+    return start;
+  }
+
+  /**
+   * Offset just past the last character of the current token.
+   *
+   * @return the end offset, exclusive
+   */
+  public int end() {
+    return end;
+  }
+
+  /**
+   * Length of the current token.
+   *
+   * @return the token length
+   */
+  public int length() {
+    return end - start;
+  }
+
+  /**
+   * Character at an absolute offset in the input.
+   *
+   * @param index offset into the input
+   * @return the character
+   */
+  public char charAt(int index) {
+    return input.charAt(index);
+  }
+
+  /**
+   * Check whether the current token is exactly one given character.
+   *
+   * @param c the character
+   * @return true if the token is {@code c} alone
+   */
+  public boolean isChar(char c) {
+    return end - start == 1 && input.charAt(start) == c;
+  }
+
+  /**
+   * Check whether the current token equals a string, without allocating.
+   *
+   * @param s the string to compare with
+   * @return true if the token has the same characters
+   */
+  public boolean tokenEquals(String s) {
+    if (s.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      if (input.charAt(start + i) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether the current token is an identifier: a letter or underscore
+   * followed by letters, digits or underscores.
+   *
+   * @return true if the token is an identifier
+   */
+  public boolean isIdentifier() {
+    char c = input.charAt(start);
+    if (!(Character.isLetter(c) || c == '_')) {
+      return false;
+    }
+    for (int i = start + 1; i < end; i++) {
+      c = input.charAt(i);
+      if (!(Character.isLetterOrDigit(c) || c == '_')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find a character inside the current token.
+   *
+   * @param c the character to find
+   * @param from absolute offset to start searching from
+   * @return the absolute offset of {@code c}, or -1 if the rest of the token
+   *     does not contain it
+   */
+  public int indexOf(char c, int from) {
+    for (int i = Math.max(from, start); i < end; i++) {
+      if (input.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Copy the current token into a new string. Meant for error messages and
+   * names that must outlive the input.
+   *
+   * @return the token text
+   */
+  public String text() {
+    return input.subSequence(start, end).toString();
+  }
+
+  /**
+   * Parse the current token as a double, accepting everything
+   * {@link Double#parseDouble} does.
+   *
+   * <p>Plain decimals with up to 15 significant digits and a decimal exponent
+   * of at most 22 are converted exactly without allocating. Anything else
+   * falls back to {@code Double.parseDouble}.
+   *
+   * @return the value
+   * @throws NumberFormatException if the token is not a number
+   */
+  public double parseDouble() {
+    return parseDouble(input, start, end);
+  }
+
+  /**
+   * Parse a range of characters as a double.
+   *
+   * @param s the characters
+   * @param from start offset, inclusive
+   * @param to end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not a number
+   * @see #parseDouble()
+   */
+  public static double parseDouble(CharSequence s, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int significant = 0;
+    int scale = 0;
+    boolean fraction = false;
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits++;
+        if (mantissa != 0 || c != '0') {
+          if (++significant > MAX_EXACT_DIGITS) {
+            return slowParse(s, from, to);
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (fraction) {
+          scale--;
+        }
+      } else if (c == '.' && !fraction) {
+        fraction = true;
+      } else {
+        break;
+      }
+    }
+    if (digits == 0) {
+      return slowParse(s, from, to);
+    }
+    if (i < to) {
+      char c = s.charAt(i);
+      if (c != 'e' && c != 'E') {
+        return slowParse(s, from, to);
+      }
+      i++;
+      boolean negativeExp = false;
+      if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+        negativeExp = s.charAt(i) == '-';
+        i++;
+      }
+      if (i == to) {
+        return slowParse(s, from, to);
+      }
+      int exp = 0;
+      for (; i < to; i++) {
+        c = s.charAt(i);
+        if (c < '0' || c > '9' || exp > 1000) {
+          return slowParse(s, from, to);
+        }
+        exp = exp * 10 + (c - '0');
+      }
+      scale += negativeExp ? -exp : exp;
+    }
+    double value = mantissa;
+    if (mantissa != 0) {
+      if (scale < -22 || scale > 22) {
+        return slowParse(s, from, to);
+      }
+      value = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+    }
+    return negative ? -value : value;
+  }
+
+  private static double slowParse(CharSequence s, int from, int to) {
+    return Double.parseDouble(s.subSequence(from, to).toString());
+  }
+
+  /**
+   * Parse part of the current token as a decimal int.
+   *
+   * @param from absolute start offset, inclusive
+   * @param to absolute end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not an int
+   * @see #parseInt(CharSequence, int, int)
+   */
+  public int parseInt(int from, int to) {
+    return parseInt(input, from, to);
+  }
+
+  /**
+   * Parse a range of characters as a decimal int, with the same rules as
+   * {@link Integer#parseInt(String)} but without allocating.
+   *
+   * @param s the characters
+   * @param from start offset, inclusive
+   * @param to end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not an int
+   */
+  public static int parseInt(CharSequence s, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    if (i == to) {
+      throw new NumberFormatException("not an integer");
+    }
+    // a long accumulator lets Integer.MIN_VALUE pass the range check
+    long bound = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+    long value = 0;
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException("not an integer");
+      }
+      value = value * 10 + (c - '0');
+      if (value > bound) {
+        throw new NumberFormatException("integer out of range");
+      }
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  /**
+   * Parse part of the current token as a decimal long.
+   *
+   * @param from absolute start offset, inclusive
+   * @param to absolute end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not a long
+   * @see #parseLong(CharSequence, int, int)
+   */
+  public long parseLong(int from, int to) {
+    return parseLong(input, from, to);
+  }
+
+  /**
+   * Parse a range of characters as a decimal long, with the same rules as
+   * {@link Long#parseLong(String)} but without allocating.
+   *
+   * @param s the characters
+   * @param from start offset, inclusive
+   * @param to end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not a long
+   */
+  public static long parseLong(CharSequence s, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    if (i == to) {
+      throw new NumberFormatException("not an integer");
+    }
+    // accumulate negatively, since Long.MIN_VALUE has no positive counterpart
+    long bound = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long value = 0;
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException("not an integer");
+      }
+      if (value < bound / 10 || value * 10 < bound + (c - '0')) {
+        throw new NumberFormatException("integer out of range");
+      }
+      value = value * 10 - (c - '0');
+    }
+    return negative ? value : -value;
+  }
+
+  /**
+   * Parse part of the current token as a double.
+   *
+   * @param from absolute start offset, inclusive
+   * @param to absolute end offset, exclusive
+   * @return the value
+   * @throws NumberFormatException if the range is not a number
+   * @see #parseDouble(CharSequence, int, int)
+   */
+  public double parseDouble(int from, int to) {
+    return parseDouble(input, from, to);
+  }
+}
@@ -0,0 +1,279 @@
+package postfix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes a tree in one of the printed forms as the tree is walked.
+ *
+ * <p>Every tree form, whether made of node objects or stored in arrays,
+ * draws itself through these renderers, so the layouts are defined in one
+ * place. The walk reports each node in order: {@link #leaf} for an operand,
+ * and for an operator {@link #enter} before its first operand,
+ * {@link #between} before each later one and {@link #exit} after the last.
+ * Trees stored in arrays are walked by {@link #render(ArrayTree)}.
+ *
+ * <p>Write failures are rethrown as {@link UncheckedIOException} so they
+ * can cross the walk; callers writing to an {@code Appendable} turn them
+ * back into {@link IOException}.
+ */
+public abstract class TreeRenderer {
+
+  /**
+   * Binary tree stored in arrays and addressed by node index, as read by
+   * {@link #render(ArrayTree)}.
+   */
+  public interface ArrayTree {
+    /**
+     * Index of the root node.
+     *
+     * @return the root
+     */
+    int root();
+
+    /**
+     * Number of levels in the tree; a single leaf has height 1.
+     *
+     * @return the height
+     */
+    int height();
+
+    /**
+     * Operator symbol of a node.
+     *
+     * @param node the node
+     * @return the symbol, or 0 if the node is a leaf
+     */
+    char operator(int node);
+
+    /**
+     * Left operand of an operator.
+     *
+     * @param node the operator
+     * @return its left child
+     */
+    int left(int node);
+
+    /**
+     * Right operand of an operator.
+     *
+     * @param node the operator
+     * @return its right child
+     */
+    int right(int node);
+
+    /**
+     * Printed form of a leaf.
+     *
+     * @param node the leaf
+     * @return its text
+     */
+    CharSequence leafText(int node);
+  }
+
+  private final Appendable out;
+
+  private TreeRenderer(Appendable out) {
+    this.out = out;
+  }
+
+  /**
+   * Fully parenthesized infix, e.g. {@code ( 1.0 + 2.0 )}. Binary
+   * operators only.
+   *
+   * @param out destination
+   * @return the renderer
+   */
+  public static TreeRenderer infix(Appendable out) {
+    return new Infix(out);
+  }
+
+  /**
+   * Scheme syntax, e.g. {@code ( + 1.0 2.0 )}. Binary operators only.
+   *
+   * @param out destination
+   * @return the renderer
+   */
+  public static TreeRenderer scheme(Appendable out) {
+    return new Scheme(out);
+  }
+
+  /**
+   * Text tree drawing, with every operand but the last drawn below an
+   * {@code |} rail. Operators may have any number of operands.
+   *
+   * @param out destination
+   * @return the renderer
+   */
+  public static TreeRenderer textTree(Appendable out) {
+    return new TextTree(out);
+  }
+
+  final TreeRenderer write(CharSequence s) {
+    try {
+      out.append(s);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  final TreeRenderer write(char c) {
+    try {
+      out.append(c);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Write an operand.
+   *
+   * @param text its printed form
+   */
+  public final void leaf(CharSequence text) {
+    write(text);
+  }
+
+  /**
+   * Start an operator, before its first operand.
+   *
+   * @param op the operator symbol
+   * @param arity number of operands that will follow
+   */
+  public abstract void enter(char op, int arity);
+
+  /**
+   * Separate two operands of an operator.
+   *
+   * @param op the operator symbol
+   * @param last true if the operand that follows is the last one
+   */
+  public abstract void between(char op, boolean last);
+
+  /**
+   * Finish an operator, after its last operand.
+   *
+   * @param op the operator symbol
+   */
+  public abstract void exit(char op);
+
+  /**
+   * Walk an array-backed tree in order without recursion. A frame holds a
+   * node index, complemented once its left subtree is done.
+   *
+   * @param tree the tree to write
+   */
+  public final void render(ArrayTree tree) {
+    int[] frames = new int[tree.height()];
+    int top = 0;
+    int node = tree.root();
+    while (true) {
+      while (tree.operator(node) != 0) {
+        enter(tree.operator(node), 2);
+        frames[top++] = node;
+        node = tree.left(node);
+      }
+      leaf(tree.leafText(node));
+
+      while (true) {
+        if (top == 0) {
+          return;
+        }
+        int frame = frames[top - 1];
+        if (frame >= 0) {
+          frames[top - 1] = ~frame;
+          between(tree.operator(frame), true);
+          node = tree.right(frame);
+          break;
+        }
+        exit(tree.operator(~frame));
+        top--;
+      }
+    }
+  }
+
+  private static final class Infix extends TreeRenderer {
+    Infix(Appendable out) {
+      super(out);
+    }
+
+    @Override
+    public void enter(char op, int arity) {
+      write("( ");
+    }
+
+    @Override
+    public void between(char op, boolean last) {
+      write(' ').write(op).write(' ');
+    }
+
+    @Override
+    public void exit(char op) {
+      write(" )");
+    }
+  }
+
+  private static final class Scheme extends TreeRenderer {
+    Scheme(Appendable out) {
+      super(out);
+    }
+
+    @Override
+    public void enter(char op, int arity) {
+      write("( ").write(op).write(' ');
+    }
+
+    @Override
+    public void between(char op, boolean last) {
+      write(' ');
+    }
+
+    @Override
+    public void exit(char op) {
+      write(" )");
+    }
+  }
+
+  /**
+   * Every level adds exactly four characters of prefix, so a single buffer
+   * is grown and truncated instead of building a new prefix string per node.
+   */
+  private static final class TextTree extends TreeRenderer {
+    private final StringBuilder prefix = new StringBuilder();
+
+    TextTree(Appendable out) {
+      super(out);
+    }
+
+    @Override
+    public void enter(char op, int arity) {
+      write(op).write('\n');
+
+      // connector lines from operator to operands
+      write(prefix).write("|\n");
+      write(prefix).write("|\n");
+
+      // first operand; a lone operand is drawn like a last one
+      write(prefix).write("|___");
+      prefix.append(arity == 1 ? "    " : "|   ");
+    }
+
+    @Override
+    public void between(char op, boolean last) {
+      prefix.setLength(prefix.length() - 4);
+      write('\n');
+
+      // spacer before the next operand
+      write(prefix).write("|\n");
+      write(prefix).write("|___");
+      prefix.append(last ? "    " : "|   ");
+    }
+
+    @Override
+    public void exit(char op) {
+      prefix.setLength(prefix.length() - 4);
+    }
+  }
+}
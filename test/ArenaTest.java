@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+
+import expression.ExpressionArena;
+import expression.ExpressionTree;
+import intervals.IntervalArena;
+import intervals.IntervalTree;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that the array-backed trees behave exactly like the object trees.
+ */
+public class ArenaTest {
+
+  private static String randomExpression(Random rnd, int leaves) {
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    while (leaves > 0 || depth > 1) {
+      if (leaves > 0 && (depth < 2 || rnd.nextBoolean())) {
+        sb.append(rnd.nextInt(5) == 0 ? "x" : Double.toString(rnd.nextInt(20) - 5)).append(' ');
+        leaves--;
+        depth++;
+      } else {
+        sb.append("+-*".charAt(rnd.nextInt(3))).append(' ');
+        depth--;
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String randomIntervals(Random rnd, int leaves) {
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    while (leaves > 0 || depth > 1) {
+      if (leaves > 0 && (depth < 2 || rnd.nextBoolean())) {
+        int start = rnd.nextInt(200) - 100;
+        sb.append(start).append(',').append(start + rnd.nextInt(50)).append(' ');
+        leaves--;
+        depth++;
+      } else {
+        sb.append(rnd.nextBoolean() ? "U " : "I ");
+        depth--;
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void assertSameExpression(String postfix) throws IOException {
+    ExpressionTree tree = new ExpressionTree(postfix);
+    ExpressionArena arena = new ExpressionArena(postfix);
+    assertEquals(tree.nodeCount(), arena.nodeCount());
+    assertEquals(tree.infix(), arena.infix());
+    assertEquals(tree.schemeExpression(), arena.schemeExpression());
+    assertEquals(tree.textTree(), arena.textTree());
+    StringBuilder out = new StringBuilder();
+    arena.infix(out);
+    assertEquals(tree.infix(), out.toString());
+    if (!postfix.contains("x")) {
+      assertEquals(Double.doubleToRawLongBits(tree.evaluate()),
+          Double.doubleToRawLongBits(arena.evaluate()));
+    }
+  }
+
+  @Test
+  public void testMatchesExpressionTree() throws IOException {
+    assertSameExpression("5");
+    assertSameExpression("1 2 +");
+    assertSameExpression("1 4 6 - 5 + /");
+    assertSameExpression("x 2 * y /");
+    Random rnd = new Random(7);
+    for (int i = 0; i < 200; i++) {
+      assertSameExpression(randomExpression(rnd, 1 + rnd.nextInt(40)));
+    }
+  }
+
+  @Test
+  public void testMatchesIntervalTree() {
+    String[] fixed = {"1,4", "1,4 2,5 U", "1,2 5,6 I", "1,2 5,6 I 3,4 U", "-4,-1 -2,8 I"};
+    for (String s : fixed) {
+      assertEquals(new IntervalTree(s).evaluate(), new IntervalArena(s).evaluate());
+      assertEquals(new IntervalTree(s).textTree(), new IntervalArena(s).textTree());
+    }
+    Random rnd = new Random(11);
+    for (int i = 0; i < 200; i++) {
+      String s = randomIntervals(rnd, 1 + rnd.nextInt(40));
+      IntervalTree tree = new IntervalTree(s);
+      IntervalArena arena = new IntervalArena(s);
+      assertEquals(s, tree.evaluate(), arena.evaluate());
+      assertEquals(s, tree.textTree(), arena.textTree());
+    }
+  }
+
+  @Test
+  public void testDeepTrees() {
+    StringBuilder expr = new StringBuilder("1");
+    StringBuilder intervals = new StringBuilder("0,1");
+    for (int i = 0; i < 200_000; i++) {
+      expr.append(" 1 +");
+      intervals.append(' ').append(i).append(',').append(i + 1).append(" U");
+    }
+    assertEquals(200_001.0, new ExpressionArena(expr.toString()).evaluate(), 0.0);
+    assertEquals("0,200000", new IntervalArena(intervals.toString()).evaluate().toString());
+    assertEquals(800_001, new ExpressionArena(expr.toString()).infix().split(" ").length);
+  }
+
+  @Test
+  public void testPayloadBytes() {
+    assertEquals(3 * 17, new ExpressionArena("1 2 +").payloadBytes());
+    assertEquals(3 * 17, new IntervalArena("1,2 3,4 I").payloadBytes());
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void divideByZero() {
+    new ExpressionArena("1 0 /").evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unboundVariable() {
+    new ExpressionArena("x 1 +").evaluate();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badExpressionToken() {
+    new ExpressionArena("1 2a +");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void insufficientOperands() {
+    new ExpressionArena("1 +");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooManyOperands() {
+    new IntervalArena("1,2 3,4");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reversedInterval() {
+    new IntervalArena("5,1 2,3 U");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyIntervals() {
+    new IntervalArena("   ");
+  }
+}
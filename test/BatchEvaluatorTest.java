@@ -0,0 +1,93 @@
+import static org.junit.Assert.assertEquals;
+
+import batch.BatchEvaluator;
+import batch.BatchEvaluator.Mode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for the file-to-file batch evaluator.
+ */
+public class BatchEvaluatorTest {
+
+  /** Run over {@code input} and return {output, errors}. */
+  private static String[] run(BatchEvaluator evaluator, String input, long expectedFailures)
+      throws IOException {
+    Path in = Files.createTempFile("batch", ".in");
+    Path out = Files.createTempFile("batch", ".out");
+    Path err = Files.createTempFile("batch", ".err");
+    try {
+      Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+      BatchEvaluator.Summary summary = evaluator.run(in, out, err);
+      assertEquals(expectedFailures, summary.failures());
+      return new String[] {
+          new String(Files.readAllBytes(out), StandardCharsets.UTF_8),
+          new String(Files.readAllBytes(err), StandardCharsets.UTF_8)};
+    } finally {
+      Files.delete(in);
+      Files.delete(out);
+      Files.delete(err);
+    }
+  }
+
+  @Test
+  public void testExpressions() throws IOException {
+    String[] result = run(new BatchEvaluator(Mode.EXPRESSION),
+        "1 2 +\n3 4 *\r\n\n1 0 /\n1 +\nx 1 +\n5", 3);
+    assertEquals("3.0\n12.0\n\n\n\n\n5.0\n", result[0]);
+    assertEquals("4: division by zero\n"
+        + "5: insufficient operands for operator: +\n"
+        + "6: unbound variable: x\n", result[1]);
+  }
+
+  @Test
+  public void testIntervals() throws IOException {
+    String[] result = run(new BatchEvaluator(Mode.INTERVAL), "1,4 2,5 U\n1,2 5,6 I\n3,1\n", 1);
+    assertEquals("1,5\n-2147483648,-2147483648\n\n", result[0]);
+    assertEquals("3: Invalid interval: 3,1\n", result[1]);
+  }
+
+  @Test
+  public void testOrderAcrossManyBlocks() throws IOException {
+    StringBuilder input = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    List<String> errors = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      if (i % 997 == 0) {
+        input.append(i).append(" 0 /\n");
+        expected.append('\n');
+        errors.add((i + 1) + ": division by zero\n");
+      } else {
+        input.append(i).append(" 2 *\n");
+        expected.append(2.0 * i).append('\n');
+      }
+    }
+    // one line longer than a block
+    input.append("1");
+    for (int i = 0; i < 100; i++) {
+      input.append(" 1 +");
+    }
+    expected.append("101.0\n");
+    String[] result = run(new BatchEvaluator(Mode.EXPRESSION, 4, 64), input.toString(),
+        errors.size());
+    assertEquals(expected.toString(), result[0]);
+    assertEquals(String.join("", errors), result[1]);
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    String[] result = run(new BatchEvaluator(Mode.EXPRESSION), "", 0);
+    assertEquals("", result[0]);
+    assertEquals("", result[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badThreads() {
+    new BatchEvaluator(Mode.EXPRESSION, 0, 1024);
+  }
+}
@@ -0,0 +1,165 @@
+import static org.junit.Assert.assertEquals;
+
+import expression.ExpressionTree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for the binary encoding of ExpressionTree.
+ */
+public class BinaryFormatTest {
+
+  private static ExpressionTree roundTrip(ExpressionTree tree) {
+    ByteBuffer in = ByteBuffer.wrap(tree.toBytes());
+    ExpressionTree copy = ExpressionTree.fromBytes(in);
+    assertEquals(0, in.remaining());
+    return copy;
+  }
+
+  private static void assertSameBits(double expected, double actual) {
+    assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    String[] exprs = {
+        "42", "1 2 +", "1 4 6 - 5 + /", "-0 0.1 +", "NaN 1e-300 *", "0.1 0.2 + 3 /",
+        "1.7976931348623157E308 -Infinity -",
+    };
+    for (String s : exprs) {
+      ExpressionTree tree = new ExpressionTree(s);
+      ExpressionTree copy = roundTrip(tree);
+      assertSameBits(tree.evaluate(), copy.evaluate());
+      assertEquals(tree.infix(), copy.infix());
+      assertEquals(tree.textTree(), copy.textTree());
+      assertEquals(tree.nodeCount(), copy.nodeCount());
+    }
+  }
+
+  @Test
+  public void testVariables() {
+    ExpressionTree tree = new ExpressionTree("x y * x + gr\u00f6\u00dfe -");
+    ExpressionTree copy = roundTrip(tree);
+    assertEquals(tree.schemeExpression(), copy.schemeExpression());
+    double[] xs = {1, 2, 3};
+    Map<String, double[]> columns = Map.of("x", xs, "y", xs, "gr\u00f6\u00dfe", xs);
+    double[] expected = new double[3];
+    double[] actual = new double[3];
+    tree.evaluate(columns, expected);
+    copy.evaluate(columns, actual);
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+  }
+
+  @Test
+  public void testOptimizedKeepsSharing() {
+    ExpressionTree tree = new ExpressionTree("x y + x y + * x y + 2 3 * + /").optimize();
+    ExpressionTree copy = roundTrip(tree);
+    assertEquals(tree.nodeCount(), copy.nodeCount());
+    assertEquals(tree.toProgram().maxStack(), copy.toProgram().maxStack());
+    double[] out = new double[1];
+    copy.evaluate(Map.of("x", new double[] {1}, "y", new double[] {2}), out);
+    // (3 * 3) / (3 + 6)
+    assertEquals(1.0, out[0], 0.0);
+  }
+
+  @Test
+  public void testDeepTree() {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < 200_000; i++) {
+      sb.append(" 1 +");
+    }
+    assertEquals(200_001.0, roundTrip(new ExpressionTree(sb.toString())).evaluate(), 0.0);
+  }
+
+  @Test
+  public void testBufferByteOrderIgnored() {
+    ExpressionTree tree = new ExpressionTree("1.5 2.25 *");
+    ByteBuffer in = ByteBuffer.wrap(tree.toBytes()).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(3.375, ExpressionTree.fromBytes(in).evaluate(), 0.0);
+    assertEquals(ByteOrder.LITTLE_ENDIAN, in.order());
+  }
+
+  @Test
+  public void testMappedLibrary() throws IOException {
+    Random random = new Random(3);
+    ExpressionTree[] library = new ExpressionTree[1000];
+    Path file = Files.createTempFile("library", ".bin");
+    try {
+      try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        for (int i = 0; i < library.length; i++) {
+          library[i] = new ExpressionTree(random.nextDouble() + " " + i + " * 3 -");
+          out.write(ByteBuffer.wrap(library[i].toBytes()));
+        }
+      }
+      try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+        MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        int i = 0;
+        while (mapped.hasRemaining()) {
+          assertSameBits(library[i++].evaluate(), ExpressionTree.fromBytes(mapped).evaluate());
+        }
+        assertEquals(library.length, i);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badMagic() {
+    ExpressionTree.fromBytes(ByteBuffer.wrap("1 2 +".getBytes()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void newerVersion() {
+    byte[] bytes = new ExpressionTree("1").toBytes();
+    bytes[4]++;
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncated() {
+    byte[] bytes = new ExpressionTree("1 2 +").toBytes();
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void countLargerThanInput() {
+    // a valid header claiming two billion registers, followed by nothing
+    byte[] bytes = {'E', 'X', 'P', 'R', 1, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+        (byte) 0xff, 0x07, 1};
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nodeCountMismatch() {
+    byte[] bytes = new ExpressionTree("1 2 +").toBytes();
+    bytes[5]++;
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sharedNumber() {
+    // the first record is the number 1; only operators may be shared
+    byte[] bytes = new ExpressionTree("1 2 +").toBytes();
+    bytes[8] |= (byte) 0x80;
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void registerWrittenTwice() {
+    // (x + x) * (x + x) with both sums shared into register 0
+    byte[] bytes = {'E', 'X', 'P', 'R', 1, 4, 1, 7, 5, 1, 'x', 6, 0, (byte) 0x81, 0,
+        6, 0, 6, 0, (byte) 0x81, 0, 3};
+    ExpressionTree.fromBytes(ByteBuffer.wrap(bytes));
+  }
+}
@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertEquals;
+
+import expression.ExpressionTree;
+import expression.PostfixProgram;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionTree.compile().
+ */
+public class BytecodeCompilerTest {
+
+  private static final double DELTA = 0.0001;
+
+  private static void assertSameResult(String postfix) {
+    ExpressionTree tree = new ExpressionTree(postfix);
+    DoubleSupplier f = tree.compile();
+    assertEquals(postfix, Double.doubleToRawLongBits(tree.evaluate()),
+        Double.doubleToRawLongBits(f.getAsDouble()));
+  }
+
+  @Test
+  public void testSingleValue() {
+    assertEquals(42.0, new ExpressionTree("42").compile().getAsDouble(), DELTA);
+  }
+
+  @Test
+  public void testOperators() {
+    assertSameResult("1 2 +");
+    assertSameResult("5 3 -");
+    assertSameResult("4 5 *");
+    assertSameResult("10 3 /");
+    assertSameResult("1 4 6 - 5 + /");
+    assertSameResult("1.2 5.4 + -4.5 *");
+  }
+
+  @Test
+  public void testSpecialConstants() {
+    // 0.0 and 1.0 use dconst; -0.0 must keep its sign bit
+    assertSameResult("0 1 +");
+    assertSameResult("-0.0 0 *");
+    assertEquals(Double.doubleToRawLongBits(-0.0),
+        Double.doubleToRawLongBits(new ExpressionTree("-0.0").compile().getAsDouble()));
+    assertSameResult("NaN 1 +");
+    assertSameResult("Infinity 2 *");
+  }
+
+  @Test
+  public void testRepeatedConstants() {
+    StringBuilder sb = new StringBuilder("2.5");
+    for (int i = 0; i < 500; i++) {
+      sb.append(" 2.5 * 0.5 *");
+    }
+    assertSameResult(sb.toString());
+  }
+
+  @Test
+  public void testCallableRepeatedly() {
+    DoubleSupplier f = new ExpressionTree("1 2 + 3 4 + *").compile();
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(21.0, f.getAsDouble(), DELTA);
+    }
+  }
+
+  @Test
+  public void testTooLargeForOneMethod() {
+    // over 64KB of bytecode falls back to the interpreted program
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < 100000; i++) {
+      sb.append(' ').append(i + 2).append(" +");
+    }
+    assertSameResult(sb.toString());
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void divByZero() {
+    new ExpressionTree("10 5 5 - /").compile().getAsDouble();
+  }
+
+  @Test
+  public void testSharedRegisters() {
+    // registers become locals; enough of them to need wide loads and stores
+    StringBuilder sb = new StringBuilder("0");
+    for (int i = 1; i <= 200; i++) {
+      sb.append(' ').append(i).append(" 0 / ").append(i).append(" 0 / + +");
+    }
+    ExpressionTree opt = new ExpressionTree(sb.toString()).optimize();
+    DoubleSupplier f = opt.compile();
+    try {
+      f.getAsDouble();
+      assertEquals("should throw", true, false);
+    } catch (ArithmeticException e) {
+      assertEquals("division by zero", e.getMessage());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void variablesNotCompiled() {
+    new ExpressionTree("x 1 +").compile();
+  }
+
+  @Test
+  public void testFunctionReadsVariablesPerCall() {
+    ExpressionTree tree = new ExpressionTree("x 2 * y - x /");
+    ToDoubleFunction<double[]> f = tree.compileFunction();
+    assertEquals(1.0, f.applyAsDouble(new double[] {1, 1}), DELTA);
+    assertEquals(1.5, f.applyAsDouble(new double[] {2, 1}), DELTA);
+    assertEquals(-1.0, f.applyAsDouble(new double[] {-1, -3}), DELTA);
+  }
+
+  @Test
+  public void testFunctionManyVariablesAndRegisters() {
+    // enough slots to need bipush and sipush, and shared subexpressions in registers
+    StringBuilder sb = new StringBuilder("v0");
+    for (int i = 1; i < 300; i++) {
+      sb.append(" v").append(i).append(" v0 v1 * + +");
+    }
+    ExpressionTree tree = new ExpressionTree(sb.toString()).optimize();
+    PostfixProgram program = tree.toProgram();
+    ToDoubleFunction<double[]> f = tree.compileFunction();
+    Random rnd = new Random(3);
+    double[] values = new double[program.variables().size()];
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = rnd.nextDouble();
+      }
+      assertEquals(Double.doubleToRawLongBits(program.evaluate(values, program.newStack())),
+          Double.doubleToRawLongBits(f.applyAsDouble(values)));
+    }
+  }
+
+  @Test(expected = ArrayIndexOutOfBoundsException.class)
+  public void functionValuesTooShort() {
+    new ExpressionTree("x y +").compileFunction().applyAsDouble(new double[1]);
+  }
+}
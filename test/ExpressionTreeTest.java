@@ -1,7 +1,15 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import expression.Expression;
 import expression.ExpressionTree;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 
 /**
@@ -165,6 +173,332 @@ public class ExpressionTreeTest {
     assertEquals(120.0, e.evaluate(), DELTA);
   }
 
+  // Deep trees
+
+  /** Build "1 1 + 1 + ... 1 +" with the given number of operators. */
+  private static String leftChain(int ops) {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < ops; i++) {
+      sb.append(" 1 +");
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testDeepLeftChain() {
+    // far deeper than the Java stack can recurse
+    Expression e = new ExpressionTree(leftChain(200000));
+    assertEquals(200001.0, e.evaluate(), DELTA);
+
+    String infix = e.infix();
+    assertEquals(true, infix.startsWith("( ( ( ( "));
+    assertEquals(true, infix.endsWith(" ) + 1.0 ) + 1.0 )"));
+
+    String scheme = e.schemeExpression();
+    assertEquals(true, scheme.startsWith("( + ( + ( + "));
+    assertEquals(true, scheme.endsWith(" 1.0 ) 1.0 ) 1.0 )"));
+  }
+
+  @Test
+  public void testDeepRightChain() {
+    // 1 - (1 - (1 - ...)) alternates between 0 and 1
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i <= 100000; i++) {
+      sb.append("1 ");
+    }
+    for (int i = 0; i < 100000; i++) {
+      sb.append("- ");
+    }
+    Expression e = new ExpressionTree(sb.toString());
+    assertEquals(1.0, e.evaluate(), DELTA);
+    assertEquals(true, e.infix().endsWith("1.0 - 1.0 )" + " )".repeat(99999)));
+  }
+
+  @Test
+  public void testDeepTextTree() {
+    Expression e = new ExpressionTree(leftChain(2000));
+    String tree = e.textTree();
+    assertEquals(true, tree.startsWith("+\n|\n|\n|___+\n|   |\n"));
+    assertEquals(true, tree.endsWith("\n|\n|___1.0"));
+  }
+
+  // Streaming output
+
+  @Test
+  public void testAppendableMatchesStrings() throws IOException {
+    String[] exprs = {"5", "1 4 6 - 5 + /", "x 2.5 * y -", "-0 1e20 +"};
+    for (String s : exprs) {
+      Expression e = new ExpressionTree(s);
+      StringBuilder infix = new StringBuilder("> ");
+      e.infix(infix);
+      assertEquals("> " + e.infix(), infix.toString());
+      StringWriter scheme = new StringWriter();
+      e.schemeExpression(scheme);
+      assertEquals(e.schemeExpression(), scheme.toString());
+      StringWriter tree = new StringWriter();
+      e.textTree(tree);
+      assertEquals(e.textTree(), tree.toString());
+    }
+  }
+
+  @Test
+  public void testWholeNumberFormats() {
+    assertEquals("( -0.0 + 100000000000000000000.0 )", new ExpressionTree("-0 1e20 +").infix());
+    assertEquals("( 9007199254740991.0 - -3.0 )",
+        new ExpressionTree("9007199254740991 -3 -").infix());
+    assertEquals("( 9007199254740992.0 * 1152921504606846980.0 )",
+        new ExpressionTree("9007199254740992 1152921504606846976 *").infix());
+  }
+
+  @Test
+  public void testDeepStreaming() throws IOException {
+    Expression e = new ExpressionTree(leftChain(2000));
+    StringWriter out = new StringWriter();
+    e.textTree(out);
+    assertEquals(e.textTree(), out.toString());
+  }
+
+  @Test(expected = IOException.class)
+  public void streamingWriteFailure() throws IOException {
+    Writer closed = new Writer() {
+      @Override
+      public void write(char[] buf, int off, int len) throws IOException {
+        throw new IOException("closed");
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    new ExpressionTree("1 2 +").infix(closed);
+  }
+
+  // Parallel evaluation
+
+  /** Balanced random tree over + - * / with operands in [1, 2). */
+  private static String balanced(int leaves, Random rnd) {
+    if (leaves == 1) {
+      return Double.toString(1 + rnd.nextDouble());
+    }
+    int half = leaves / 2;
+    return balanced(half, rnd) + " " + balanced(leaves - half, rnd) + " "
+        + "+-*/".charAt(rnd.nextInt(4));
+  }
+
+  @Test
+  public void testParallelBitIdentical() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int leaves : new int[] {10, 40_000, 100_003}) {
+        ExpressionTree e = new ExpressionTree(balanced(leaves, new Random(leaves)));
+        assertEquals(Double.doubleToRawLongBits(e.evaluate()),
+            Double.doubleToRawLongBits(e.evaluateParallel(pool)));
+      }
+      // lopsided: every operator has one tiny child
+      ExpressionTree chain = new ExpressionTree(leftChain(200_000));
+      assertEquals(200_001.0, chain.evaluateParallel(pool), 0.0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelReportsFirstError() {
+    // the left half divides by zero, the right half has an unbound variable
+    String left = balanced(30_000, new Random(1)) + " 0 /";
+    String right = balanced(30_000, new Random(2)) + " x +";
+    ExpressionTree e = new ExpressionTree(left + " " + right + " +");
+    try {
+      e.evaluateParallel();
+      fail("expected division by zero");
+    } catch (ArithmeticException expected) {
+      // same as sequential evaluation
+    }
+  }
+
+  // Variables and batch evaluation
+
+  @Test
+  public void testVariableFormats() {
+    Expression e = new ExpressionTree("x 2 * y_1 +");
+    assertEquals("( ( x * 2.0 ) + y_1 )", e.infix());
+    assertEquals("( + ( * x 2.0 ) y_1 )", e.schemeExpression());
+    assertEquals("+\n|\n|\n|___*\n|   |\n|   |\n|   |___x\n|   |\n|   |___2.0\n|\n|___y_1",
+        e.textTree());
+  }
+
+  @Test
+  public void testSpecialNumbersAreNotVariables() {
+    Expression e = new ExpressionTree("Infinity NaN +");
+    assertEquals(true, Double.isNaN(e.evaluate()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void evaluateUnboundVariable() {
+    new ExpressionTree("x 1 +").evaluate();
+  }
+
+  @Test
+  public void testBatchEvaluation() {
+    // enough rows to span several blocks plus a partial one
+    int rows = 5000;
+    double[] x = new double[rows];
+    double[] y = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      x[i] = i;
+      y[i] = i % 7 + 1;
+    }
+    Map<String, double[]> columns = new HashMap<>();
+    columns.put("x", x);
+    columns.put("y", y);
+
+    ExpressionTree tree = new ExpressionTree("x 2 * y / x y - +");
+    double[] out = new double[rows];
+    tree.evaluate(columns, out);
+    for (int i = 0; i < rows; i++) {
+      double expected = (x[i] * 2.0) / y[i] + (x[i] - y[i]);
+      assertEquals(expected, out[i], 0.0);
+    }
+  }
+
+  @Test
+  public void testBatchRepeatedVariable() {
+    Map<String, double[]> columns = new HashMap<>();
+    columns.put("x", new double[] {1, 2, 3});
+    double[] out = new double[3];
+    new ExpressionTree("x x * x +").evaluate(columns, out);
+    assertEquals(2.0, out[0], DELTA);
+    assertEquals(6.0, out[1], DELTA);
+    assertEquals(12.0, out[2], DELTA);
+  }
+
+  @Test
+  public void testBatchConstantOnly() {
+    double[] out = new double[3];
+    new ExpressionTree("1 2 +").evaluate(new HashMap<>(), out);
+    assertEquals(3.0, out[2], DELTA);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchMissingColumn() {
+    new ExpressionTree("x y +").evaluate(Map.of("x", new double[2]), new double[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchShortColumn() {
+    new ExpressionTree("x 1 +").evaluate(Map.of("x", new double[2]), new double[3]);
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void batchDivByZero() {
+    new ExpressionTree("1 x /").evaluate(Map.of("x", new double[] {1, 0}), new double[2]);
+  }
+
+  // Optimization
+
+  @Test
+  public void testFoldConstants() {
+    ExpressionTree tree = new ExpressionTree("1 2 + 3 4 * -");
+    assertEquals(7, tree.nodeCount());
+    ExpressionTree opt = tree.optimize();
+    assertEquals(1, opt.nodeCount());
+    assertEquals("-9.0", opt.infix());
+    assertEquals(tree.evaluate(), opt.evaluate(), 0.0);
+  }
+
+  @Test
+  public void testFoldKeepsVariables() {
+    ExpressionTree opt = new ExpressionTree("x 2 3 * +").optimize();
+    assertEquals("( x + 6.0 )", opt.infix());
+    assertEquals(3, opt.nodeCount());
+  }
+
+  @Test
+  public void testFoldExactArithmetic() {
+    // 0.1 + 0.2 is not 0.3 in binary; folding must give the same bits
+    ExpressionTree tree = new ExpressionTree("0.1 0.2 + 3 / -0.0 *");
+    assertEquals(Double.doubleToRawLongBits(tree.evaluate()),
+        Double.doubleToRawLongBits(tree.optimize().evaluate()));
+  }
+
+  @Test
+  public void testCommonSubexpressions() {
+    // (x + 1) * (x + 1) + (x + 1)
+    ExpressionTree tree = new ExpressionTree("x 1 + x 1 + * x 1 + +");
+    assertEquals(11, tree.nodeCount());
+    ExpressionTree opt = tree.optimize();
+    // x, 1, (x + 1), *, +
+    assertEquals(5, opt.nodeCount());
+    assertEquals(tree.infix(), opt.infix());
+  }
+
+  /** Batch-evaluate with x = 1, 1.001, 1.002, ... */
+  private static double[] evaluateRows(ExpressionTree tree, int rows) {
+    double[] x = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      x[i] = 1 + i / 1000.0;
+    }
+    double[] out = new double[rows];
+    tree.evaluate(Map.of("x", x), out);
+    return out;
+  }
+
+  @Test
+  public void testSharedBatchEvaluation() {
+    ExpressionTree tree = new ExpressionTree("x 1 + x 1 + * x 1 + +");
+    ExpressionTree opt = tree.optimize();
+    double[] expected = evaluateRows(tree, 3000);
+    double[] actual = evaluateRows(opt, 3000);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(Double.doubleToRawLongBits(expected[i]), Double.doubleToRawLongBits(actual[i]));
+    }
+    // x 1 + STORE, FETCH *, FETCH + : two stack slots and one register
+    assertEquals(3, opt.toProgram().maxStack());
+  }
+
+  @Test
+  public void testRepeatedDoubling() {
+    // s(k) = s(k-1) s(k-1) *, so 2^12 leaves collapse to 13 shared nodes
+    String s = "x";
+    for (int k = 0; k < 12; k++) {
+      s = s + " " + s + " *";
+    }
+    ExpressionTree tree = new ExpressionTree(s);
+    ExpressionTree opt = tree.optimize();
+    assertEquals(8191, tree.nodeCount());
+    assertEquals(13, opt.nodeCount());
+    double[] expected = evaluateRows(tree, 100);
+    double[] actual = evaluateRows(opt, 100);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i], 0.0);
+    }
+  }
+
+  @Test
+  public void testSharedDivByZero() {
+    // the zero divisor blocks folding, so the shared subtree survives
+    String shared = "2 0 / 3 +";
+    ExpressionTree opt = new ExpressionTree(shared + " " + shared + " *").optimize();
+    assertEquals(6, opt.nodeCount());
+    try {
+      opt.evaluate();
+      assertEquals("should throw", true, false);
+    } catch (ArithmeticException e) {
+      assertEquals("division by zero", e.getMessage());
+    }
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void optimizeKeepsDivByZero() {
+    ExpressionTree opt = new ExpressionTree("10 5 5 - /").optimize();
+    assertEquals(3, opt.nodeCount());
+    opt.evaluate();
+  }
+
   // Error handling tests
 
   @Test(expected = ArithmeticException.class)
@@ -197,7 +531,7 @@ public class ExpressionTreeTest {
 
   @Test(expected = IllegalArgumentException.class)
   public void badToken() {
-    new ExpressionTree("1 a +");
+    new ExpressionTree("1 2a +");  // neither a number nor a variable name
   }
 
   @Test(expected = IllegalArgumentException.class)
@@ -0,0 +1,109 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import intervals.Interval;
+import intervals.IntervalIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for the augmented interval index.
+ */
+public class IntervalIndexTest {
+
+  private static List<String> query(IntervalIndex index, int from, int to) {
+    List<String> found = new ArrayList<>();
+    int count = index.overlapping(from, to, (s, e) -> found.add(s + "," + e));
+    assertEquals(found.size(), count);
+    return found;
+  }
+
+  @Test
+  public void testOverlapAndStabbing() {
+    IntervalIndex index = new IntervalIndex();
+    index.insert(1, 5);
+    index.insert(3, 4);
+    index.insert(7, 9);
+    index.insert(new Interval(10, 20));
+    assertEquals("[1,5, 3,4]", query(index, 4, 6).toString());
+    assertEquals("[7,9, 10,20]", query(index, 9, 10).toString());
+    assertEquals("[]", query(index, 6, 6).toString());
+    List<String> stabbed = new ArrayList<>();
+    assertEquals(2, index.stabbing(3, (s, e) -> stabbed.add(s + "," + e)));
+    assertEquals("[1,5, 3,4]", stabbed.toString());
+    assertEquals(0, index.countOverlapping(5, 4));
+  }
+
+  @Test
+  public void testDuplicatesAndDelete() {
+    IntervalIndex index = new IntervalIndex();
+    index.insert(2, 3);
+    index.insert(2, 3);
+    index.insert(1, 8);
+    assertEquals(3, index.size());
+    assertTrue(index.delete(2, 3));
+    assertEquals("[1,8, 2,3]", query(index, 3, 3).toString());
+    assertTrue(index.delete(new Interval(2, 3)));
+    assertFalse(index.delete(2, 3));
+    assertEquals(1, index.size());
+    assertEquals("[1,8]", query(index, Integer.MIN_VALUE, Integer.MAX_VALUE).toString());
+  }
+
+  @Test
+  public void testAgainstLinearScan() {
+    Random rnd = new Random(17);
+    IntervalIndex index = new IntervalIndex(4);
+    List<int[]> all = new ArrayList<>();
+    for (int round = 0; round < 20_000; round++) {
+      int op = rnd.nextInt(10);
+      if (op < 5 || all.isEmpty()) {
+        int s = rnd.nextInt(1000);
+        int e = s + rnd.nextInt(50);
+        index.insert(s, e);
+        all.add(new int[] {s, e});
+      } else if (op < 7) {
+        int[] victim = all.remove(rnd.nextInt(all.size()));
+        assertTrue(index.delete(victim[0], victim[1]));
+      } else {
+        int from = rnd.nextInt(1100) - 50;
+        int to = from + rnd.nextInt(30);
+        long expected = all.stream().filter(iv -> iv[0] <= to && iv[1] >= from).count();
+        int[] previous = {Integer.MIN_VALUE};
+        int count = index.overlapping(from, to, (s, e) -> {
+          assertTrue(s <= to && e >= from);
+          assertTrue(s >= previous[0]);
+          previous[0] = s;
+        });
+        assertEquals(expected, count);
+      }
+      assertEquals(all.size(), index.size());
+    }
+  }
+
+  @Test
+  public void testSortedInsertionStaysBalanced() {
+    // an unbalanced tree would recurse a million deep and overflow the stack
+    IntervalIndex index = new IntervalIndex();
+    int n = 1 << 20;
+    for (int i = 0; i < n; i++) {
+      index.insert(i, i + 2);
+    }
+    assertEquals(3, index.countOverlapping(500_000, 500_000));
+    for (int i = 0; i < n; i += 2) {
+      assertTrue(index.delete(i, i + 2));
+    }
+    assertEquals(n / 2, index.size());
+    assertEquals(2, index.countOverlapping(500_000, 500_001));
+    int[] total = {0};
+    index.forEach((s, e) -> total[0]++);
+    assertEquals(n / 2, total[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reversedInterval() {
+    new IntervalIndex().insert(5, 1);
+  }
+}
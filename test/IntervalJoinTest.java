@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import intervals.Interval;
+import intervals.IntervalJoin;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Tests for the sort-merge interval join.
+ */
+public class IntervalJoinTest {
+
+  /** Random intervals, columns {starts, ends}. */
+  private static int[][] random(Random rnd, int n, int range, int maxLength) {
+    int[] starts = new int[n];
+    int[] ends = new int[n];
+    for (int i = 0; i < n; i++) {
+      starts[i] = rnd.nextInt(range);
+      ends[i] = starts[i] + rnd.nextInt(maxLength);
+    }
+    return new int[][] {starts, ends};
+  }
+
+  /** Pairs encoded as left * 2^32 + right, sorted. */
+  private static long[] sorted(long[] pairs, int n) {
+    long[] result = Arrays.copyOf(pairs, n);
+    Arrays.sort(result);
+    return result;
+  }
+
+  @Test
+  public void testSmallJoin() {
+    List<Interval> reservations = List.of(new Interval(1, 3), new Interval(5, 8),
+        new Interval(10, 10));
+    List<Interval> windows = List.of(new Interval(3, 5), new Interval(9, 20));
+    List<String> pairs = new ArrayList<>();
+    long count = IntervalJoin.join(reservations, windows, (l, r) -> pairs.add(l + "-" + r));
+    assertEquals(3, count);
+    pairs.sort(null);
+    assertEquals("[0-0, 1-0, 2-1]", pairs.toString());
+  }
+
+  @Test
+  public void testMatchesNestedLoops() {
+    Random rnd = new Random(3);
+    for (int round = 0; round < 50; round++) {
+      int[][] left = random(rnd, rnd.nextInt(60), 200, 1 + rnd.nextInt(40));
+      int[][] right = random(rnd, rnd.nextInt(60), 200, 1 + rnd.nextInt(40));
+      List<Long> expected = new ArrayList<>();
+      for (int i = 0; i < left[0].length; i++) {
+        for (int j = 0; j < right[0].length; j++) {
+          if (left[0][i] <= right[1][j] && right[0][j] <= left[1][i]) {
+            expected.add(((long) i << 32) | j);
+          }
+        }
+      }
+      long[] found = new long[expected.size() + 1];
+      int[] n = {0};
+      long count = IntervalJoin.join(left[0], left[1], right[0], right[1],
+          (l, r) -> found[n[0]++] = ((long) l << 32) | r);
+      assertEquals(expected.size(), count);
+      long[] want = expected.stream().mapToLong(Long::longValue).sorted().toArray();
+      assertTrue(Arrays.equals(want, sorted(found, n[0])));
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    Random rnd = new Random(5);
+    // long intervals on the right span many partitions
+    int[][] left = random(rnd, 100_000, 10_000_000, 100);
+    int[][] right = random(rnd, 50_000, 10_000_000, 2_000);
+    long[] sequential = new long[1 << 21];
+    int[] n = {0};
+    long count = IntervalJoin.join(left[0], left[1], right[0], right[1],
+        (l, r) -> sequential[n[0]++] = ((long) l << 32) | r);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      long[] parallel = new long[sequential.length];
+      AtomicInteger m = new AtomicInteger();
+      long parallelCount = IntervalJoin.parallelJoin(left[0], left[1], right[0], right[1],
+          (l, r) -> parallel[m.getAndIncrement()] = ((long) l << 32) | r, pool);
+      assertEquals(count, parallelCount);
+      assertEquals(n[0], m.get());
+      assertTrue(Arrays.equals(sorted(sequential, n[0]), sorted(parallel, m.get())));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelWithRepeatedStarts() {
+    // every start the same, so all quantile boundaries coincide
+    int n = 70_000;
+    int[] starts = new int[n];
+    int[] ends = new int[n];
+    Arrays.fill(ends, 5);
+    AtomicInteger pairs = new AtomicInteger();
+    long count = IntervalJoin.parallelJoin(starts, ends, new int[] {5, 6}, new int[] {9, 9},
+        (l, r) -> pairs.incrementAndGet());
+    assertEquals(n, count);
+    assertEquals(n, pairs.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reversedInterval() {
+    IntervalJoin.join(new int[] {5}, new int[] {1}, new int[0], new int[0], (l, r) -> { });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mismatchedColumns() {
+    IntervalJoin.join(new int[] {1, 2}, new int[] {3}, new int[0], new int[0], (l, r) -> { });
+  }
+}
@@ -0,0 +1,281 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import intervals.Interval;
+import intervals.IntervalSet;
+import intervals.IntervalTree;
+import intervals.PackedInterval;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for exact interval set evaluation.
+ */
+public class IntervalSetTest {
+
+  private static final int LO = -30;
+  private static final int HI = 30;
+
+  /** Random set within [LO, HI] together with its membership bitmap. */
+  private static IntervalSet randomSet(Random rnd, boolean[] members) {
+    IntervalSet set = IntervalSet.EMPTY;
+    for (int k = rnd.nextInt(5); k > 0; k--) {
+      int start = LO + rnd.nextInt(HI - LO);
+      int end = Math.min(HI, start + rnd.nextInt(6));
+      set = set.union(IntervalSet.of(start, end));
+      for (int p = start; p <= end; p++) {
+        members[p - LO] = true;
+      }
+    }
+    return set;
+  }
+
+  /** Check the set holds exactly the marked points and is in canonical form. */
+  private static void assertMatches(boolean[] expected, IntervalSet set) {
+    for (int p = LO; p <= HI; p++) {
+      assertEquals(set + " at " + p, expected[p - LO], set.contains(p));
+    }
+    for (int i = 0; i < set.size(); i++) {
+      assertTrue(set.start(i) <= set.end(i));
+      if (i > 0) {
+        assertTrue(set + " not canonical", (long) set.end(i - 1) + 1 < set.start(i));
+      }
+    }
+  }
+
+  @Test
+  public void testAgainstBitmaps() {
+    Random rnd = new Random(5);
+    int n = HI - LO + 1;
+    for (int round = 0; round < 2000; round++) {
+      boolean[] a = new boolean[n];
+      boolean[] b = new boolean[n];
+      IntervalSet x = randomSet(rnd, a);
+      IntervalSet y = randomSet(rnd, b);
+      boolean[] union = new boolean[n];
+      boolean[] both = new boolean[n];
+      boolean[] minus = new boolean[n];
+      for (int i = 0; i < n; i++) {
+        union[i] = a[i] || b[i];
+        both[i] = a[i] && b[i];
+        minus[i] = a[i] && !b[i];
+      }
+      assertMatches(union, x.union(y));
+      assertMatches(both, x.intersect(y));
+      assertMatches(minus, x.difference(y));
+      assertEquals(x, x.complement().complement());
+      assertEquals(IntervalSet.EMPTY, x.intersect(x.complement()));
+      assertEquals(IntervalSet.ALL, x.union(x.complement()));
+    }
+  }
+
+  @Test
+  public void testAdjacentIntervalsMerge() {
+    assertEquals(IntervalSet.of(1, 4), IntervalSet.of(1, 2).union(IntervalSet.of(3, 4)));
+    assertEquals("{1,2 5,6}", IntervalSet.of(1, 2).union(IntervalSet.of(5, 6)).toString());
+  }
+
+  @Test
+  public void testExtremes() {
+    IntervalSet top = IntervalSet.of(Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+    IntervalSet bottom = IntervalSet.of(Integer.MIN_VALUE, Integer.MIN_VALUE);
+    assertEquals("{-2147483647,2147483645}", top.union(bottom).complement().toString());
+    assertEquals(IntervalSet.EMPTY, IntervalSet.ALL.complement());
+    assertEquals(IntervalSet.ALL, IntervalSet.EMPTY.complement());
+    assertEquals(IntervalSet.EMPTY, top.difference(IntervalSet.ALL));
+    assertEquals(top, top.difference(bottom));
+  }
+
+  @Test
+  public void testHullAndIntervals() {
+    IntervalSet set = IntervalSet.of(1, 2).union(IntervalSet.of(5, 6));
+    assertEquals(new Interval(1, 6), set.hull());
+    assertEquals(Arrays.asList(new Interval(1, 2), new Interval(5, 6)), set.toIntervals());
+    assertEquals(new Interval(Integer.MIN_VALUE, Integer.MIN_VALUE), IntervalSet.EMPTY.hull());
+    assertTrue(IntervalSet.EMPTY.isEmpty());
+    assertFalse(set.contains(3));
+  }
+
+  @Test
+  public void testTreeKeepsGaps() {
+    IntervalTree tree = new IntervalTree("1,2 5,6 U");
+    assertEquals(new Interval(1, 6), tree.evaluate());
+    assertEquals("{1,2 5,6}", tree.evaluateSet().toString());
+  }
+
+  @Test
+  public void testTreeDifferenceAndComplement() {
+    assertEquals("{1,2 6,10}", new IntervalTree("1,10 3,5 D").evaluateSet().toString());
+    assertEquals("{3,5}", new IntervalTree("1,10 1,2 6,10 U D").evaluateSet().toString());
+    assertEquals("{-2147483648,0 11,2147483647}",
+        new IntervalTree("1,10 C").evaluateSet().toString());
+    assertEquals("{0,0 4,4 10,10}",
+        new IntervalTree("1,3 5,9 U C 0,10 I").evaluateSet().toString());
+  }
+
+  @Test
+  public void testTreeManyLeaves() {
+    // balanced union of 4096 disjoint, non-adjacent intervals
+    StringBuilder sb = new StringBuilder();
+    int leaves = 4096;
+    for (int i = 0; i < leaves; i++) {
+      sb.append(3 * i).append(',').append(3 * i + 1).append(' ');
+      for (int k = i + 1; (k & 1) == 0; k >>= 1) {
+        sb.append("U ");
+      }
+    }
+    IntervalSet set = new IntervalTree(sb.toString()).evaluateSet();
+    assertEquals(leaves, set.size());
+    assertEquals(3 * 4095 + 1, set.end(leaves - 1));
+  }
+
+  @Test
+  public void testTextTreeComplement() {
+    assertEquals("C\n|\n|\n|___I\n    |\n    |\n    |___1,2\n    |\n    |___0,5",
+        new IntervalTree("1,2 0,5 I C").textTree());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void hullOfDifference() {
+    new IntervalTree("1,10 3,5 D").evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void hullOfComplement() {
+    new IntervalTree("1,10 C").evaluate();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void complementWithoutOperand() {
+    new IntervalTree("C");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reversedSet() {
+    IntervalSet.of(5, 1);
+  }
+
+  // Bulk union and intersection
+
+  @Test
+  public void testUnionAllMatchesPairwiseUnion() {
+    Random rnd = new Random(23);
+    for (int round = 0; round < 200; round++) {
+      int n = rnd.nextInt(40);
+      int[] starts = new int[n];
+      int[] ends = new int[n];
+      long[] packed = new long[n];
+      List<Interval> list = new ArrayList<>();
+      IntervalSet expected = IntervalSet.EMPTY;
+      for (int i = 0; i < n; i++) {
+        starts[i] = LO + rnd.nextInt(HI - LO);
+        ends[i] = Math.min(HI, starts[i] + rnd.nextInt(6));
+        packed[i] = PackedInterval.of(starts[i], ends[i]);
+        list.add(new Interval(starts[i], ends[i]));
+        expected = expected.union(IntervalSet.of(starts[i], ends[i]));
+      }
+      long[] original = packed.clone();
+      assertEquals(expected, IntervalSet.unionAll(packed));
+      assertEquals(expected, IntervalSet.parallelUnionAll(packed));
+      assertTrue(Arrays.equals(original, packed));
+      assertEquals(expected, IntervalSet.unionAll(starts, ends));
+      assertEquals(expected, IntervalSet.unionAll(list));
+      list.sort((a, b) -> Integer.compare(a.getStart(), b.getStart()));
+      assertEquals(expected, IntervalSet.unionAllSorted(list.iterator()));
+      Arrays.sort(packed);
+      assertEquals(expected, IntervalSet.unionAllSorted(packed));
+    }
+  }
+
+  @Test
+  public void testIntersectAll() {
+    assertEquals(IntervalSet.of(4, 5),
+        IntervalSet.intersectAll(new int[] {1, 4, 0}, new int[] {9, 5, 6}));
+    assertEquals(IntervalSet.EMPTY,
+        IntervalSet.intersectAll(new int[] {1, 7}, new int[] {5, 9}));
+    assertEquals(IntervalSet.ALL, IntervalSet.intersectAll(new long[0]));
+    long[] packed = {PackedInterval.of(-3, 3), PackedInterval.of(0, 10)};
+    assertEquals(IntervalSet.of(0, 3), IntervalSet.intersectAll(packed));
+    assertEquals(IntervalSet.of(0, 3),
+        IntervalSet.intersectAll(List.of(new Interval(-3, 3), new Interval(0, 10))));
+    assertEquals(IntervalSet.EMPTY,
+        IntervalSet.intersectAll(List.of(new Interval(0, 1), new Interval(2, 3))));
+  }
+
+  @Test
+  public void testAllOfSetsAgainstBitmaps() {
+    Random rnd = new Random(11);
+    int n = HI - LO + 1;
+    for (int round = 0; round < 1000; round++) {
+      IntervalSet[] sets = new IntervalSet[1 + rnd.nextInt(5)];
+      boolean[] any = new boolean[n];
+      boolean[] every = new boolean[n];
+      Arrays.fill(every, true);
+      for (int k = 0; k < sets.length; k++) {
+        boolean[] members = new boolean[n];
+        sets[k] = randomSet(rnd, members);
+        for (int i = 0; i < n; i++) {
+          any[i] |= members[i];
+          every[i] &= members[i];
+        }
+      }
+      assertMatches(any, IntervalSet.unionAll(sets));
+      assertMatches(every, IntervalSet.intersectAll(sets));
+    }
+    assertEquals(IntervalSet.EMPTY, IntervalSet.unionAll(new IntervalSet[0]));
+    assertEquals(IntervalSet.ALL, IntervalSet.intersectAll(new IntervalSet[0]));
+    IntervalSet top = IntervalSet.of(Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+    assertEquals(top, IntervalSet.intersectAll(new IntervalSet[] {IntervalSet.ALL, top}));
+  }
+
+  @Test
+  public void testTreeLongRuns() {
+    // a left-deep chain of 100000 unions, too deep to evaluate by recursion
+    StringBuilder sb = new StringBuilder("0,0");
+    int leaves = 100_000;
+    for (int i = 1; i < leaves; i++) {
+      sb.append(' ').append(3 * i).append(',').append(3 * i).append(" U");
+    }
+    IntervalTree tree = new IntervalTree(sb.toString());
+    assertEquals(leaves, tree.evaluateSet().size());
+    assertEquals(leaves, tree.optimize().evaluateSet().size());
+    sb.append(" 0,10 I 1,2 6,7 U 7,12 D U C");
+    assertEquals("{-2147483648,-1 4,5 7,8 10,2147483647}",
+        new IntervalTree(sb.toString()).evaluateSet().toString());
+  }
+
+  @Test
+  public void testUnionAllLarge() {
+    // a million unit intervals two apart, plus one interval covering half of them
+    int n = 1_000_000;
+    long[] packed = new long[n + 1];
+    for (int i = 0; i < n; i++) {
+      packed[i] = PackedInterval.of(2 * (n - i), 2 * (n - i));
+    }
+    packed[n] = PackedInterval.of(n, 2 * n);
+    IntervalSet union = IntervalSet.parallelUnionAll(packed);
+    // points 2 to n - 2 stay apart; the rest merge into n,2n
+    assertEquals(n / 2, union.size());
+    assertEquals(IntervalSet.unionAll(packed), union);
+    assertEquals(new Interval(2, 2 * n), union.hull());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unionAllSortedOutOfOrder() {
+    IntervalSet.unionAllSorted(List.of(new Interval(5, 6), new Interval(1, 2)).iterator());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unionAllSortedPackedOutOfOrder() {
+    IntervalSet.unionAllSorted(new long[] {PackedInterval.of(5, 6), PackedInterval.of(1, 2)});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unionAllReversed() {
+    IntervalSet.unionAll(new int[] {1, 5}, new int[] {2, 4});
+  }
+}
@@ -3,6 +3,9 @@ import static org.junit.Assert.assertEquals;
 import intervals.Interval;
 import intervals.IntervalTree;
 import intervals.Intervals;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import org.junit.Test;
 
 /**
@@ -348,4 +351,257 @@ public class IntervalTreeTest {
       assertEquals("Expression cannot be null or empty", e.getMessage());
     }
   }
-}
\ No newline at end of file
+
+  // Optimization
+
+  private static String randomTree(Random rnd, int leaves, String operators) {
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    while (leaves > 0 || depth > 1) {
+      if (leaves > 0 && (depth < 2 || rnd.nextBoolean())) {
+        int start = rnd.nextInt(100);
+        sb.append(start).append(',').append(start + rnd.nextInt(60)).append(' ');
+        leaves--;
+        depth++;
+      } else {
+        sb.append(operators.charAt(rnd.nextInt(operators.length()))).append(' ');
+        depth--;
+      }
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testOptimizeFlattensChains() {
+    IntervalTree tree = new IntervalTree("1,4 2,5 U 3,9 U 0,1 U");
+    IntervalTree optimized = tree.optimize();
+    assertEquals(7, tree.nodeCount());
+    assertEquals(5, optimized.nodeCount());
+    assertEquals(tree.evaluate(), optimized.evaluate());
+    assertEquals("U\n|\n|\n|___1,4\n|\n|___2,5\n|\n|___3,9\n|\n|___0,1",
+        optimized.textTree());
+  }
+
+  @Test
+  public void testOptimizeMatchesOriginal() {
+    Random rnd = new Random(19);
+    for (int i = 0; i < 500; i++) {
+      String hull = randomTree(rnd, 1 + rnd.nextInt(30), "UUI");
+      IntervalTree tree = new IntervalTree(hull);
+      assertEquals(hull, tree.evaluate(), tree.optimize().evaluate());
+      assertEquals(hull, tree.evaluateSet(), tree.optimize().evaluateSet());
+      String exact = randomTree(rnd, 1 + rnd.nextInt(30), "UIID");
+      if (rnd.nextBoolean()) {
+        exact += "C";
+      }
+      tree = new IntervalTree(exact);
+      assertEquals(exact, tree.evaluateSet(), tree.optimize().evaluateSet());
+    }
+  }
+
+  @Test
+  public void testOptimizeShortCircuitsEmptyIntersection() {
+    IntervalTree tree = new IntervalTree("1,2 5,6 I 0,9 I 0,9 3,4 U I");
+    IntervalTree optimized = tree.optimize();
+    assertEquals(Interval.EMPTY, optimized.evaluate());
+    assertEquals("{}", optimized.evaluateSet().toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionStillReportsUnboundVariable() {
+    // the empty result is known before x, but the original tree throws for x
+    new IntervalTree("1,2 5,6 I x I").optimize().evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionSetStillReportsUnboundVariable() {
+    new IntervalTree("1,2 5,6 I x I").optimize().evaluateSet();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionStillRejectsComplement() {
+    new IntervalTree("1,2 5,6 I 0,9 C I").optimize().evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionReportsVariableInNestedRun() {
+    // x sits inside an n-ary union that is itself an operand of the intersection
+    new IntervalTree("0,1 5,6 I x y U I").optimize().evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionSetReportsVariableInNestedRun() {
+    new IntervalTree("0,1 5,6 I x y U I").optimize().evaluateSet();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void optimizedIntersectionRejectsDifferenceInNestedRun() {
+    new IntervalTree("0,1 5,6 I 1,2 3,4 D 7,8 U I").optimize().evaluate();
+  }
+
+  @Test
+  public void testOptimizeSkipsOnlyOperandsThatCannotThrow() {
+    // D and C only fail without sets, so evaluateSet may still stop early
+    IntervalTree tree = new IntervalTree("1,2 5,6 I 0,9 3,4 D I 0,9 C I");
+    assertEquals("{}", tree.optimize().evaluateSet().toString());
+    assertEquals(tree.evaluateSet(), tree.optimize().evaluateSet());
+  }
+
+  @Test
+  public void testOptimizeDeepChain() {
+    // far too deep for the recursive binary evaluation on a default stack
+    StringBuilder sb = new StringBuilder("0,1");
+    for (int i = 1; i <= 500_000; i++) {
+      sb.append(' ').append(i).append(',').append(i + 1).append(" U");
+    }
+    IntervalTree optimized = new IntervalTree(sb.toString()).optimize();
+    assertEquals(new Interval(0, 500_001), optimized.evaluate());
+    assertEquals(500_002, optimized.nodeCount());
+  }
+
+  @Test
+  public void testDeepAlternatingChain() {
+    // every run has one operator, so the n-ary nodes nest as deep as the chain
+    StringBuilder sb = new StringBuilder("0,1");
+    Interval expected = new Interval(0, 1);
+    for (int i = 1; i <= 200_000; i++) {
+      if (i % 2 == 1) {
+        sb.append(' ').append(i).append(',').append(i + 1).append(" U");
+        expected = expected.union(new Interval(i, i + 1));
+      } else {
+        sb.append(" 1,").append(i + 1).append(" I");
+        expected = expected.intersect(new Interval(1, i + 1));
+      }
+    }
+    IntervalTree tree = new IntervalTree(sb.toString());
+    IntervalTree optimized = tree.optimize();
+    assertEquals(expected, tree.evaluate());
+    assertEquals(expected, optimized.evaluate());
+    assertEquals(tree.evaluateSet(), optimized.evaluateSet());
+    assertEquals(tree.nodeCount(), optimized.nodeCount());
+  }
+
+  @Test
+  public void testDeepComplementChain() {
+    StringBuilder sb = new StringBuilder("0,1");
+    for (int i = 0; i < 200_000; i++) {
+      sb.append(" C");
+    }
+    IntervalTree optimized = new IntervalTree(sb.toString()).optimize();
+    assertEquals("{0,1}", optimized.evaluateSet().toString());
+  }
+
+  // Variables and batch evaluation
+
+  @Test
+  public void testVariableFormats() {
+    IntervalTree tree = new IntervalTree("slot 2,5 I booking_2 U");
+    assertEquals("U\n|\n|\n|___I\n|   |\n|   |\n|   |___slot\n|   |\n|   |___2,5\n|\n"
+        + "|___booking_2", tree.textTree());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void evaluateUnboundVariable() {
+    new IntervalTree("x 1,2 U").evaluate();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void evaluateSetUnboundVariable() {
+    new IntervalTree("x 1,2 D").evaluateSet();
+  }
+
+  @Test
+  public void testBatchEvaluation() {
+    Map<String, int[]> starts = new HashMap<>();
+    Map<String, int[]> ends = new HashMap<>();
+    starts.put("x", new int[] {0, 10, -5});
+    ends.put("x", new int[] {4, 12, -1});
+    int[] outStarts = new int[3];
+    int[] outEnds = new int[3];
+    new IntervalTree("x 3,8 I x U").evaluate(starts, ends, outStarts, outEnds);
+    assertEquals(0, outStarts[0]);
+    assertEquals(4, outEnds[0]);
+    // an empty intersection is Interval.EMPTY, whose start then wins the union
+    assertEquals(Integer.MIN_VALUE, outStarts[1]);
+    assertEquals(12, outEnds[1]);
+    assertEquals(Integer.MIN_VALUE, outStarts[2]);
+    assertEquals(-1, outEnds[2]);
+  }
+
+  @Test
+  public void testBatchMatchesPerRowEvaluation() {
+    Random rnd = new Random(20);
+    String[] names = {"x", "y", "z"};
+    // enough rows to span several blocks plus a partial one
+    int rows = 2500;
+    Map<String, int[]> starts = new HashMap<>();
+    Map<String, int[]> ends = new HashMap<>();
+    for (String name : names) {
+      int[] s = new int[rows];
+      int[] e = new int[rows];
+      for (int i = 0; i < rows; i++) {
+        s[i] = rnd.nextInt(100);
+        e[i] = s[i] + rnd.nextInt(40);
+      }
+      starts.put(name, s);
+      ends.put(name, e);
+    }
+    for (int round = 0; round < 10; round++) {
+      // replace about a third of the literal leaves by variables
+      StringBuilder sb = new StringBuilder();
+      for (String token : randomTree(rnd, 12, "UI").split(" ")) {
+        boolean leaf = token.contains(",");
+        sb.append(leaf && rnd.nextInt(3) == 0 ? names[rnd.nextInt(3)] : token).append(' ');
+      }
+      String postfix = sb.toString();
+      IntervalTree tree = new IntervalTree(postfix);
+      int[] outStarts = new int[rows];
+      int[] outEnds = new int[rows];
+      tree.evaluate(starts, ends, outStarts, outEnds);
+      int[] optimizedStarts = new int[rows];
+      int[] optimizedEnds = new int[rows];
+      tree.optimize().evaluate(starts, ends, optimizedStarts, optimizedEnds);
+      for (int i = 0; i < rows; i++) {
+        String bound = postfix;
+        for (String name : names) {
+          bound = bound.replace(name, starts.get(name)[i] + "," + ends.get(name)[i]);
+        }
+        Interval expected = new IntervalTree(bound).evaluate();
+        assertEquals(expected, new Interval(outStarts[i], outEnds[i]));
+        assertEquals(expected, new Interval(optimizedStarts[i], optimizedEnds[i]));
+      }
+    }
+  }
+
+  @Test
+  public void testBatchConstantOnly() {
+    int[] outStarts = new int[2];
+    int[] outEnds = new int[2];
+    new IntervalTree("1,4 6,9 I").evaluate(Map.of(), Map.of(), outStarts, outEnds);
+    assertEquals(new Interval(outStarts[1], outEnds[1]), Interval.EMPTY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchMissingColumn() {
+    new IntervalTree("x y U").evaluate(Map.of("x", new int[2], "y", new int[2]),
+        Map.of("x", new int[2]), new int[2], new int[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchShortColumn() {
+    new IntervalTree("x 1,2 U").evaluate(Map.of("x", new int[2]), Map.of("x", new int[2]),
+        new int[3], new int[3]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchReversedBinding() {
+    new IntervalTree("x 1,2 U").evaluate(Map.of("x", new int[] {0, 5}),
+        Map.of("x", new int[] {1, 4}), new int[2], new int[2]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void batchDifference() {
+    new IntervalTree("x 1,2 D").evaluate(Map.of("x", new int[1]), Map.of("x", new int[1]),
+        new int[1], new int[1]);
+  }
+}
@@ -0,0 +1,220 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import expression.ExpressionTree;
+import expression.MutableExpressionTree;
+import intervals.IntervalTree;
+import intervals.MutableIntervalTree;
+import intervals.PersistentIntervalTree;
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Test;
+import postfix.LatencyHistogram;
+import postfix.Metrics;
+import postfix.Metrics.FailureReason;
+
+/**
+ * Tests for the opt-in parse and evaluation metrics.
+ */
+public class MetricsTest {
+
+  /** Run with metrics on and zeroed, turning them off again afterwards. */
+  private static void enabled(Runnable body) {
+    Metrics.EXPRESSION.reset();
+    Metrics.INTERVAL.reset();
+    Metrics.setEnabled(true);
+    try {
+      body.run();
+    } finally {
+      Metrics.setEnabled(false);
+    }
+  }
+
+  private static void parseQuietly(Runnable parse) {
+    try {
+      parse.run();
+    } catch (IllegalArgumentException expected) {
+      // counted by the metrics under test
+    }
+  }
+
+  @Test
+  public void testDisabledRecordsNothing() {
+    Metrics.EXPRESSION.reset();
+    Metrics.INTERVAL.reset();
+    new ExpressionTree("1 2 +").evaluate();
+    new IntervalTree("1,3 2,4 U").evaluate();
+    parseQuietly(() -> new ExpressionTree("1 +"));
+    assertEquals(0, Metrics.EXPRESSION.parseCount());
+    assertEquals(0, Metrics.EXPRESSION.evaluationCount());
+    assertEquals(0, Metrics.EXPRESSION.parseFailureCount(FailureReason.INSUFFICIENT_OPERANDS));
+    assertEquals(0, Metrics.INTERVAL.parseCount());
+    assertEquals(0, Metrics.INTERVAL.parseLatency().count());
+  }
+
+  @Test
+  public void testSwitchedOffCountsNoParseFailure() throws Exception {
+    // the switch is read once per class, so load a fresh copy with it set
+    System.setProperty("postfix.metrics.off", "true");
+    URL classes = Metrics.class.getProtectionDomain().getCodeSource().getLocation();
+    try (URLClassLoader loader =
+        new URLClassLoader(new URL[] {classes}, ClassLoader.getPlatformClassLoader())) {
+      Class<?> metrics = loader.loadClass("postfix.Metrics");
+      Class<?> reasons = loader.loadClass("postfix.Metrics$FailureReason");
+      Object reason = reasons.getEnumConstants()[0];
+      Object expression = metrics.getField("EXPRESSION").get(null);
+      metrics.getMethod("setEnabled", boolean.class).invoke(null, true);
+      metrics.getMethod("parseFailure", reasons, String.class).invoke(expression, reason, "bad");
+      assertEquals(0L, metrics.getMethod("parseFailureCount", reasons).invoke(expression, reason));
+    } finally {
+      System.clearProperty("postfix.metrics.off");
+    }
+  }
+
+  @Test
+  public void testExpressionCounts() {
+    enabled(() -> {
+      ExpressionTree tree = new ExpressionTree("1 2 + 3 *");
+      new ExpressionTree("4");
+      tree.evaluate();
+      tree.evaluate();
+      parseQuietly(() -> new ExpressionTree(" "));
+      parseQuietly(() -> new ExpressionTree("1 2a +"));
+      parseQuietly(() -> new ExpressionTree("1 +"));
+      parseQuietly(() -> new ExpressionTree("1 2"));
+      assertEquals(2, Metrics.EXPRESSION.parseCount());
+      assertEquals(6, Metrics.EXPRESSION.nodesParsed());
+      assertEquals(2, Metrics.EXPRESSION.evaluationCount());
+      for (FailureReason reason : FailureReason.values()) {
+        assertEquals(reason.toString(), 1, Metrics.EXPRESSION.parseFailureCount(reason));
+      }
+      assertEquals(2, Metrics.EXPRESSION.parseLatency().count());
+      assertEquals(2, Metrics.EXPRESSION.evaluateLatency().count());
+      assertEquals(0, Metrics.INTERVAL.parseCount());
+    });
+  }
+
+  @Test
+  public void testIntervalCounts() {
+    enabled(() -> {
+      IntervalTree tree = new IntervalTree("1,5 2,6 U 3,4 I");
+      tree.evaluate();
+      parseQuietly(() -> new IntervalTree(""));
+      parseQuietly(() -> new IntervalTree("1,2 2x U"));
+      parseQuietly(() -> new IntervalTree("1,2 U"));
+      parseQuietly(() -> new IntervalTree("1,2 3,4"));
+      assertEquals(1, Metrics.INTERVAL.parseCount());
+      assertEquals(5, Metrics.INTERVAL.nodesParsed());
+      assertEquals(1, Metrics.INTERVAL.evaluationCount());
+      for (FailureReason reason : FailureReason.values()) {
+        assertEquals(reason.toString(), 1, Metrics.INTERVAL.parseFailureCount(reason));
+      }
+      assertEquals(0, Metrics.EXPRESSION.parseCount());
+    });
+  }
+
+  @Test
+  public void testParallelEvaluationRecordedOnce() {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < 40_000; i++) {
+      sb.append(" 1 +");
+    }
+    ExpressionTree tree = new ExpressionTree(sb.toString());
+    ExpressionTree failing = new ExpressionTree(sb + " 0 /");
+    enabled(() -> {
+      assertEquals(40_001.0, tree.evaluateParallel(), 0.0);
+      assertEquals(1, Metrics.EXPRESSION.evaluationCount());
+      try {
+        failing.evaluateParallel();
+      } catch (ArithmeticException expected) {
+        // a failed evaluation is not recorded, as with evaluate()
+      }
+      assertEquals(1, Metrics.EXPRESSION.evaluationCount());
+      assertEquals(1, Metrics.EXPRESSION.evaluateLatency().count());
+    });
+  }
+
+  @Test
+  public void testReset() {
+    enabled(() -> {
+      new ExpressionTree("1 2 +").evaluate();
+      Metrics.EXPRESSION.reset();
+      assertEquals(0, Metrics.EXPRESSION.parseCount());
+      assertEquals(0, Metrics.EXPRESSION.evaluationCount());
+      assertEquals(0, Metrics.EXPRESSION.evaluateLatency().count());
+      assertEquals(0, Metrics.EXPRESSION.evaluateLatency().max());
+    });
+  }
+
+  @Test
+  public void testHistogramPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(0.5));
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500.5, histogram.mean(), 1e-9);
+    assertEquals(1000, histogram.max());
+    assertEquals(1, histogram.percentile(0));
+    assertEquals(1000, histogram.percentile(1));
+    long p50 = histogram.percentile(0.5);
+    assertTrue("p50 " + p50, p50 >= 500 && p50 <= 500 * 1.125);
+    long p99 = histogram.percentile(0.99);
+    assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1000);
+  }
+
+  @Test
+  public void testRenderingMutableTreeRecordsNoParse() {
+    enabled(() -> {
+      MutableExpressionTree tree = new MutableExpressionTree("1 x +");
+      tree.set("x", 2);
+      tree.infix();
+      tree.schemeExpression();
+      tree.textTree();
+      assertEquals(1, Metrics.EXPRESSION.parseCount());
+      assertEquals(3, Metrics.EXPRESSION.nodesParsed());
+    });
+  }
+
+  @Test
+  public void testRenderingMutableIntervalTreeRecordsNoParse() {
+    enabled(() -> {
+      MutableIntervalTree tree = new MutableIntervalTree("1,2 x U");
+      tree.set("x", 3, 4);
+      tree.textTree();
+      tree.textTree();
+      assertEquals(1, Metrics.INTERVAL.parseCount());
+      assertEquals(3, Metrics.INTERVAL.nodesParsed());
+    });
+  }
+
+  @Test
+  public void testRenderingPersistentTreeRecordsNoParse() {
+    enabled(() -> {
+      PersistentIntervalTree tree = new PersistentIntervalTree("1,2 3,4 U");
+      tree.withLeaf(0, 5, 6).textTree();
+      tree.textTree();
+      assertEquals(1, Metrics.INTERVAL.parseCount());
+      assertEquals(3, Metrics.INTERVAL.nodesParsed());
+    });
+  }
+
+  @Test
+  public void testHistogramExactSmallValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(3);
+    histogram.record(7);
+    assertEquals(0, histogram.percentile(0.3));
+    assertEquals(3, histogram.percentile(0.5));
+    assertEquals(7, histogram.percentile(0.9));
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badFraction() {
+    new LatencyHistogram().percentile(1.5);
+  }
+}
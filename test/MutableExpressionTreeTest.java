@@ -0,0 +1,152 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import expression.ExpressionTree;
+import expression.MutableExpressionTree;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for MutableExpressionTree and its incremental re-evaluation.
+ */
+public class MutableExpressionTreeTest {
+
+  private static final double DELTA = 0.0001;
+
+  @Test
+  public void testEvaluateMatchesTree() {
+    String[] exprs = {"42", "1 2 +", "1 4 6 - 5 + /", "1.2 5.4 + -4.5 *", "1 2 + 3 4 + *"};
+    for (String s : exprs) {
+      assertEquals(s, new ExpressionTree(s).evaluate(),
+          new MutableExpressionTree(s).evaluate(), 0.0);
+    }
+  }
+
+  @Test
+  public void testSetLeaf() {
+    MutableExpressionTree t = new MutableExpressionTree("1 2 + 3 4 + *");
+    assertEquals(4, t.leafCount());
+    assertEquals(21.0, t.evaluate(), DELTA);
+    t.setLeaf(0, 10);
+    assertEquals(10.0, t.leaf(0), 0.0);
+    assertEquals(84.0, t.evaluate(), DELTA);
+    assertEquals(84.0, t.evaluate(), DELTA);
+    t.setLeaf(3, 0);
+    assertEquals(36.0, t.evaluate(), DELTA);
+  }
+
+  @Test
+  public void testSetLeaves() {
+    MutableExpressionTree t = new MutableExpressionTree("1 2 + 3 4 + *");
+    t.evaluate();
+    t.setLeaves(new int[] {1, 2}, new double[] {5, 6});
+    assertEquals(60.0, t.evaluate(), DELTA);
+  }
+
+  @Test
+  public void testSingleLeaf() {
+    MutableExpressionTree t = new MutableExpressionTree("7");
+    t.setLeaf(0, 8);
+    assertEquals(8.0, t.evaluate(), 0.0);
+  }
+
+  @Test
+  public void testVariables() {
+    MutableExpressionTree t = new MutableExpressionTree("x y * x +");
+    t.set("x", 2);
+    t.set("y", 3);
+    assertEquals(8.0, t.evaluate(), DELTA);
+    t.set(Map.of("x", 4.0, "y", 0.5));
+    assertEquals(6.0, t.evaluate(), DELTA);
+    assertEquals("( ( x * y ) + x )", t.infix());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnboundVariable() {
+    MutableExpressionTree t = new MutableExpressionTree("x y +");
+    t.set("x", 1);
+    t.evaluate();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownVariable() {
+    new MutableExpressionTree("x 1 +").set("z", 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSetLeafOnVariable() {
+    new MutableExpressionTree("x 1 +").setLeaf(0, 1);
+  }
+
+  @Test
+  public void testDivisionByZeroRecovers() {
+    MutableExpressionTree t = new MutableExpressionTree("6 3 / 1 +");
+    assertEquals(3.0, t.evaluate(), DELTA);
+    t.setLeaf(1, 0);
+    try {
+      t.evaluate();
+      fail("expected division by zero");
+    } catch (ArithmeticException expected) {
+      // the divide stays dirty
+    }
+    t.setLeaf(1, 2);
+    assertEquals(4.0, t.evaluate(), DELTA);
+  }
+
+  @Test
+  public void testRendersCurrentValues() {
+    MutableExpressionTree t = new MutableExpressionTree("1 2 +");
+    t.setLeaf(1, 2.5);
+    assertEquals("( 1.0 + 2.5 )", t.infix());
+    assertEquals("( + 1.0 2.5 )", t.schemeExpression());
+    assertEquals(new ExpressionTree("1 2.5 +").textTree(), t.textTree());
+  }
+
+  @Test
+  public void testRandomUpdatesMatchFreshTree() {
+    Random random = new Random(7);
+    int leaves = 200;
+    double[] values = new double[leaves];
+    for (int i = 0; i < leaves; i++) {
+      values[i] = 1 + random.nextInt(9);
+    }
+    String ops = "+-*";
+    char[] chosen = new char[leaves - 1];
+    for (int i = 0; i < chosen.length; i++) {
+      chosen[i] = ops.charAt(random.nextInt(ops.length()));
+    }
+    MutableExpressionTree t = new MutableExpressionTree(chain(values, chosen));
+    for (int round = 0; round < 50; round++) {
+      int changes = 1 + random.nextInt(3);
+      for (int c = 0; c < changes; c++) {
+        int i = random.nextInt(leaves);
+        values[i] = 1 + random.nextInt(9);
+        t.setLeaf(i, values[i]);
+      }
+      assertEquals(new ExpressionTree(chain(values, chosen)).evaluate(), t.evaluate(), 0.0);
+    }
+  }
+
+  @Test
+  public void testDeepChain() {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < 100_000; i++) {
+      sb.append(" 1 +");
+    }
+    MutableExpressionTree t = new MutableExpressionTree(sb.toString());
+    assertEquals(100_001.0, t.evaluate(), 0.0);
+    t.setLeaf(0, 2);
+    assertEquals(100_002.0, t.evaluate(), 0.0);
+  }
+
+  /** Left-deep postfix chain: v0 v1 op0 v2 op1 ... */
+  private static String chain(double[] values, char[] ops) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(values[0]);
+    for (int i = 1; i < values.length; i++) {
+      sb.append(' ').append(values[i]).append(' ').append(ops[i - 1]);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,164 @@
+import static org.junit.Assert.assertEquals;
+
+import intervals.Interval;
+import intervals.IntervalTree;
+import intervals.MutableIntervalTree;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for MutableIntervalTree and its incremental re-evaluation.
+ */
+public class MutableIntervalTreeTest {
+
+  @Test
+  public void testEvaluateMatchesTree() {
+    String[] exprs = {"5,10", "1,3 2,4 U", "1,3 5,6 I", "1,2 3,4 4,6 U 3,5 I U",
+        "1,10 2,3 I 8,9 U"};
+    for (String s : exprs) {
+      assertEquals(s, new IntervalTree(s).evaluate(), new MutableIntervalTree(s).evaluate());
+    }
+  }
+
+  @Test
+  public void testSetLeaf() {
+    MutableIntervalTree t = new MutableIntervalTree("1,4 2,6 I 8,9 U");
+    assertEquals(3, t.leafCount());
+    assertEquals(new Interval(2, 9), t.evaluate());
+    assertEquals(2, t.recomputedCount());
+    t.setLeaf(2, 0, 1);
+    assertEquals(new Interval(0, 1), t.leaf(2));
+    assertEquals(new Interval(0, 4), t.evaluate());
+    // only the root lies between the changed leaf and the root
+    assertEquals(3, t.recomputedCount());
+    assertEquals(new Interval(0, 4), t.evaluate());
+    assertEquals(3, t.recomputedCount());
+    t.setLeaf(0, new Interval(3, 3));
+    assertEquals(new Interval(0, 3), t.evaluate());
+    assertEquals(5, t.recomputedCount());
+  }
+
+  @Test
+  public void testSetLeavesRecomputesSharedPathOnce() {
+    MutableIntervalTree t = new MutableIntervalTree("1,2 3,4 U 5,6 7,8 U U");
+    t.evaluate();
+    assertEquals(3, t.recomputedCount());
+    t.setLeaves(new int[] {0, 1}, new int[] {0, 0}, new int[] {1, 9});
+    assertEquals(new Interval(0, 9), t.evaluate());
+    assertEquals(5, t.recomputedCount());
+  }
+
+  @Test
+  public void testUnchangedValueIsNotDirty() {
+    MutableIntervalTree t = new MutableIntervalTree("1,2 3,4 U");
+    t.evaluate();
+    t.setLeaf(1, 3, 4);
+    t.evaluate();
+    assertEquals(1, t.recomputedCount());
+  }
+
+  @Test
+  public void testSingleLeaf() {
+    MutableIntervalTree t = new MutableIntervalTree("7,8");
+    t.setLeaf(0, 8, 9);
+    assertEquals(new Interval(8, 9), t.evaluate());
+    assertEquals(0, t.recomputedCount());
+  }
+
+  @Test
+  public void testVariables() {
+    MutableIntervalTree t = new MutableIntervalTree("x y I x U");
+    t.set("x", 1, 3);
+    t.set("y", 2, 8);
+    assertEquals(new Interval(1, 3), t.evaluate());
+    t.set(Map.of("x", new Interval(5, 6), "y", new Interval(0, 10)));
+    assertEquals(new Interval(5, 6), t.evaluate());
+    assertEquals("U\n|\n|\n|___I\n|   |\n|   |\n|   |___x\n|   |\n|   |___y\n|\n|___x",
+        t.textTree());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnboundVariable() {
+    MutableIntervalTree t = new MutableIntervalTree("x y U");
+    t.set("x", 1, 2);
+    t.evaluate();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownVariable() {
+    new MutableIntervalTree("x 1,2 U").set("z", 1, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSetLeafOnVariable() {
+    new MutableIntervalTree("x 1,2 U").setLeaf(0, 1, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReversedInterval() {
+    new MutableIntervalTree("1,2 3,4 U").setLeaf(0, 5, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferenceUnsupported() {
+    new MutableIntervalTree("1,2 3,4 D");
+  }
+
+  @Test
+  public void testRendersCurrentValues() {
+    MutableIntervalTree t = new MutableIntervalTree("1,2 3,4 U");
+    t.setLeaf(1, -5, 0);
+    assertEquals(new IntervalTree("1,2 -5,0 U").textTree(), t.textTree());
+  }
+
+  @Test
+  public void testRandomUpdatesMatchFreshTree() {
+    Random random = new Random(7);
+    int leaves = 200;
+    int[] starts = new int[leaves];
+    int[] ends = new int[leaves];
+    for (int i = 0; i < leaves; i++) {
+      starts[i] = random.nextInt(100);
+      ends[i] = starts[i] + random.nextInt(50);
+    }
+    char[] chosen = new char[leaves - 1];
+    for (int i = 0; i < chosen.length; i++) {
+      chosen[i] = random.nextInt(3) == 0 ? 'I' : 'U';
+    }
+    MutableIntervalTree t = new MutableIntervalTree(chain(starts, ends, chosen));
+    for (int round = 0; round < 50; round++) {
+      int changes = 1 + random.nextInt(3);
+      for (int c = 0; c < changes; c++) {
+        int i = random.nextInt(leaves);
+        starts[i] = random.nextInt(100);
+        ends[i] = starts[i] + random.nextInt(50);
+        t.setLeaf(i, starts[i], ends[i]);
+      }
+      assertEquals(new IntervalTree(chain(starts, ends, chosen)).evaluate(), t.evaluate());
+    }
+  }
+
+  @Test
+  public void testDeepChain() {
+    StringBuilder sb = new StringBuilder("0,0");
+    for (int i = 1; i <= 100_000; i++) {
+      sb.append(' ').append(i).append(',').append(i).append(" U");
+    }
+    MutableIntervalTree t = new MutableIntervalTree(sb.toString());
+    assertEquals(new Interval(0, 100_000), t.evaluate());
+    t.setLeaf(0, -1, 0);
+    assertEquals(new Interval(-1, 100_000), t.evaluate());
+    assertEquals(200_000, t.recomputedCount());
+  }
+
+  /** Left-deep postfix chain: i0 i1 op0 i2 op1 ... */
+  private static String chain(int[] starts, int[] ends, char[] ops) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(starts[0]).append(',').append(ends[0]);
+    for (int i = 1; i < starts.length; i++) {
+      sb.append(' ').append(starts[i]).append(',').append(ends[i]).append(' ').append(ops[i - 1]);
+    }
+    return sb.toString();
+  }
+}
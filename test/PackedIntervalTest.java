@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import intervals.Interval;
+import intervals.IntervalTree;
+import intervals.PackedInterval;
+import java.util.Objects;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for the packed long interval encoding.
+ */
+public class PackedIntervalTest {
+
+  @Test
+  public void testRoundTrip() {
+    int[] values = {Integer.MIN_VALUE, -7, -1, 0, 1, 42, Integer.MAX_VALUE};
+    for (int start : values) {
+      for (int end : values) {
+        if (start <= end) {
+          long packed = PackedInterval.of(start, end);
+          assertEquals(start, PackedInterval.start(packed));
+          assertEquals(end, PackedInterval.end(packed));
+          assertEquals(new Interval(start, end), PackedInterval.toInterval(packed));
+          assertEquals(start + "," + end, PackedInterval.toString(packed));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesInterval() {
+    Random rnd = new Random(3);
+    for (int i = 0; i < 10_000; i++) {
+      int s1 = rnd.nextInt(200) - 100;
+      int s2 = rnd.nextInt(200) - 100;
+      Interval a = new Interval(s1, s1 + rnd.nextInt(50));
+      Interval b = new Interval(s2, s2 + rnd.nextInt(50));
+      long pa = PackedInterval.of(a);
+      long pb = PackedInterval.of(b);
+      assertEquals(a.union(b), PackedInterval.toInterval(PackedInterval.union(pa, pb)));
+      assertEquals(a.intersect(b), PackedInterval.toInterval(PackedInterval.intersect(pa, pb)));
+      int expected = a.getStart() != b.getStart()
+          ? Integer.compare(a.getStart(), b.getStart())
+          : Integer.compare(a.getEnd(), b.getEnd());
+      assertEquals(Integer.signum(expected), Integer.signum(PackedInterval.compare(pa, pb)));
+    }
+  }
+
+  @Test
+  public void testNegativeEndsOrder() {
+    assertTrue(PackedInterval.compare(PackedInterval.of(-5, -3), PackedInterval.of(-5, 2)) < 0);
+    assertTrue(PackedInterval.compare(PackedInterval.of(-5, 9), PackedInterval.of(-4, -4)) < 0);
+  }
+
+  @Test
+  public void testCanonicalEmpty() {
+    assertSame(Interval.EMPTY, new Interval(1, 3).intersect(new Interval(5, 7)));
+    assertSame(Interval.EMPTY, new IntervalTree("1,3 5,7 I").evaluate());
+    assertEquals(PackedInterval.EMPTY, new IntervalTree("1,3 5,7 I").evaluatePacked());
+    assertEquals(new Interval(1, 7).hashCode(), Objects.hash(1, 7));
+  }
+
+  @Test
+  public void testTreeEvaluatePacked() {
+    IntervalTree tree = new IntervalTree("1,4 2,5 U -3,2 I");
+    long packed = tree.evaluatePacked();
+    assertEquals(1, PackedInterval.start(packed));
+    assertEquals(2, PackedInterval.end(packed));
+    assertEquals(new Interval(1, 2), tree.evaluate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reversed() {
+    PackedInterval.of(3, 1);
+  }
+}
@@ -0,0 +1,139 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import expression.ExpressionTree;
+import intervals.IntervalTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import postfix.ParseCache;
+
+/**
+ * Tests for ParseCache and the cached parse factories.
+ */
+public class ParseCacheTest {
+
+  @Test
+  public void testHitsAndMisses() {
+    AtomicInteger parses = new AtomicInteger();
+    ParseCache<ExpressionTree> cache = new ParseCache<>(10, s -> {
+      parses.incrementAndGet();
+      return new ExpressionTree(s);
+    });
+    ExpressionTree first = cache.get("1 2 +");
+    assertSame(first, cache.get("1 2 +"));
+    assertSame(first, cache.get("1 2 +"));
+    cache.get("3 4 *");
+    assertEquals(2, parses.get());
+    ParseCache.Stats stats = cache.stats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(2, stats.missCount());
+    assertEquals(0, stats.evictionCount());
+    assertEquals(0.5, stats.hitRate(), 0.0);
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testBounded() {
+    ParseCache<String> cache = new ParseCache<>(100, s -> s);
+    for (int i = 0; i < 1000; i++) {
+      cache.get("k" + i);
+    }
+    assertEquals(100, cache.size());
+    assertEquals(900, cache.stats().evictionCount());
+  }
+
+  @Test
+  public void testStripedCapacityIsExact() {
+    ParseCache<String> cache = new ParseCache<>(1001, s -> s);
+    for (int i = 0; i < 20000; i++) {
+      cache.get("k" + i);
+    }
+    assertEquals(1001, cache.size());
+  }
+
+  @Test
+  public void testScanResistant() {
+    AtomicInteger parses = new AtomicInteger();
+    ParseCache<String> cache = new ParseCache<>(50, s -> {
+      parses.incrementAndGet();
+      return s;
+    });
+    // hot keys are requested twice, which protects them
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 20; i++) {
+        cache.get("hot" + i);
+      }
+    }
+    // a one-off scan much larger than the cache
+    for (int i = 0; i < 500; i++) {
+      cache.get("scan" + i);
+    }
+    parses.set(0);
+    for (int i = 0; i < 20; i++) {
+      cache.get("hot" + i);
+    }
+    assertEquals(0, parses.get());
+  }
+
+  @Test
+  public void testFailuresNotCached() {
+    ParseCache<ExpressionTree> cache = new ParseCache<>(10, ExpressionTree::new);
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get("1 +");
+        fail("expected a parse error");
+      } catch (IllegalArgumentException expected) {
+        // passed through
+      }
+    }
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.stats().missCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nullKey() {
+    new ParseCache<>(10, ExpressionTree::new).get(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroCapacity() {
+    new ParseCache<>(0, ExpressionTree::new);
+  }
+
+  @Test
+  public void testConcurrentGetsShareOneValue() throws Exception {
+    ParseCache<ExpressionTree> cache = new ParseCache<>(1000, ExpressionTree::new);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ExpressionTree>> results = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        String key = "x " + (i % 20) + " +";
+        results.add(pool.submit(() -> cache.get(key)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertSame(cache.get("x " + (i % 20) + " +"), results.get(i).get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+    ParseCache.Stats stats = cache.stats();
+    assertEquals(400 + 400, stats.hitCount() + stats.missCount());
+  }
+
+  @Test
+  public void testStaticFactories() {
+    ExpressionTree e = ExpressionTree.parse("2 3 * 4 +");
+    assertSame(e, ExpressionTree.parse("2 3 * 4 +"));
+    assertEquals(10.0, e.evaluate(), 0.0);
+    IntervalTree t = IntervalTree.parse("1,2 3,4 U");
+    assertSame(t, IntervalTree.parse("1,2 3,4 U"));
+    assertEquals(true, ExpressionTree.parseCacheStats().hitCount() >= 1);
+    assertEquals(true, IntervalTree.parseCacheStats().hitCount() >= 1);
+  }
+}
@@ -0,0 +1,185 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import intervals.ConcurrentIntervalTree;
+import intervals.Interval;
+import intervals.IntervalTree;
+import intervals.PersistentIntervalTree;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Tests for the path-copying PersistentIntervalTree and its concurrent
+ * holder.
+ */
+public class PersistentIntervalTreeTest {
+
+  @Test
+  public void testEvaluateMatchesTree() {
+    String[] exprs = {"5,10", "1,3 2,4 U", "1,3 5,6 I", "1,2 3,4 4,6 U 3,5 I U",
+        "1,10 2,3 I 8,9 U"};
+    for (String s : exprs) {
+      PersistentIntervalTree t = new PersistentIntervalTree(s);
+      assertEquals(s, new IntervalTree(s).evaluate(), t.evaluate());
+      assertEquals(s, new IntervalTree(s).textTree(), t.textTree());
+    }
+  }
+
+  @Test
+  public void testOldVersionsUnchanged() {
+    PersistentIntervalTree v1 = new PersistentIntervalTree("1,4 2,6 I 8,9 U");
+    PersistentIntervalTree v2 = v1.withLeaf(2, 0, 1);
+    PersistentIntervalTree v3 = v2.withLeaf(0, new Interval(3, 3));
+    assertEquals(new Interval(2, 9), v1.evaluate());
+    assertEquals(new Interval(0, 4), v2.evaluate());
+    assertEquals(new Interval(0, 3), v3.evaluate());
+    assertEquals(new Interval(8, 9), v1.leaf(2));
+    assertEquals(new Interval(0, 1), v3.leaf(2));
+    assertEquals(new IntervalTree("3,3 2,6 I 0,1 U").textTree(), v3.textTree());
+  }
+
+  @Test
+  public void testUnchangedLeafReturnsSameVersion() {
+    PersistentIntervalTree t = new PersistentIntervalTree("1,2 3,4 U");
+    assertSame(t, t.withLeaf(1, 3, 4));
+  }
+
+  @Test
+  public void testWithLeaves() {
+    PersistentIntervalTree t = new PersistentIntervalTree("1,2 3,4 U 5,6 7,8 U U");
+    PersistentIntervalTree next = t.withLeaves(new int[] {0, 3}, new int[] {0, 5},
+        new int[] {1, 20});
+    assertEquals(new Interval(0, 20), next.evaluate());
+    assertEquals(new Interval(1, 8), t.evaluate());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testBadIndex() {
+    new PersistentIntervalTree("1,2 3,4 U").withLeaf(2, 0, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReversedInterval() {
+    new PersistentIntervalTree("1,2 3,4 U").withLeaf(0, 5, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testComplementUnsupported() {
+    new PersistentIntervalTree("1,2 C");
+  }
+
+  @Test
+  public void testRandomUpdatesMatchFreshTree() {
+    Random random = new Random(11);
+    int leaves = 300;
+    int[] starts = new int[leaves];
+    int[] ends = new int[leaves];
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < leaves; i++) {
+      starts[i] = random.nextInt(100);
+      ends[i] = starts[i] + random.nextInt(50);
+    }
+    // a random shape, so paths are of mixed length
+    int depth = 0;
+    int next = 0;
+    while (next < leaves || depth > 1) {
+      if (next < leaves && (depth < 2 || random.nextBoolean())) {
+        sb.append("%s ");
+        next++;
+        depth++;
+      } else {
+        sb.append(random.nextInt(3) == 0 ? "I " : "U ");
+        depth--;
+      }
+    }
+    String template = sb.toString();
+    PersistentIntervalTree t = new PersistentIntervalTree(fill(template, starts, ends));
+    for (int round = 0; round < 100; round++) {
+      int i = random.nextInt(leaves);
+      starts[i] = random.nextInt(100);
+      ends[i] = starts[i] + random.nextInt(50);
+      t = t.withLeaf(i, starts[i], ends[i]);
+      assertEquals(new IntervalTree(fill(template, starts, ends)).evaluate(), t.evaluate());
+    }
+  }
+
+  private static String fill(String template, int[] starts, int[] ends) {
+    Object[] leaves = new Object[starts.length];
+    for (int i = 0; i < leaves.length; i++) {
+      leaves[i] = starts[i] + "," + ends[i];
+    }
+    return String.format(template, leaves);
+  }
+
+  @Test
+  public void testDeepChain() {
+    StringBuilder sb = new StringBuilder("0,0");
+    for (int i = 1; i <= 100_000; i++) {
+      sb.append(' ').append(i).append(',').append(i).append(" U");
+    }
+    PersistentIntervalTree t = new PersistentIntervalTree(sb.toString());
+    assertEquals(new Interval(0, 100_000), t.evaluate());
+    assertEquals(new Interval(-1, 100_000), t.withLeaf(0, -1, 0).evaluate());
+    assertEquals(new Interval(0, 100_001), t.withLeaf(100_000, 5, 100_001).evaluate());
+  }
+
+  @Test
+  public void testConcurrentReadersSeeConsistentVersions() throws InterruptedException {
+    // every version keeps leaf 0 and leaf 1 equal, so a reader that saw a
+    // half-applied update would find them different
+    ConcurrentIntervalTree tree = new ConcurrentIntervalTree("0,0 0,0 U 5,9 I");
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread(() -> {
+        try {
+          for (int i = 0; i < 50_000; i++) {
+            PersistentIntervalTree snapshot = tree.snapshot();
+            Interval first = snapshot.leaf(0);
+            assertEquals(first, snapshot.leaf(1));
+            assertEquals(first.intersect(new Interval(5, 9)), snapshot.evaluate());
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+      readers[r].start();
+    }
+    Thread writer = new Thread(() -> {
+      for (int i = 1; i <= 20_000; i++) {
+        int v = i % 16;
+        tree.setLeaves(new int[] {0, 1}, new int[] {v, v}, new int[] {v, v});
+      }
+    });
+    writer.start();
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertTrue(String.valueOf(failure.get()), failure.get() == null);
+  }
+
+  @Test
+  public void testConcurrentWritersLoseNoUpdates() throws InterruptedException {
+    ConcurrentIntervalTree tree = new ConcurrentIntervalTree("0,0 0,0 U 0,0 U 0,0 U");
+    Thread[] writers = new Thread[4];
+    for (int w = 0; w < writers.length; w++) {
+      int leaf = w;
+      writers[w] = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          tree.update(t -> t.withLeaf(leaf, 0, t.leaf(leaf).getEnd() + 1));
+        }
+      });
+      writers[w].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    for (int leaf = 0; leaf < writers.length; leaf++) {
+      assertEquals(new Interval(0, 10_000), tree.snapshot().leaf(leaf));
+    }
+    assertEquals(new Interval(0, 10_000), tree.evaluate());
+  }
+}
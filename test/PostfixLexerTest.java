@@ -0,0 +1,143 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+import org.junit.Test;
+import postfix.PostfixLexer;
+
+/**
+ * Tests for the shared postfix tokenizer.
+ */
+public class PostfixLexerTest {
+
+  @Test
+  public void testTokenOffsets() {
+    PostfixLexer lex = new PostfixLexer("  12 3.5\t+\n");
+    assertEquals(true, lex.next());
+    assertEquals(2, lex.start());
+    assertEquals(4, lex.end());
+    assertEquals(true, lex.next());
+    assertEquals("3.5", lex.text());
+    assertEquals(true, lex.next());
+    assertEquals(true, lex.isChar('+'));
+    assertEquals(false, lex.next());
+    assertEquals(false, lex.next());
+  }
+
+  @Test
+  public void testEmptyInput() {
+    assertEquals(false, new PostfixLexer("").next());
+    assertEquals(false, new PostfixLexer(" \t\n ").next());
+  }
+
+  @Test
+  public void testCharBuffer() {
+    PostfixLexer lex = new PostfixLexer(CharBuffer.wrap("1,4 x_1"));
+    lex.next();
+    assertEquals(1, lex.indexOf(',', lex.start()));
+    assertEquals(-1, lex.indexOf(',', 2));
+    lex.next();
+    assertEquals(true, lex.isIdentifier());
+    assertEquals(true, lex.tokenEquals("x_1"));
+    assertEquals(false, lex.tokenEquals("x_2"));
+  }
+
+  @Test
+  public void testIdentifiers() {
+    PostfixLexer lex = new PostfixLexer("x _y z9 9z U +");
+    boolean[] expected = {true, true, true, false, true, false};
+    for (boolean b : expected) {
+      lex.next();
+      assertEquals(lex.text(), b, lex.isIdentifier());
+    }
+  }
+
+  private static void assertParsesLikeJdk(String s) {
+    assertEquals(s, Double.doubleToRawLongBits(Double.parseDouble(s)),
+        Double.doubleToRawLongBits(PostfixLexer.parseDouble(s, 0, s.length())));
+  }
+
+  @Test
+  public void testParseDouble() {
+    String[] cases = {
+        "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "42", "1.5", ".5", "5.", "-.25",
+        "3.00000000001", "1e2", "2E-3", "1e+22", "1e22", "1e23", "1e-22", "1e-23",
+        "123456789012345", "1234567890123456", "12345678901234567890",
+        "0.1", "0.000001", "9007199254740993", "1.7976931348623157e308",
+        "4.9e-324", "1e400", "1e-400", "NaN", "Infinity", "-Infinity",
+        "1d", "2.5f", "0x1p3", "000123.4500",
+    };
+    for (String s : cases) {
+      assertParsesLikeJdk(s);
+    }
+  }
+
+  @Test
+  public void testParseDoubleRandom() {
+    Random rnd = new Random(7);
+    for (int i = 0; i < 20000; i++) {
+      assertParsesLikeJdk(Double.toString(rnd.nextDouble() * Math.pow(10, rnd.nextInt(40) - 20)));
+      assertParsesLikeJdk(rnd.nextInt(100000) + "." + rnd.nextInt(1000));
+      assertParsesLikeJdk(rnd.nextInt(1000) + "e" + (rnd.nextInt(50) - 25));
+    }
+  }
+
+  @Test
+  public void testParseDoubleRejects() {
+    String[] bad = {"", "-", ".", "e5", "1e", "1e+", "1.2.3", "1,2", "abc", "--1"};
+    for (String s : bad) {
+      try {
+        PostfixLexer.parseDouble(s, 0, s.length());
+        assertEquals("should reject " + s, true, false);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testParseInt() {
+    assertEquals(0, PostfixLexer.parseInt("0", 0, 1));
+    assertEquals(-5, PostfixLexer.parseInt("x-5y", 1, 3));
+    assertEquals(7, PostfixLexer.parseInt("+7", 0, 2));
+    assertEquals(Integer.MAX_VALUE, PostfixLexer.parseInt("2147483647", 0, 10));
+    assertEquals(Integer.MIN_VALUE, PostfixLexer.parseInt("-2147483648", 0, 11));
+  }
+
+  @Test
+  public void testParseIntRejects() {
+    String[] bad = {"", "-", "+", "1.5", "2147483648", "-2147483649", "1a", " 1"};
+    for (String s : bad) {
+      try {
+        PostfixLexer.parseInt(s, 0, s.length());
+        assertEquals("should reject " + s, true, false);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testParseLong() {
+    assertEquals(0L, PostfixLexer.parseLong("0", 0, 1));
+    assertEquals(-5L, PostfixLexer.parseLong("x-5y", 1, 3));
+    assertEquals(1_700_000_000_123_456_789L,
+        PostfixLexer.parseLong("+1700000000123456789", 0, 20));
+    assertEquals(Long.MAX_VALUE, PostfixLexer.parseLong("9223372036854775807", 0, 19));
+    assertEquals(Long.MIN_VALUE, PostfixLexer.parseLong("-9223372036854775808", 0, 20));
+  }
+
+  @Test
+  public void testParseLongRejects() {
+    String[] bad = {"", "-", "+", "1.5", "9223372036854775808", "-9223372036854775809",
+        "99999999999999999999", "1a", " 1"};
+    for (String s : bad) {
+      try {
+        PostfixLexer.parseLong(s, 0, s.length());
+        assertEquals("should reject " + s, true, false);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+}
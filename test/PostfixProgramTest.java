@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertEquals;
+
+import expression.ExpressionTree;
+import expression.PostfixProgram;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for the flat postfix program form of ExpressionTree.
+ */
+public class PostfixProgramTest {
+
+  private static final double DELTA = 0.0001;
+
+  @Test
+  public void testSingleValue() {
+    PostfixProgram p = new ExpressionTree("42").toProgram();
+    assertEquals(1, p.maxStack());
+    assertEquals(42.0, p.evaluate(), DELTA);
+  }
+
+  @Test
+  public void testAllOperators() {
+    assertEquals(3.0, new ExpressionTree("1 2 +").toProgram().evaluate(), DELTA);
+    assertEquals(2.0, new ExpressionTree("5 3 -").toProgram().evaluate(), DELTA);
+    assertEquals(20.0, new ExpressionTree("4 5 *").toProgram().evaluate(), DELTA);
+    assertEquals(5.0, new ExpressionTree("10 2 /").toProgram().evaluate(), DELTA);
+  }
+
+  @Test
+  public void testMatchesTree() {
+    String[] exprs = {
+        "1 4 6 - 5 + /",
+        "1.2 5.4 + -4.5 *",
+        "1 2 + 3 4 + *",
+        "3 -2 +",
+        "1e2 2e1 +",
+    };
+    for (String s : exprs) {
+      ExpressionTree tree = new ExpressionTree(s);
+      // bit-for-bit, not just within a tolerance
+      assertEquals(s, Double.doubleToRawLongBits(tree.evaluate()),
+          Double.doubleToRawLongBits(tree.toProgram().evaluate()));
+    }
+  }
+
+  @Test
+  public void testStackDepth() {
+    // left chains need two slots, right chains one per operand
+    assertEquals(2, new ExpressionTree("1 2 + 3 + 4 +").toProgram().maxStack());
+    assertEquals(4, new ExpressionTree("1 2 3 4 + + +").toProgram().maxStack());
+  }
+
+  @Test
+  public void testReusedStack() {
+    PostfixProgram p = new ExpressionTree("1 2 + 3 4 + *").toProgram();
+    double[] stack = p.newStack();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(21.0, p.evaluate(stack), DELTA);
+    }
+  }
+
+  @Test
+  public void testDeepProgram() {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 0; i < 200000; i++) {
+      sb.append(" 1 +");
+    }
+    PostfixProgram p = new ExpressionTree(sb.toString()).toProgram();
+    assertEquals(200001.0, p.evaluate(), DELTA);
+  }
+
+  @Test
+  public void testVariableSlots() {
+    PostfixProgram p = new ExpressionTree("y x - y *").toProgram();
+    assertEquals(List.of("y", "x"), p.variables());
+    double[] stack = p.newStack();
+    assertEquals(6.0, p.evaluate(new double[] {3, 1}, stack), DELTA);
+    assertEquals(-4.0, p.evaluate(new double[] {2, 4}, stack), DELTA);
+  }
+
+  @Test
+  public void testSharedRegisters() {
+    PostfixProgram p = new ExpressionTree("x 1 + x 1 + * x 1 + +").optimize().toProgram();
+    double[] stack = p.newStack();
+    assertEquals(12.0, p.evaluate(new double[] {2}, stack), DELTA);
+    assertEquals(30.0, p.evaluate(new double[] {4}, stack), DELTA);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unboundVariable() {
+    new ExpressionTree("x 1 +").toProgram().evaluate();
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void divByZero() {
+    new ExpressionTree("10 5 5 - /").toProgram().evaluate();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void stackTooSmall() {
+    new ExpressionTree("1 2 3 + +").toProgram().evaluate(new double[2]);
+  }
+}
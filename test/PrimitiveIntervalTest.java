@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import intervals.DoubleInterval;
+import intervals.DoubleIntervalTree;
+import intervals.Interval;
+import intervals.IntervalTree;
+import intervals.LongInterval;
+import intervals.LongIntervalTree;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for the long and double interval types and their trees.
+ */
+public class PrimitiveIntervalTest {
+
+  private static String randomExpression(Random rnd, int leaves) {
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    while (leaves > 0 || depth > 1) {
+      if (leaves > 0 && (depth < 2 || rnd.nextBoolean())) {
+        int s = rnd.nextInt(200) - 100;
+        sb.append(s).append(',').append(s + rnd.nextInt(60)).append(' ');
+        leaves--;
+        depth++;
+      } else {
+        sb.append(rnd.nextInt(3) == 0 ? "I " : "U ");
+        depth--;
+      }
+    }
+    return sb.toString().trim();
+  }
+
+  @Test
+  public void testMatchesIntTree() {
+    Random rnd = new Random(25);
+    for (int round = 0; round < 300; round++) {
+      String s = randomExpression(rnd, 1 + rnd.nextInt(30));
+      IntervalTree expected = new IntervalTree(s);
+      Interval result = expected.evaluate();
+      LongInterval asLong = new LongIntervalTree(s).evaluate();
+      DoubleInterval asDouble = new DoubleIntervalTree(s).evaluate();
+      if (result == Interval.EMPTY) {
+        assertEquals(s, LongInterval.EMPTY, asLong);
+        assertEquals(s, DoubleInterval.EMPTY, asDouble);
+      } else if (result.getStart() == Integer.MIN_VALUE) {
+        // an empty intersection unioned with x keeps the empty start
+        assertEquals(s, Long.MIN_VALUE, asLong.getStart());
+        assertEquals(s, Double.NEGATIVE_INFINITY, asDouble.getStart(), 0);
+        assertEquals(s, result.getEnd(), asLong.getEnd());
+      } else {
+        assertEquals(s, result.toString(), asLong.toString());
+        assertEquals(s, new DoubleInterval(result.getStart(), result.getEnd()), asDouble);
+      }
+      assertEquals(s, expected.textTree(), new LongIntervalTree(s).textTree());
+    }
+  }
+
+  @Test
+  public void testLongCoordinates() {
+    LongIntervalTree t = new LongIntervalTree(
+        "1700000000000000000,1700000000500000000 1700000000400000000,1700000001000000000 I "
+        + "-9223372036854775807,-9000000000000000000 U");
+    assertEquals(new LongInterval(-9_223_372_036_854_775_807L, 1_700_000_000_500_000_000L),
+        t.evaluate());
+    assertEquals(5, t.nodeCount());
+    assertEquals(new LongInterval(1_700_000_000_400_000_000L, 9_223_372_036_854_775_807L),
+        new LongIntervalTree("1700000000400000000,9223372036854775807").evaluate());
+    assertSame(LongInterval.EMPTY,
+        new LongIntervalTree("5000000000,6000000000 7000000000,8000000000 I").evaluate());
+  }
+
+  @Test
+  public void testDoubleCoordinates() {
+    DoubleIntervalTree t = new DoubleIntervalTree("0.5,2.25 1e-3,1 I -Infinity,-3.5 U");
+    assertEquals(new DoubleInterval(Double.NEGATIVE_INFINITY, 1), t.evaluate());
+    assertEquals(new DoubleInterval(0.5, 1.0),
+        new DoubleIntervalTree("0.5,2.25 1e-3,1 I").evaluate());
+    assertSame(DoubleInterval.EMPTY, new DoubleIntervalTree("0.1,0.2 0.3,0.4 I").evaluate());
+    assertEquals("I\n|\n|\n|___0.5,2.25\n|\n|___0.001,1.0",
+        new DoubleIntervalTree("0.5,2.25 1e-3,1 I").textTree());
+  }
+
+  @Test
+  public void testIntervalOperations() {
+    LongInterval a = new LongInterval(1L << 40, 1L << 41);
+    LongInterval b = new LongInterval(3L << 39, 1L << 42);
+    assertEquals(new LongInterval(3L << 39, 1L << 41), a.intersect(b));
+    assertEquals(new LongInterval(1L << 40, 1L << 42), a.union(b));
+    assertSame(LongInterval.EMPTY, a.intersect(new LongInterval(0, 1)));
+    assertEquals(new DoubleInterval(0.25, 0.5),
+        new DoubleInterval(0, 0.5).intersect(new DoubleInterval(0.25, 1)));
+    assertSame(DoubleInterval.EMPTY,
+        new DoubleInterval(0, 0.5).intersect(new DoubleInterval(0.75, 1)));
+    assertEquals(new DoubleInterval(0, 1),
+        new DoubleInterval(0, 0.5).union(new DoubleInterval(0.75, 1)));
+  }
+
+  @Test
+  public void testParseToken() {
+    assertEquals(new LongInterval(-4_000_000_000L, 4_000_000_000L),
+        LongInterval.parse("-4000000000,4000000000"));
+    assertEquals(new DoubleInterval(-1.5, 2e10), DoubleInterval.parse("-1.5,2e10"));
+    LongInterval l = new LongInterval(Long.MIN_VALUE + 1, Long.MAX_VALUE);
+    assertEquals(l, LongInterval.parse(l.toString()));
+    DoubleInterval d = new DoubleInterval(0.1, Double.POSITIVE_INFINITY);
+    assertEquals(d, DoubleInterval.parse(d.toString()));
+  }
+
+  @Test
+  public void testParseRejects() {
+    String[] longBad = {"1", ",1", "1,", "1,2,3", "5,1", "1.5,2", "0,9223372036854775808"};
+    for (String s : longBad) {
+      assertRejects(s, () -> LongInterval.parse(s));
+      assertRejects(s, () -> new LongIntervalTree(s));
+      assertRejects(s, () -> new LongIntervalTree("0,0 " + s + " U"));
+    }
+    String[] doubleBad = {"1", "1,", "2.5,1", "NaN,1", "0,NaN", "a,b"};
+    for (String s : doubleBad) {
+      assertRejects(s, () -> DoubleInterval.parse(s));
+      assertRejects(s, () -> new DoubleIntervalTree(s));
+    }
+    String[] exprBad = {"", "1,2 U", "1,2 3,4", "1,2 3,4 D", "1,2 C"};
+    for (String s : exprBad) {
+      assertRejects(s, () -> new LongIntervalTree(s));
+      assertRejects(s, () -> new DoubleIntervalTree(s));
+    }
+    assertRejects("null", () -> new LongIntervalTree(null));
+    assertRejects("NaN", () -> new DoubleInterval(Double.NaN, 1));
+  }
+
+  private static void assertRejects(String input, Runnable parse) {
+    try {
+      parse.run();
+      assertEquals("should reject " + input, true, false);
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDeepChain() {
+    StringBuilder sb = new StringBuilder("0,0");
+    for (int i = 1; i <= 100_000; i++) {
+      sb.append(' ').append(i).append("0000000000,").append(i).append("0000000000 U");
+    }
+    LongIntervalTree t = new LongIntervalTree(sb.toString());
+    assertEquals(new LongInterval(0, 1_000_000_000_000_000L), t.evaluate());
+    assertEquals(200_001, t.nodeCount());
+    DoubleIntervalTree d = new DoubleIntervalTree(sb.toString());
+    assertEquals(new DoubleInterval(0, 1e15), d.evaluate());
+  }
+}
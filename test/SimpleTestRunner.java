@@ -145,7 +145,7 @@ public class SimpleTestRunner {
 
     test("bad token", () -> {
       try {
-        new ExpressionTree("1 a +");
+        new ExpressionTree("1 2a +");
         return false;
       } catch (IllegalArgumentException e) {
         return true;